@@ -0,0 +1,402 @@
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+// Admission control in front of Library and the stores (see AdmittedLibrary, AdmittedStore). A call is
+// let through when
+//   1. the caller's token bucket and the operation's token bucket both have a permit, and
+//   2. one of maxConcurrent slots is free for its lane.
+// Lanes are served in priority order: a freed slot goes to a waiting circulation call before any
+// lookup or search, and SEARCH may only ever hold half the slots, so a search flood can't starve
+// borrow/return or drain the connection pool.
+// Permits and free slots are taken with CAS only; only a call that has to queue parks. Queueing is
+// bounded CoDel-style: when the shortest queue delay seen in a lane over an interval stays above
+// target, the lane has a standing queue and new arrivals that would have to wait are rejected at
+// once instead; a queued call gives up after its lane's patience (a multiple of target).
+// Metrics per lane, e.g. "admission.search": success = admitted (latency = queue time), error = rejected.
+final class AdmissionController {
+    enum Lane {
+        CIRCULATION(10), LOOKUP(4), SEARCH(2);   // patience, in multiples of the target queue delay
+
+        final int patience;
+
+        Lane(int patience) {
+            this.patience = patience;
+        }
+    }
+
+    static final long DEFAULT_TARGET_QUEUE_MILLIS = 5;
+    static final int MAX_TRACKED_USERS = 100_000;   // past this, idle users' buckets are swept
+
+    private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int WAITING = 0;
+    private static final int GRANTED = 1;
+    private static final int ABANDONED = 2;
+    private static final Lane[] LANES = Lane.values();
+
+    private final int maxConcurrent;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LaneState[] lanes = new LaneState[LANES.length];
+    private final long targetNanos;
+
+    private final double userRatePerSecond;
+    private final int userBurst;
+    private final ConcurrentHashMap<String, TokenBucket> userBuckets = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime());
+    private final ConcurrentHashMap<String, TokenBucket> operationBuckets = new ConcurrentHashMap<>();
+
+    // userRatePerSecond 0 turns the per-user limit off
+    public AdmissionController(int maxConcurrent, double userRatePerSecond, int userBurst, long targetQueueMillis) {
+        if (maxConcurrent < 1 || userRatePerSecond < 0 || userBurst < 1 || targetQueueMillis < 1) {
+            throw new IllegalArgumentException("Invalid admission limits");
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.userRatePerSecond = userRatePerSecond;
+        this.userBurst = userBurst;
+        this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetQueueMillis);
+        for (Lane lane : LANES) {
+            int cap = lane == Lane.SEARCH ? Math.max(1, maxConcurrent / 2) : maxConcurrent;
+            lanes[lane.ordinal()] = new LaneState(lane, cap);
+        }
+    }
+
+    // Sized to the connection pool, like AsyncLibraryDAO
+    public static AdmissionController forDatabase(double userRatePerSecond, int userBurst) {
+        return new AdmissionController(DatabaseConnection.getPoolStats().maxSize, userRatePerSecond, userBurst,
+                DEFAULT_TARGET_QUEUE_MILLIS);
+    }
+
+    // Caps one operation across all callers, e.g. limitOperation("library.searchTitles", 200, 50)
+    public void limitOperation(String operation, double ratePerSecond, int burst) {
+        operationBuckets.put(operation, new TokenBucket(ratePerSecond, burst));
+    }
+
+    // Most slots the lane may hold at once (at most maxConcurrent)
+    public void setLaneLimit(Lane lane, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Lane limit must be positive: " + maxInFlight);
+        }
+        lanes[lane.ordinal()].cap = Math.min(maxInFlight, maxConcurrent);
+    }
+
+    // ── Admission ─────────────────────────────────────────────
+    // Runs work once admitted; userId null skips the per-user bucket
+    public <T> T call(String userId, String operation, Lane lane, Supplier<T> work) {
+        admit(userId, operation, lane);
+        try {
+            return work.get();
+        } finally {
+            release(lane);
+        }
+    }
+
+    public void run(String userId, String operation, Lane lane, Runnable work) {
+        admit(userId, operation, lane);
+        try {
+            work.run();
+        } finally {
+            release(lane);
+        }
+    }
+
+    // Every successful admit must be paired with one release(lane)
+    public void admit(String userId, String operation, Lane lane) {
+        long start = System.nanoTime();
+        LaneState state = lanes[lane.ordinal()];
+        TokenBucket user = userId != null && userRatePerSecond > 0 ? userBucket(userId, start) : null;
+        if (user != null && !user.tryAcquire(start)) {
+            throw state.reject(start, AdmissionRejectedException.Reason.USER_RATE, operation);
+        }
+        TokenBucket op = operationBuckets.get(operation);
+        if (op != null && !op.tryAcquire(start)) {
+            if (user != null) {
+                user.refund();
+            }
+            throw state.reject(start, AdmissionRejectedException.Reason.OPERATION_RATE, operation);
+        }
+        if (!higherLanesWaiting(lane) && tryTakeSlot(state)) {
+            state.admitted(start, start);
+            return;
+        }
+        if (state.shedding) {
+            throw state.reject(start, AdmissionRejectedException.Reason.OVERLOADED, operation);
+        }
+        awaitSlot(state, start, operation);
+    }
+
+    public void release(Lane lane) {
+        LaneState state = lanes[lane.ordinal()];
+        state.inFlight.decrementAndGet();
+        inFlight.decrementAndGet();
+        grantWaiting();
+    }
+
+    // A lane's fast path must not take a slot that a waiting call of the same or higher priority is owed
+    private boolean higherLanesWaiting(Lane lane) {
+        for (int i = 0; i <= lane.ordinal(); i++) {
+            if (lanes[i].queued.get() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean tryTakeSlot(LaneState state) {
+        if (!increment(state.inFlight, state.cap)) {
+            return false;
+        }
+        if (!increment(inFlight, maxConcurrent)) {
+            state.inFlight.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean increment(AtomicInteger counter, int limit) {
+        int n;
+        do {
+            n = counter.get();
+            if (n >= limit) {
+                return false;
+            }
+        } while (!counter.compareAndSet(n, n + 1));
+        return true;
+    }
+
+    private void awaitSlot(LaneState state, long start, String operation) {
+        Waiter waiter = new Waiter(Thread.currentThread());
+        state.queued.incrementAndGet();
+        state.waiters.add(waiter);
+        grantWaiting();   // a slot may have come free between the fast path and the enqueue
+        long deadline = start + targetNanos * state.lane.patience;
+        while (waiter.state.get() == WAITING) {
+            long left = deadline - System.nanoTime();
+            boolean interrupted = Thread.interrupted();
+            if ((left <= 0 || interrupted) && waiter.state.compareAndSet(WAITING, ABANDONED)) {
+                if (state.waiters.remove(waiter)) {
+                    state.queued.decrementAndGet();
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw state.reject(start, AdmissionRejectedException.Reason.INTERRUPTED, operation);
+                }
+                throw state.reject(start, AdmissionRejectedException.Reason.QUEUE_TIMEOUT, operation);
+            }
+            LockSupport.parkNanos(this, Math.max(left, 0));
+            if (interrupted) {
+                Thread.currentThread().interrupt();   // lost the race to a grant: keep the slot, keep the flag
+            }
+        }
+        state.admitted(start, System.nanoTime());
+    }
+
+    // Hands free slots to waiting calls, highest-priority lane first. Safe to run from any thread at any
+    // time: a slot is taken before a waiter is polled and given back if no live waiter is there.
+    private void grantWaiting() {
+        for (LaneState state : lanes) {
+            while (state.queued.get() > 0) {
+                if (!tryTakeSlot(state)) {
+                    if (inFlight.get() >= maxConcurrent) {
+                        return;   // no slot anywhere; the next release tries again
+                    }
+                    break;        // this lane is at its own cap; a lower lane may still fit
+                }
+                Waiter waiter = state.waiters.poll();
+                if (waiter == null) {
+                    state.inFlight.decrementAndGet();
+                    inFlight.decrementAndGet();
+                    break;
+                }
+                state.queued.decrementAndGet();
+                if (waiter.state.compareAndSet(WAITING, GRANTED)) {
+                    LockSupport.unpark(waiter.thread);
+                } else {
+                    state.inFlight.decrementAndGet();   // gave up just now
+                    inFlight.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    private TokenBucket userBucket(String userId, long now) {
+        TokenBucket bucket = userBuckets.get(userId);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (userBuckets.size() >= MAX_TRACKED_USERS) {
+            sweepIdleUsers(now);
+        }
+        return userBuckets.computeIfAbsent(userId, id -> new TokenBucket(userRatePerSecond, userBurst));
+    }
+
+    // A full bucket holds nothing a fresh one wouldn't, so it can go. One sweep per interval at most,
+    // in case most tracked users are busy.
+    private void sweepIdleUsers(long now) {
+        long next = nextSweep.get();
+        if (now - next < 0 || !nextSweep.compareAndSet(next, now + INTERVAL_NANOS)) {
+            return;
+        }
+        userBuckets.forEach((id, bucket) -> {
+            if (bucket.isFull(now)) {
+                userBuckets.remove(id, bucket);
+            }
+        });
+    }
+
+    // ── Stats ─────────────────────────────────────────────────
+    public Stats getStats(Lane lane) {
+        LaneState s = lanes[lane.ordinal()];
+        Map<AdmissionRejectedException.Reason, Long> rejected = new EnumMap<>(AdmissionRejectedException.Reason.class);
+        for (AdmissionRejectedException.Reason reason : AdmissionRejectedException.Reason.values()) {
+            rejected.put(reason, s.rejected[reason.ordinal()].sum());
+        }
+        return new Stats(lane, s.admitted.sum(), rejected, s.inFlight.get(), s.queued.get(), s.shedding);
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    // ── Internals ─────────────────────────────────────────────
+    private final class LaneState {
+        final Lane lane;
+        volatile int cap;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger queued = new AtomicInteger();   // waiters not yet granted or given up
+        final ConcurrentLinkedQueue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+        final OperationMetrics metrics;
+        final LongAdder admitted = new LongAdder();
+        final LongAdder[] rejected = new LongAdder[AdmissionRejectedException.Reason.values().length];
+
+        // CoDel: shortest queue delay of the current interval; shedding while the last one's stayed above target
+        final AtomicLong minDelay = new AtomicLong(Long.MAX_VALUE);
+        final AtomicLong intervalEnd = new AtomicLong(System.nanoTime() + INTERVAL_NANOS);
+        volatile boolean shedding;
+
+        LaneState(Lane lane, int cap) {
+            this.lane = lane;
+            this.cap = cap;
+            this.metrics = Metrics.operation("admission." + lane.name().toLowerCase());
+            for (int i = 0; i < rejected.length; i++) {
+                rejected[i] = new LongAdder();
+            }
+        }
+
+        void admitted(long start, long now) {
+            admitted.increment();
+            metrics.success(start, 1);
+            observe(now - start, now);
+        }
+
+        AdmissionRejectedException reject(long start, AdmissionRejectedException.Reason reason, String operation) {
+            long now = System.nanoTime();
+            rejected[reason.ordinal()].increment();
+            metrics.failure(start);
+            // A timed-out waiter sat in the queue at least this long; shed and rate-limited calls never queued
+            observe(reason == AdmissionRejectedException.Reason.QUEUE_TIMEOUT ? now - start : -1, now);
+            return new AdmissionRejectedException(reason, operation, lane);
+        }
+
+        // Takes one queue delay (negative: none) and closes the interval once due. An interval with no
+        // delay at all ends shedding, so a lane that shed everything lets callers queue again to re-measure.
+        private void observe(long delay, long now) {
+            long m;
+            while (delay >= 0 && delay < (m = minDelay.get()) && !minDelay.compareAndSet(m, delay)) {
+                // retry
+            }
+            long end = intervalEnd.get();
+            if (now - end >= 0 && intervalEnd.compareAndSet(end, now + INTERVAL_NANOS)) {
+                long min = minDelay.getAndSet(Long.MAX_VALUE);
+                shedding = min != Long.MAX_VALUE && min > targetNanos;
+            }
+        }
+    }
+
+    private static final class Waiter {
+        final Thread thread;
+        final AtomicInteger state = new AtomicInteger(WAITING);
+
+        Waiter(Thread thread) {
+            this.thread = thread;
+        }
+    }
+
+    // GCRA token bucket: the whole state is one "theoretical arrival time", so acquiring a permit is one
+    // CAS. A permit is earned every intervalNanos; up to burst can be taken back to back.
+    static final class TokenBucket {
+        private final long intervalNanos;
+        private final long toleranceNanos;   // how far ahead of now the arrival time may run
+        private final AtomicLong arrival;
+
+        TokenBucket(double ratePerSecond, int burst) {
+            if (ratePerSecond <= 0 || burst < 1) {
+                throw new IllegalArgumentException("Rate and burst must be positive");
+            }
+            this.intervalNanos = Math.max(1, (long) (1e9 / ratePerSecond));
+            this.toleranceNanos = intervalNanos * (burst - 1);
+            this.arrival = new AtomicLong(System.nanoTime() - toleranceNanos);
+        }
+
+        boolean tryAcquire(long now) {
+            while (true) {
+                long t = arrival.get();
+                long from = t - now > 0 ? t : now;
+                if (from - now > toleranceNanos) {
+                    return false;
+                }
+                if (arrival.compareAndSet(t, from + intervalNanos)) {
+                    return true;
+                }
+            }
+        }
+
+        // Hands back a permit taken by a call that was rejected further on
+        void refund() {
+            arrival.addAndGet(-intervalNanos);
+        }
+
+        boolean isFull(long now) {
+            return arrival.get() - now <= 0;
+        }
+    }
+
+    public static final class Stats {
+        public final Lane lane;
+        public final long admitted;
+        public final Map<AdmissionRejectedException.Reason, Long> rejected;
+        public final int inFlight;
+        public final int queued;
+        public final boolean shedding;
+
+        Stats(Lane lane, long admitted, Map<AdmissionRejectedException.Reason, Long> rejected, int inFlight,
+              int queued, boolean shedding) {
+            this.lane = lane;
+            this.admitted = admitted;
+            this.rejected = rejected;
+            this.inFlight = inFlight;
+            this.queued = queued;
+            this.shedding = shedding;
+        }
+
+        public long getRejectedTotal() {
+            long total = 0;
+            for (long n : rejected.values()) {
+                total += n;
+            }
+            return total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Admission{lane=%s, admitted=%d, rejected=%s, inFlight=%d, queued=%d, shedding=%b}",
+                    lane, admitted, rejected, inFlight, queued, shedding);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+// Thrown by AdmissionController when a call is not let through; cheap to throw (no stack trace) since
+// rejecting fast is the point under overload
+class AdmissionRejectedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    enum Reason {
+        USER_RATE,         // the caller's token bucket is empty
+        OPERATION_RATE,    // the operation's token bucket is empty
+        OVERLOADED,        // the lane's queue delay is over target: shed without queueing
+        QUEUE_TIMEOUT,     // queued, but no slot came free within the lane's patience
+        INTERRUPTED
+    }
+
+    private final Reason reason;
+    private final String operation;
+    private final AdmissionController.Lane lane;
+
+    AdmissionRejectedException(Reason reason, String operation, AdmissionController.Lane lane) {
+        super(operation + " rejected (" + reason + ", lane " + lane + ")", null, false, false);
+        this.reason = reason;
+        this.operation = operation;
+        this.lane = lane;
+    }
+
+    public Reason getReason() { return reason; }
+    public String getOperation() { return operation; }
+    public AdmissionController.Lane getLane() { return lane; }
+
+    // Rate rejections clear up on their own; back off and retry
+    public boolean isRetryable() {
+        return reason != Reason.INTERRUPTED;
+    }
+}
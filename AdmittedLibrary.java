@@ -0,0 +1,79 @@
+import java.util.List;
+import java.util.Optional;
+
+// Library behind an AdmissionController: borrow/return and holds in the CIRCULATION lane, point lookups
+// in LOOKUP, title/author searches in SEARCH. userId is the caller the request is made for (the
+// borrower, or whoever is searching; null for anonymous traffic, which only the per-operation limits
+// cover). Operation names match Library's metrics, e.g. limitOperation("library.searchTitles", ...).
+// A call that isn't admitted throws AdmissionRejectedException without touching the library.
+class AdmittedLibrary {
+    private final Library library;
+    private final AdmissionController admission;
+
+    public AdmittedLibrary(Library library, AdmissionController admission) {
+        this.library = library;
+        this.admission = admission;
+    }
+
+    // ── Circulation ───────────────────────────────────────────
+    public void borrowBook(String userId, String isbn) {
+        admission.run(userId, "library.borrow", AdmissionController.Lane.CIRCULATION,
+                () -> library.borrowBook(userId, isbn));
+    }
+
+    public void returnBook(String userId, String isbn) {
+        admission.run(userId, "library.return", AdmissionController.Lane.CIRCULATION,
+                () -> library.returnBook(userId, isbn));
+    }
+
+    public HoldQueues.Hold placeHold(String userId, String isbn) {
+        return admission.call(userId, "library.placeHold", AdmissionController.Lane.CIRCULATION,
+                () -> library.placeHold(userId, isbn));
+    }
+
+    public boolean cancelHold(String userId, String isbn) {
+        return admission.call(userId, "library.cancelHold", AdmissionController.Lane.CIRCULATION,
+                () -> library.cancelHold(userId, isbn));
+    }
+
+    // ── Lookups ───────────────────────────────────────────────
+    public Optional<Book> findBookByIsbn(String userId, String isbn) {
+        return admission.call(userId, "library.findBookByIsbn", AdmissionController.Lane.LOOKUP,
+                () -> library.findBookByIsbn(isbn));
+    }
+
+    public Optional<LibraryUser> findUser(String userId, String id) {
+        return admission.call(userId, "library.findUser", AdmissionController.Lane.LOOKUP,
+                () -> library.findUser(id));
+    }
+
+    // ── Search ────────────────────────────────────────────────
+    public List<Book> findBooksByTitleContains(String userId, String fragment, int limit) {
+        return admission.call(userId, "library.findBooksByTitleContains", AdmissionController.Lane.SEARCH,
+                () -> library.findBooksByTitleContains(fragment, limit));
+    }
+
+    public List<Book> findBooksByTitlePrefix(String userId, String prefix, int limit) {
+        return admission.call(userId, "library.findBooksByTitlePrefix", AdmissionController.Lane.SEARCH,
+                () -> library.findBooksByTitlePrefix(prefix, limit));
+    }
+
+    public List<Book> findBooksByAuthor(String userId, String author) {
+        return admission.call(userId, "library.findBooksByAuthor", AdmissionController.Lane.SEARCH,
+                () -> library.findBooksByAuthor(author));
+    }
+
+    public List<FuzzyIndex.Match<Book>> searchAuthors(String userId, String query, int limit) {
+        return admission.call(userId, "library.searchAuthors", AdmissionController.Lane.SEARCH,
+                () -> library.searchAuthors(query, limit));
+    }
+
+    public List<FuzzyIndex.Match<Book>> searchTitles(String userId, String query, int limit) {
+        return admission.call(userId, "library.searchTitles", AdmissionController.Lane.SEARCH,
+                () -> library.searchTitles(query, limit));
+    }
+
+    public Library getLibrary() {
+        return library;
+    }
+}
@@ -0,0 +1,105 @@
+import java.util.List;
+
+// A CatalogStore/UserStore (typically BookDAO and LibraryUserDAO) behind an AdmissionController, so at
+// most maxConcurrent calls hold database connections and scans can't crowd out circulation updates:
+// availability and copy changes go in CIRCULATION, point reads and single-row writes in LOOKUP, full
+// reads, pages and bulk imports in SEARCH. Store calls carry no caller, so only per-operation limits
+// apply ("store.getBooksAfter", ...). Rejections throw AdmissionRejectedException rather than
+// following the store's log-and-return-null contract, so callers can tell "shed" from "not found".
+class AdmittedStore implements CatalogStore, UserStore {
+    private final CatalogStore catalog;
+    private final UserStore users;
+    private final AdmissionController admission;
+
+    public AdmittedStore(CatalogStore catalog, UserStore users, AdmissionController admission) {
+        this.catalog = catalog;
+        this.users = users;
+        this.admission = admission;
+    }
+
+    // ── Books ─────────────────────────────────────────────────
+    @Override
+    public void insertBook(Book book) {
+        admission.run(null, "store.insertBook", AdmissionController.Lane.LOOKUP, () -> catalog.insertBook(book));
+    }
+
+    @Override
+    public Book getBookByIsbn(String isbn) {
+        return admission.call(null, "store.getBookByIsbn", AdmissionController.Lane.LOOKUP,
+                () -> catalog.getBookByIsbn(isbn));
+    }
+
+    @Override
+    public List<Book> getAllBooks() {
+        return admission.call(null, "store.getAllBooks", AdmissionController.Lane.SEARCH, catalog::getAllBooks);
+    }
+
+    @Override
+    public void updateBookAvailability(String isbn, boolean newAvailable) {
+        admission.run(null, "store.updateBookAvailability", AdmissionController.Lane.CIRCULATION,
+                () -> catalog.updateBookAvailability(isbn, newAvailable));
+    }
+
+    @Override
+    public boolean addCopies(String isbn, int count) {
+        return admission.call(null, "store.addCopies", AdmissionController.Lane.CIRCULATION,
+                () -> catalog.addCopies(isbn, count));
+    }
+
+    @Override
+    public void deleteBook(String isbn) {
+        admission.run(null, "store.deleteBook", AdmissionController.Lane.LOOKUP, () -> catalog.deleteBook(isbn));
+    }
+
+    @Override
+    public List<Book> getBooksAfter(String lastTitle, String lastIsbn, int limit) {
+        return admission.call(null, "store.getBooksAfter", AdmissionController.Lane.SEARCH,
+                () -> catalog.getBooksAfter(lastTitle, lastIsbn, limit));
+    }
+
+    @Override
+    public ImportResult insertBooks(Iterable<Book> books) {
+        return admission.call(null, "store.insertBooks", AdmissionController.Lane.SEARCH,
+                () -> catalog.insertBooks(books));
+    }
+
+    // ── Users ─────────────────────────────────────────────────
+    @Override
+    public void insertLibraryUser(LibraryUser user) {
+        admission.run(null, "store.insertLibraryUser", AdmissionController.Lane.LOOKUP,
+                () -> users.insertLibraryUser(user));
+    }
+
+    @Override
+    public LibraryUser getUserById(String id) {
+        return admission.call(null, "store.getUserById", AdmissionController.Lane.LOOKUP, () -> users.getUserById(id));
+    }
+
+    @Override
+    public List<LibraryUser> getAllUsers() {
+        return admission.call(null, "store.getAllUsers", AdmissionController.Lane.SEARCH, users::getAllUsers);
+    }
+
+    @Override
+    public void updateUserName(String id, String newName) {
+        admission.run(null, "store.updateUserName", AdmissionController.Lane.LOOKUP,
+                () -> users.updateUserName(id, newName));
+    }
+
+    @Override
+    public void deleteUser(String id) {
+        admission.run(null, "store.deleteUser", AdmissionController.Lane.LOOKUP, () -> users.deleteUser(id));
+    }
+
+    @Override
+    public List<LibraryUser> getUsersAfter(String lastId, int limit) {
+        return admission.call(null, "store.getUsersAfter", AdmissionController.Lane.SEARCH,
+                () -> users.getUsersAfter(lastId, limit));
+    }
+
+    @Override
+    public ImportResult insertUsers(Iterable<? extends LibraryUser> users) {
+        return admission.call(null, "store.insertUsers", AdmissionController.Lane.SEARCH,
+                () -> this.users.insertUsers(users));
+    }
+}
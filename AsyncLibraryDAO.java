@@ -0,0 +1,170 @@
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// Non-blocking facade over BookDAO and LibraryUserDAO. Each call runs on its own virtual thread when the
+// JVM has them, else on a pool of maxConcurrency platform threads, and completes with the result or a
+// DataAccessException. A semaphore sized to the connection budget keeps callers from queueing more work
+// on the pool than it can serve. Calls go through the DAOs' throwing cores, which the decorating DAOs
+// override: CachingBookDAO/CachingLibraryUserDAO serve getBookByIsbn/getUserById from their caches and
+// invalidate on writes, WriteBehindBookDAO queues availability updates and overlays queued values on
+// both ISBN reads. The batch reads (getBooksByIsbns, getUsersByIds) always query the database: the
+// caches only cover single-key lookups.
+class AsyncLibraryDAO implements AutoCloseable {
+    static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    interface SqlCall<T> {
+        T call() throws SQLException;
+    }
+
+    private final BookDAO bookDAO;
+    private final LibraryUserDAO userDAO;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int chunkSize;
+
+    public AsyncLibraryDAO() {
+        this(new BookDAO(), new LibraryUserDAO(), DatabaseConnection.getPoolStats().maxSize, DEFAULT_CHUNK_SIZE);
+    }
+
+    public AsyncLibraryDAO(BookDAO bookDAO, LibraryUserDAO userDAO, int maxConcurrency, int chunkSize) {
+        if (maxConcurrency < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("maxConcurrency and chunkSize must be positive");
+        }
+        this.bookDAO = bookDAO;
+        this.userDAO = userDAO;
+        this.executor = newExecutor(maxConcurrency);
+        this.permits = new Semaphore(maxConcurrency, true);
+        this.chunkSize = chunkSize;
+    }
+
+    // ── Books ─────────────────────────────────────────────────
+    public CompletableFuture<Book> getBookByIsbn(String isbn) {
+        return submit("getBookByIsbn", () -> bookDAO.findByIsbn(isbn));
+    }
+
+    public CompletableFuture<Boolean> insertBook(Book book) {
+        return submit("insertBook", () -> bookDAO.insert(book) > 0);
+    }
+
+    public CompletableFuture<Boolean> updateBookAvailability(String isbn, boolean available) {
+        return submit("updateBookAvailability", () -> bookDAO.updateAvailability(isbn, available) > 0);
+    }
+
+    public CompletableFuture<Boolean> deleteBook(String isbn) {
+        return submit("deleteBook", () -> bookDAO.delete(isbn) > 0);
+    }
+
+    // One "isbn = ANY(?)" query per chunk, chunks in parallel; missing ISBNs are absent from the map
+    public CompletableFuture<Map<String, Book>> getBooksByIsbns(Collection<String> isbns) {
+        List<CompletableFuture<List<Book>>> parts = new ArrayList<>();
+        for (List<String> chunk : chunks(isbns)) {
+            parts.add(submit("getBooksByIsbns", () -> bookDAO.findByIsbns(chunk)));
+        }
+        return merge(parts, Book::getIsbn);
+    }
+
+    // ── Users ─────────────────────────────────────────────────
+    public CompletableFuture<LibraryUser> getUserById(String id) {
+        return submit("getUserById", () -> userDAO.findById(id));
+    }
+
+    public CompletableFuture<Boolean> insertLibraryUser(LibraryUser user) {
+        return submit("insertLibraryUser", () -> userDAO.insert(user) > 0);
+    }
+
+    public CompletableFuture<Boolean> updateUserName(String id, String newName) {
+        return submit("updateUserName", () -> userDAO.updateName(id, newName) > 0);
+    }
+
+    public CompletableFuture<Boolean> deleteUser(String id) {
+        return submit("deleteUser", () -> userDAO.delete(id) > 0);
+    }
+
+    public CompletableFuture<Map<String, LibraryUser>> getUsersByIds(Collection<String> ids) {
+        List<CompletableFuture<List<LibraryUser>>> parts = new ArrayList<>();
+        for (List<String> chunk : chunks(ids)) {
+            parts.add(submit("getUsersByIds", () -> userDAO.findByIds(chunk)));
+        }
+        return merge(parts, LibraryUser::getId);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    // ── Internals ─────────────────────────────────────────────
+    <T> CompletableFuture<T> submit(String operation, SqlCall<T> call) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+            try {
+                return call.call();
+            } catch (SQLException e) {
+                throw new DataAccessException(operation, e);
+            } finally {
+                permits.release();
+            }
+        }, executor);
+    }
+
+    private List<List<String>> chunks(Collection<String> keys) {
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(keys));
+        List<List<String>> chunks = new ArrayList<>();
+        for (int i = 0; i < distinct.size(); i += chunkSize) {
+            chunks.add(distinct.subList(i, Math.min(i + chunkSize, distinct.size())));
+        }
+        return chunks;
+    }
+
+    private static <T> CompletableFuture<Map<String, T>> merge(List<CompletableFuture<List<T>>> parts,
+                                                               Function<T, String> keyOf) {
+        return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            Map<String, T> result = new HashMap<>();
+            for (CompletableFuture<List<T>> part : parts) {
+                for (T row : part.join()) {
+                    result.put(keyOf.apply(row), row);
+                }
+            }
+            return result;
+        });
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() on JDK 21+. Otherwise a fixed daemon pool of
+    // maxConcurrency threads: waiting calls queue as tasks instead of each parking a platform thread
+    // on the semaphore.
+    private static ExecutorService newExecutor(int maxConcurrency) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                        Thread t = new Thread(r, "async-dao");
+                        t.setDaemon(true);
+                        return t;
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
+        }
+    }
+}
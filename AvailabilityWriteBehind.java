@@ -0,0 +1,372 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Queues book availability changes and writes them in batched transactions.
+// Repeated flips of one ISBN coalesce into its latest value. A flush runs when flushThreshold distinct
+// ISBNs are pending or every flushIntervalMillis. Every change is first appended to a local log
+// ("isbn,0|1" lines), replayed on startup, so a crash between enqueue and flush loses nothing.
+// pendingValue() covers the batch being written too, until its transaction has committed.
+class AvailabilityWriteBehind implements AutoCloseable {
+    private final Path logFile;
+    private final Path flushingFile;        // log segment being flushed; deleted once committed
+    private final int flushThreshold;
+    private final int maxPending;
+    private final long enqueueTimeoutMillis;
+    private final boolean fsync;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final ReentrantLock flushLock = new ReentrantLock();   // one flush at a time
+    private LinkedHashMap<String, Boolean> pending = new LinkedHashMap<>();   // guarded by lock
+    private Map<String, Boolean> inFlight = Map.of();                         // guarded by lock
+    private FileChannel log;                                                  // guarded by lock
+    private final ScheduledExecutorService flusher;
+    private volatile boolean closed;
+
+    // Metrics
+    private long enqueued;
+    private long coalesced;
+    private long flushes;
+    private long flushedRows;
+    private long flushFailures;
+    private long lastFlushNanos;
+    private long maxFlushNanos;
+    private long totalFlushNanos;
+
+    AvailabilityWriteBehind(Path logFile, int flushThreshold, int maxPending,
+                            long flushIntervalMillis, long enqueueTimeoutMillis, boolean fsync) throws IOException {
+        if (flushThreshold < 1 || maxPending < flushThreshold) {
+            throw new IllegalArgumentException("Need 1 <= flushThreshold <= maxPending");
+        }
+        this.logFile = logFile;
+        this.flushingFile = logFile.resolveSibling(logFile.getFileName() + ".flushing");
+        this.flushThreshold = flushThreshold;
+        this.maxPending = maxPending;
+        this.enqueueTimeoutMillis = enqueueTimeoutMillis;
+        this.fsync = fsync;
+
+        recover();
+        this.log = openLog();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "availability-write-behind");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
+        if (!pending.isEmpty()) {
+            flusher.execute(this::flushQuietly);   // push recovered changes out right away
+        }
+    }
+
+    // Blocks while maxPending distinct ISBNs are waiting; throws once enqueueTimeoutMillis passes, and
+    // IOException once closed
+    public void enqueue(String isbn, boolean available) throws IOException, TimeoutException {
+        if (isbn.indexOf(',') >= 0 || isbn.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException("Invalid ISBN: " + isbn);
+        }
+        boolean triggerFlush;
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IOException("Write-behind queue is closed");
+            }
+            long remaining = TimeUnit.MILLISECONDS.toNanos(enqueueTimeoutMillis);
+            while (pending.size() >= maxPending && !pending.containsKey(isbn)) {
+                if (remaining <= 0) {
+                    throw new TimeoutException("Availability queue full (" + maxPending + " pending)");
+                }
+                try {
+                    remaining = notFull.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for queue space", e);
+                }
+                if (closed) {
+                    throw new IOException("Write-behind queue is closed");
+                }
+            }
+            appendToLog(isbn, available);
+            if (pending.put(isbn, available) != null) {
+                coalesced++;
+            }
+            enqueued++;
+            triggerFlush = pending.size() >= flushThreshold;
+        } finally {
+            lock.unlock();
+        }
+        if (triggerFlush) {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    // Latest value for isbn not yet committed (queued or in the batch being written), or null
+    public Boolean pendingValue(String isbn) {
+        lock.lock();
+        try {
+            Boolean queued = pending.get(isbn);
+            return queued != null ? queued : inFlight.get(isbn);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Writes everything queued so far in one transaction
+    public void flush() throws IOException, SQLException {
+        flushLock.lock();
+        try {
+            Map<String, Boolean> batch;
+            lock.lock();
+            try {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                log.close();
+                try {
+                    if (Files.exists(flushingFile)) {
+                        // A failed requeue couldn't re-log the older batch: keep that segment, newer changes after it
+                        appendTo(flushingFile, logFile);
+                        Files.delete(logFile);
+                    } else {
+                        Files.move(logFile, flushingFile);
+                    }
+                } finally {
+                    log = openLog();
+                }
+                batch = pending;
+                inFlight = batch;
+                pending = new LinkedHashMap<>();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            long start = System.nanoTime();
+            try {
+                writeBatch(batch);
+            } catch (SQLException | RuntimeException e) {
+                requeue(batch);
+                throw e;
+            }
+            recordFlush(batch.size(), System.nanoTime() - start);
+            Files.deleteIfExists(flushingFile);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // Rejects new changes first, so the last flush covers everything accepted
+    @Override
+    public void close() throws IOException, SQLException {
+        lock.lock();
+        try {
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            flush();
+        } finally {
+            lock.lock();
+            try {
+                log.close();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public Stats getStats() {
+        lock.lock();
+        try {
+            return new Stats(pending.size(), enqueued, coalesced, flushes, flushedRows, flushFailures,
+                    lastFlushNanos, maxFlushNanos, flushes == 0 ? 0 : totalFlushNanos / flushes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ── Internals ─────────────────────────────────────────────
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | SQLException | RuntimeException e) {
+            // keep the scheduled task alive; the batch has been re-queued
+            LibraryLog.error("Error flushing availability updates: " + e.getMessage());
+        }
+    }
+
+    private void writeBatch(Map<String, Boolean> batch) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(BookDAO.UPDATE_AVAILABILITY_SQL)) {
+
+            conn.setAutoCommit(false);
+            for (Map.Entry<String, Boolean> change : batch.entrySet()) {
+                pstmt.setBoolean(1, change.getValue());
+                pstmt.setString(2, change.getKey());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+            conn.commit();
+        }
+    }
+
+    // Failed batch goes back in front of newer changes. The queue is restored first; the .flushing file
+    // goes only once every change it holds has been re-logged, otherwise the next flush keeps it.
+    private void requeue(Map<String, Boolean> batch) throws IOException {
+        boolean relogged = false;
+        lock.lock();
+        try {
+            LinkedHashMap<String, Boolean> merged = new LinkedHashMap<>();
+            for (Map.Entry<String, Boolean> change : batch.entrySet()) {
+                if (!pending.containsKey(change.getKey())) {
+                    merged.put(change.getKey(), change.getValue());
+                }
+            }
+            Map<String, Boolean> older = new LinkedHashMap<>(merged);
+            merged.putAll(pending);
+            pending = merged;
+            inFlight = Map.of();
+            flushFailures++;
+            for (Map.Entry<String, Boolean> change : older.entrySet()) {
+                appendToLog(change.getKey(), change.getValue());
+            }
+            relogged = true;
+        } finally {
+            lock.unlock();
+        }
+        if (relogged) {
+            Files.deleteIfExists(flushingFile);
+        }
+    }
+
+    private void appendTo(Path target, Path source) throws IOException {
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+             FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            long position = 0;
+            long size = in.size();
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+            if (fsync) {
+                out.force(false);
+            }
+        }
+    }
+
+    // Also retires the committed batch from pendingValue()
+    private void recordFlush(int rows, long nanos) {
+        lock.lock();
+        try {
+            inFlight = Map.of();
+            flushes++;
+            flushedRows += rows;
+            lastFlushNanos = nanos;
+            totalFlushNanos += nanos;
+            maxFlushNanos = Math.max(maxFlushNanos, nanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void appendToLog(String isbn, boolean available) throws IOException {
+        byte[] line = (isbn + ',' + (available ? '1' : '0') + '\n').getBytes(StandardCharsets.UTF_8);
+        log.write(ByteBuffer.wrap(line));
+        if (fsync) {
+            log.force(false);
+        }
+    }
+
+    private FileChannel openLog() throws IOException {
+        return FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    // Older segment first, so the newest value of each ISBN wins
+    private void recover() throws IOException {
+        for (Path file : new Path[]{flushingFile, logFile}) {
+            if (!Files.exists(file)) {
+                continue;
+            }
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int comma = line.lastIndexOf(',');
+                    if (comma <= 0 || comma != line.length() - 2) {
+                        continue;   // torn last line from a crash mid-write
+                    }
+                    pending.put(line.substring(0, comma), line.charAt(comma + 1) == '1');
+                }
+            }
+        }
+        if (Files.exists(flushingFile)) {
+            // Fold the old segment into the live log so a later flush covers it
+            try (Writer out = Channels.newWriter(FileChannel.open(logFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Boolean> change : pending.entrySet()) {
+                    out.write(change.getKey() + ',' + (change.getValue() ? '1' : '0') + '\n');
+                }
+            }
+            Files.delete(flushingFile);
+        }
+    }
+
+    // Latencies in nanoseconds
+    public static final class Stats {
+        public final int queueDepth;
+        public final long enqueued;
+        public final long coalesced;
+        public final long flushes;
+        public final long flushedRows;
+        public final long flushFailures;
+        public final long lastFlushNanos;
+        public final long maxFlushNanos;
+        public final long avgFlushNanos;
+
+        Stats(int queueDepth, long enqueued, long coalesced, long flushes, long flushedRows,
+              long flushFailures, long lastFlushNanos, long maxFlushNanos, long avgFlushNanos) {
+            this.queueDepth = queueDepth;
+            this.enqueued = enqueued;
+            this.coalesced = coalesced;
+            this.flushes = flushes;
+            this.flushedRows = flushedRows;
+            this.flushFailures = flushFailures;
+            this.lastFlushNanos = lastFlushNanos;
+            this.maxFlushNanos = maxFlushNanos;
+            this.avgFlushNanos = avgFlushNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("WriteBehind{depth=%d, enqueued=%d, coalesced=%d, flushes=%d, rows=%d, " +
+                            "failures=%d, lastFlush=%.3fms, avgFlush=%.3fms, maxFlush=%.3fms}",
+                    queueDepth, enqueued, coalesced, flushes, flushedRows, flushFailures,
+                    lastFlushNanos / 1e6, avgFlushNanos / 1e6, maxFlushNanos / 1e6);
+        }
+    }
+}
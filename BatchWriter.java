@@ -0,0 +1,119 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+// Runs one INSERT as JDBC batches, one transaction per batch.
+// A failing batch is rolled back and replayed row by row (with savepoints) so only the bad rows are lost.
+// Each flushed batch is one sample in metrics (rows = rows inserted; a replayed batch counts as an error).
+class BatchWriter<T> {
+    static final int DEFAULT_BATCH_SIZE = 1000;
+
+    interface Binder<T> {
+        void bind(PreparedStatement pstmt, T row) throws SQLException;
+    }
+
+    private final String sql;
+    private final Binder<T> binder;
+    private final Function<T, String> keyOf;
+    private final int batchSize;
+    private final OperationMetrics metrics;
+
+    BatchWriter(String sql, Binder<T> binder, Function<T, String> keyOf, int batchSize, OperationMetrics metrics) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.sql = sql;
+        this.binder = binder;
+        this.keyOf = keyOf;
+        this.batchSize = batchSize;
+        this.metrics = metrics;
+    }
+
+    // rowNumber is asked right after each next(); pass null to number rows 1, 2, 3...
+    void write(Iterator<? extends T> rows, LongSupplier rowNumber, ImportResult result) {
+        List<T> batch = new ArrayList<>(batchSize);
+        long[] rowNumbers = new long[batchSize];
+        long ordinal = 0;
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            conn.setAutoCommit(false);
+            while (rows.hasNext()) {
+                T row = rows.next();
+                ordinal++;
+                rowNumbers[batch.size()] = rowNumber != null ? rowNumber.getAsLong() : ordinal;
+                batch.add(row);
+                if (batch.size() == batchSize) {
+                    flush(conn, pstmt, batch, rowNumbers, result);
+                }
+            }
+            if (!batch.isEmpty()) {
+                flush(conn, pstmt, batch, rowNumbers, result);
+            }
+
+        } catch (SQLException e) {
+            // Connection-level failure: everything not yet committed is lost
+            for (int i = 0; i < batch.size(); i++) {
+                result.recordFailure(rowNumbers[i], keyOf.apply(batch.get(i)), e.getMessage());
+            }
+            result.recordAborted(ordinal, e.getMessage());
+        }
+    }
+
+    private void flush(Connection conn, PreparedStatement pstmt, List<T> batch,
+                       long[] rowNumbers, ImportResult result) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            for (T row : batch) {
+                binder.bind(pstmt, row);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+            conn.commit();
+            result.recordInserted(batch.size());
+            metrics.success(start, batch.size());
+        } catch (SQLException e) {
+            pstmt.clearBatch();
+            conn.rollback();
+            replayRowByRow(conn, pstmt, batch, rowNumbers, result);
+            metrics.failure(start);
+        }
+        batch.clear();
+    }
+
+    // Failures are recorded only once the commit succeeds; if it fails, the caller records the whole
+    // batch as failed instead, and no row is counted twice
+    private void replayRowByRow(Connection conn, PreparedStatement pstmt, List<T> batch,
+                                long[] rowNumbers, ImportResult result) throws SQLException {
+        long ok = 0;
+        List<Integer> failedRows = new ArrayList<>();
+        List<String> failures = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            T row = batch.get(i);
+            Savepoint sp = conn.setSavepoint();
+            try {
+                binder.bind(pstmt, row);
+                pstmt.executeUpdate();
+                conn.releaseSavepoint(sp);
+                ok++;
+            } catch (SQLException e) {
+                conn.rollback(sp);
+                failedRows.add(i);
+                failures.add(e.getMessage());
+            }
+        }
+        conn.commit();
+        for (int f = 0; f < failedRows.size(); f++) {
+            int i = failedRows.get(f);
+            result.recordFailure(rowNumbers[i], keyOf.apply(batch.get(i)), failures.get(f));
+        }
+        result.recordInserted(ok);
+    }
+}
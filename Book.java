@@ -1,21 +1,45 @@
 import java.time.Year;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
 
+// One title (keyed by ISBN) with totalCopies interchangeable physical copies.
+// Borrowing any free copy is a single CAS on the available-copies counter.
 class Book {
     private final String isbn;           // natural unique key
     private final String title;
     private final String author;
     private final Year publicationYear;
     private final String genre;
-    boolean available = true;
+    private volatile int totalCopies;                // changed under the book's monitor
+    private final AtomicInteger availableCopies;
+    private AvailabilityListener availabilityListener;   // set while the book belongs to a Library
+
+    interface AvailabilityListener {
+        // Only when the title goes from no free copy to some free copy or back, under the book's monitor
+        void availabilityChanged(Book book, boolean available);
+
+        // After every change of the free-copy count, no lock held; read the current counts from the book
+        default void copiesChanged(Book book) {
+        }
+    }
 
     public Book(String isbn, String title, String author,
                 Year publicationYear, String genre) {
+        this(isbn, title, author, publicationYear, genre, 1);
+    }
+
+    public Book(String isbn, String title, String author,
+                Year publicationYear, String genre, int copies) {
+        if (copies < 0) {
+            throw new IllegalArgumentException("Copies cannot be negative: " + copies);
+        }
         this.isbn = Objects.requireNonNull(isbn, "ISBN cannot be null");
         this.title = Objects.requireNonNull(title, "Title cannot be null");
         this.author = Objects.requireNonNull(author, "Author cannot be null");
         this.publicationYear = Objects.requireNonNull(publicationYear);
         this.genre = genre != null ? genre : "Unknown";
+        this.totalCopies = copies;
+        this.availableCopies = new AtomicInteger(copies);
     }
 
     // Getters (no setters → mostly immutable except availability)
@@ -24,24 +48,81 @@ class Book {
     public String getAuthor() { return author; }
     public Year getPublicationYear() { return publicationYear; }
     public String getGenre() { return genre; }
-    public boolean isAvailable() { return available; }
+    public boolean isAvailable() { return availableCopies.get() > 0; }
+    public int getAvailableCopies() { return availableCopies.get(); }
+    public int getTotalCopies() { return totalCopies; }
 
-    // Business methods
+    // Business methods — lock-free, so two desks can't both take the last copy
     public void borrow() {
-        if (!available) {
+        int before = availableCopies.getAndUpdate(n -> n > 0 ? n - 1 : n);
+        if (before == 0) {
             throw new IllegalStateException("Book is already borrowed: " + title);
         }
-        this.available = false;
+        copiesChanged(before == 1);
     }
 
+    // Returning a title whose copies are all on the shelf does nothing
     public void returnBook() {
-        this.available = true;
+        int before = availableCopies.getAndUpdate(n -> n < totalCopies ? n + 1 : n);
+        if (before < totalCopies) {
+            copiesChanged(before == 0);
+        }
+    }
+
+    // Adds new copies to the shelf
+    public synchronized void addCopies(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Copies cannot be negative: " + count);
+        }
+        totalCopies += count;
+        int before = availableCopies.getAndAdd(count);
+        copiesChanged(before == 0 && count > 0);
+    }
+
+    // Withdraws copies that are on the shelf; returns false (and changes nothing) if fewer are free
+    public synchronized boolean withdrawCopies(int count) {
+        int before = availableCopies.getAndUpdate(n -> n >= count ? n - count : n);
+        if (before < count) {
+            return false;
+        }
+        totalCopies -= count;
+        copiesChanged(before > 0 && before == count);
+        return true;
+    }
+
+    // Overwrites both counters, e.g. with values read from the database or a snapshot
+    synchronized void setCopies(int total, int available) {
+        if (total < 0 || available < 0 || available > total) {
+            throw new IllegalArgumentException("Invalid copies: " + available + "/" + total);
+        }
+        totalCopies = total;
+        int before = availableCopies.getAndSet(available);
+        copiesChanged((before == 0) != (available == 0));
+    }
+
+    void setAvailabilityListener(AvailabilityListener listener) {
+        this.availabilityListener = listener;
+    }
+
+    private void copiesChanged(boolean transition) {
+        AvailabilityListener listener = availabilityListener;
+        if (listener == null) {
+            return;
+        }
+        if (transition) {
+            // Re-read under the monitor: racing transitions may report out of order, but the last
+            // report always carries the current state
+            synchronized (this) {
+                listener.availabilityChanged(this, isAvailable());
+            }
+        }
+        listener.copiesChanged(this);
     }
 
     @Override
     public String toString() {
-        return String.format("Book{isbn='%s', title='%s', author='%s', year=%s, genre='%s', available=%b}",
-                isbn, title, author, publicationYear, genre, available);
+        return String.format("Book{isbn='%s', title='%s', author='%s', year=%s, genre='%s', copies=%d/%d}",
+                isbn, title, author, publicationYear, genre, availableCopies.get(), totalCopies);
     }
 
     @Override
@@ -1,131 +1,418 @@
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.*;
 import java.time.Year;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
-class BookDAO {
+class BookDAO implements CatalogStore {
+    private static final String INSERT_SQL =
+            "INSERT INTO books (isbn, title, author, publication_year, genre, total_copies, available_copies) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    // Single-copy books only; "available" is derived from open loans so later returns stay within total_copies
+    static final String UPDATE_AVAILABILITY_SQL = "UPDATE books SET available_copies = CASE WHEN ? THEN " +
+            "total_copies - (SELECT count(*) FROM loans WHERE loans.isbn = books.isbn AND loans.returned_at IS NULL) " +
+            "ELSE 0 END, updated_at = now() WHERE isbn = ? AND total_copies = 1";
+
+    // Explicit projection, read by position in bookMapper: keep the two in the same order
+    static final String BOOK_COLUMNS = "isbn, title, author, publication_year, genre, total_copies, available_copies";
+    private static final RowMapper<Book> BOOK = bookMapper(1);
+    private static final Year[] YEARS = new Year[2100];   // Year.of allocates on every call
+
+    private static final OperationMetrics INSERT = Metrics.operation("book.insert");
+    private static final OperationMetrics FIND_BY_ISBN = Metrics.operation("book.findByIsbn");
+    private static final OperationMetrics FIND_BY_ISBNS = Metrics.operation("book.findByIsbns");
+    private static final OperationMetrics GET_ALL = Metrics.operation("book.getAll");
+    private static final OperationMetrics GET_AFTER = Metrics.operation("book.getAfter");
+    private static final OperationMetrics CHANGED_SINCE = Metrics.operation("book.changedSince");
+    private static final OperationMetrics UPDATE_AVAILABILITY = Metrics.operation("book.updateAvailability");
+    private static final OperationMetrics DELETE = Metrics.operation("book.delete");
+    private static final OperationMetrics ADD_COPIES = Metrics.operation("book.addCopies");
+    private static final OperationMetrics INSERT_BATCH = Metrics.operation("book.insertBatch");
+
+    private volatile ChangeStream changes;
+    private volatile boolean serverPrepared;
+
+    static {
+        for (int y = 0; y < YEARS.length; y++) {
+            YEARS[y] = Year.of(y);
+        }
+    }
 
     public void insertBook(Book book) {
-        String sql = "INSERT INTO books (isbn, title, author, publication_year, genre, available) VALUES (?, ?, ?, ?, ?, ?)";
+        try {
+            if (insert(book) > 0) {
+                LibraryLog.info(() -> "Book inserted: " + book.getTitle());
+            }
+        } catch (SQLException e) {
+            LibraryLog.error("Error inserting book: " + e.getMessage());
+        }
+    }
+
+    public Book getBookByIsbn(String isbn) {
+        try {
+            return findByIsbn(isbn);
+        } catch (SQLException e) {
+            LibraryLog.error("Error finding book: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public List<Book> getAllBooks() {
+        List<Book> books = new ArrayList<>();
+        String sql = "SELECT " + BOOK_COLUMNS + " FROM books ORDER BY title";
+        long start = System.nanoTime();
 
         try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setString(1, book.getIsbn());
-            pstmt.setString(2, book.getTitle());
-            pstmt.setString(3, book.getAuthor());
-            pstmt.setInt(4, book.getPublicationYear().getValue());
-            pstmt.setString(5, book.getGenre());
-            pstmt.setBoolean(6, book.isAvailable());
-
-            int rowsAffected = pstmt.executeUpdate();
-            if (rowsAffected > 0) {
-                System.out.println("Book inserted: " + book.getTitle());
+             PreparedStatement pstmt = prepare(conn, sql);
+             ResultSet rs = pstmt.executeQuery()) {
+
+            while (rs.next()) {
+                books.add(BOOK.map(rs));
             }
+            GET_ALL.success(start, books.size());
 
         } catch (SQLException e) {
-            System.err.println("Error inserting book: " + e.getMessage());
+            GET_ALL.failure(start);
+            LibraryLog.error("Error getting books: " + e.getMessage());
         }
+
+        return books;
     }
 
-    public Book getBookByIsbn(String isbn) {
-        String sql = "SELECT * FROM books WHERE isbn = ?";
-        Book book = null;
+    public void updateBookAvailability(String isbn, boolean newAvailable) {
+        try {
+            if (updateAvailability(isbn, newAvailable) > 0) {
+                LibraryLog.info(() -> "Book ISBN=" + isbn + " availability updated to " + newAvailable);
+            } else {
+                LibraryLog.info("Book with ISBN=" + isbn + " not found or has several copies (use addCopies)");
+            }
+        } catch (SQLException e) {
+            LibraryLog.error("Error updating availability: " + e.getMessage());
+        }
+    }
+
+    // Negative count withdraws copies, but only ones on the shelf; false if there aren't enough
+    public boolean addCopies(String isbn, int count) {
+        String sql = "UPDATE books SET total_copies = total_copies + ?, available_copies = available_copies + ?, " +
+                "updated_at = now() WHERE isbn = ? AND available_copies + ? >= 0";
+        long start = System.nanoTime();
 
         try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+             PreparedStatement pstmt = prepare(conn, sql)) {
 
-            pstmt.setString(1, isbn);
-            ResultSet rs = pstmt.executeQuery();
-
-            if (rs.next()) {
-                book = new Book(
-                        rs.getString("isbn"),
-                        rs.getString("title"),
-                        rs.getString("author"),
-                        Year.of(rs.getInt("publication_year")),
-                        rs.getString("genre")
-                );
-                // Note: availability is set in constructor to true, but override if needed
-                // Since available is not final, we can set it
-                book.available = rs.getBoolean("available");  // Assuming we make 'available' accessible or use reflection, but for simplicity, added setter or made non-final. Wait, it's private boolean available = true;
-                // To set, need to add setter or make package-visible. For this, let's assume we add:
-                // public void setAvailable(boolean available) { this.available = available; }
-                // Add it to Book class if needed. For demo, assuming set after creation.
+            pstmt.setInt(1, count);
+            pstmt.setInt(2, count);
+            pstmt.setString(3, isbn);
+            pstmt.setInt(4, count);
+            int rows = pstmt.executeUpdate();
+            ADD_COPIES.success(start, rows);
+            if (rows > 0) {
+                publish(ChangeEvent.Type.AVAILABILITY_CHANGED, isbn, (count >= 0 ? "+" : "") + count + " copies");
             }
+            return rows > 0;
 
         } catch (SQLException e) {
-            System.err.println("Error finding book: " + e.getMessage());
+            ADD_COPIES.failure(start);
+            LibraryLog.error("Error adding copies: " + e.getMessage());
+            return false;
         }
-
-        return book;
     }
 
-    public List<Book> getAllBooks() {
-        List<Book> books = new ArrayList<>();
-        String sql = "SELECT * FROM books ORDER BY title";
+    public void deleteBook(String isbn) {
+        try {
+            if (delete(isbn) > 0) {
+                LibraryLog.info(() -> "Book ISBN=" + isbn + " deleted");
+            } else {
+                LibraryLog.info("Book with ISBN=" + isbn + " not found");
+            }
+        } catch (SQLException e) {
+            LibraryLog.error("Error deleting book: " + e.getMessage());
+        }
+    }
 
+    // ── Throwing cores (used by the wrappers above and by AsyncLibraryDAO) ──
+    int insert(Book book) throws SQLException {
+        long start = System.nanoTime();
         try (Connection conn = DatabaseConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+             PreparedStatement pstmt = prepare(conn, INSERT_SQL)) {
 
-            while (rs.next()) {
-                Book book = new Book(
-                        rs.getString("isbn"),
-                        rs.getString("title"),
-                        rs.getString("author"),
-                        Year.of(rs.getInt("publication_year")),
-                        rs.getString("genre")
-                );
-                book.available = rs.getBoolean("available");  // Same note as above
-                books.add(book);
+            bindInsert(pstmt, book);
+            int rows = pstmt.executeUpdate();
+            INSERT.success(start, rows);
+            if (rows > 0) {
+                publish(ChangeEvent.Type.BOOK_ADDED, book.getIsbn(), book.getTitle());
             }
+            return rows;
+        } catch (SQLException e) {
+            INSERT.failure(start);
+            throw e;
+        }
+    }
 
+    Book findByIsbn(String isbn) throws SQLException {
+        String sql = "SELECT " + BOOK_COLUMNS + " FROM books WHERE isbn = ?";
+        long start = System.nanoTime();
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = prepare(conn, sql)) {
+
+            pstmt.setString(1, isbn);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                Book book = rs.next() ? BOOK.map(rs) : null;
+                FIND_BY_ISBN.success(start, book != null ? 1 : 0);
+                return book;
+            }
         } catch (SQLException e) {
-            System.err.println("Error getting books: " + e.getMessage());
+            FIND_BY_ISBN.failure(start);
+            throw e;
+        }
+    }
+
+    // One round-trip for the whole collection; missing ISBNs are simply absent from the result
+    List<Book> findByIsbns(Collection<String> isbns) throws SQLException {
+        List<Book> books = new ArrayList<>(isbns.size());
+        if (isbns.isEmpty()) {
+            return books;
         }
+        String sql = "SELECT " + BOOK_COLUMNS + " FROM books WHERE isbn = ANY(?)";
+        long start = System.nanoTime();
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = prepare(conn, sql)) {
 
+            pstmt.setArray(1, conn.createArrayOf("varchar", isbns.toArray()));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    books.add(BOOK.map(rs));
+                }
+            }
+            FIND_BY_ISBNS.success(start, books.size());
+        } catch (SQLException e) {
+            FIND_BY_ISBNS.failure(start);
+            throw e;
+        }
         return books;
     }
 
-    public void updateBookAvailability(String isbn, boolean newAvailable) {
-        String sql = "UPDATE books SET available = ? WHERE isbn = ?";
+    // Single-copy books: true puts the copy back on the shelf unless it is out on loan, false takes it off.
+    // Books with several copies are left alone (0 rows): withdraw or add copies with addCopies instead.
+    int updateAvailability(String isbn, boolean newAvailable) throws SQLException {
+        long start = System.nanoTime();
 
         try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+             PreparedStatement pstmt = prepare(conn, UPDATE_AVAILABILITY_SQL)) {
 
             pstmt.setBoolean(1, newAvailable);
             pstmt.setString(2, isbn);
-
-            int rowsAffected = pstmt.executeUpdate();
-            if (rowsAffected > 0) {
-                System.out.println("Book ISBN=" + isbn + " availability updated to " + newAvailable);
-            } else {
-                System.out.println("Book with ISBN=" + isbn + " not found");
+            int rows = pstmt.executeUpdate();
+            UPDATE_AVAILABILITY.success(start, rows);
+            if (rows > 0) {
+                publish(ChangeEvent.Type.AVAILABILITY_CHANGED, isbn, newAvailable ? "available" : "unavailable");
             }
-
+            return rows;
         } catch (SQLException e) {
-            System.err.println("Error updating availability: " + e.getMessage());
+            UPDATE_AVAILABILITY.failure(start);
+            throw e;
         }
     }
 
-    public void deleteBook(String isbn) {
-        String sql = "DELETE FROM books WHERE isbn = ?";
+    int delete(String isbn) throws SQLException {
+        // Leaves a tombstone so snapshot delta replay can see the delete
+        String sql = "WITH d AS (DELETE FROM books WHERE isbn = ? RETURNING isbn) " +
+                "INSERT INTO deletions (entity, entity_key) SELECT 'book', isbn FROM d";
+        long start = System.nanoTime();
 
         try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+             PreparedStatement pstmt = prepare(conn, sql)) {
 
             pstmt.setString(1, isbn);
+            int rows = pstmt.executeUpdate();
+            DELETE.success(start, rows);
+            if (rows > 0) {
+                publish(ChangeEvent.Type.BOOK_DELETED, isbn, "");
+            }
+            return rows;
+        } catch (SQLException e) {
+            DELETE.failure(start);
+            throw e;
+        }
+    }
 
-            int rowsAffected = pstmt.executeUpdate();
-            if (rowsAffected > 0) {
-                System.out.println("Book ISBN=" + isbn + " deleted");
-            } else {
-                System.out.println("Book with ISBN=" + isbn + " not found");
+    // ── Change events ─────────────────────────────────────────
+    // Successful single-row writes through this DAO are published here when set; bulk imports are not
+    public void setChangeStream(ChangeStream changes) {
+        this.changes = changes;
+    }
+
+    void publish(ChangeEvent.Type type, String key, String detail) {
+        ChangeStream stream = changes;
+        if (stream != null) {
+            stream.publish(type, key, detail);
+        }
+    }
+
+    // ── Statements ────────────────────────────────────────────
+    // Statements are cached per pooled connection either way; this also plans them on the server up front
+    public void setServerPreparedStatements(boolean serverPrepared) {
+        this.serverPrepared = serverPrepared;
+    }
+
+    private PreparedStatement prepare(Connection conn, String sql) throws SQLException {
+        return DatabaseConnection.prepare(conn, sql, serverPrepared);
+    }
+
+    // ── Paged / streaming reads ───────────────────────────────
+    // Keyset pagination in (title, isbn) order; pass null lastTitle for the first page
+    public List<Book> getBooksAfter(String lastTitle, String lastIsbn, int limit) {
+        List<Book> books = new ArrayList<>();
+        String sql = lastTitle == null
+                ? "SELECT " + BOOK_COLUMNS + " FROM books ORDER BY title, isbn LIMIT ?"
+                : "SELECT " + BOOK_COLUMNS + " FROM books WHERE (title, isbn) > (?, ?) ORDER BY title, isbn LIMIT ?";
+        long start = System.nanoTime();
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = prepare(conn, sql)) {
+
+            int i = 1;
+            if (lastTitle != null) {
+                pstmt.setString(i++, lastTitle);
+                pstmt.setString(i++, lastIsbn != null ? lastIsbn : "");
+            }
+            pstmt.setInt(i, limit);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    books.add(BOOK.map(rs));
+                }
             }
+            GET_AFTER.success(start, books.size());
 
         } catch (SQLException e) {
-            System.err.println("Error deleting book: " + e.getMessage());
+            GET_AFTER.failure(start);
+            LibraryLog.error("Error paging books: " + e.getMessage());
         }
+
+        return books;
+    }
+
+    public Stream<Book> streamAllBooks() throws SQLException {
+        return streamAllBooks(CursorStream.DEFAULT_FETCH_SIZE);
+    }
+
+    // Same order as getAllBooks(); close the stream to give the connection back
+    public Stream<Book> streamAllBooks(int fetchSize) throws SQLException {
+        return CursorStream.open("SELECT " + BOOK_COLUMNS + " FROM books ORDER BY title, isbn",
+                pstmt -> { }, fetchSize, BOOK);
+    }
+
+    // Reads BOOK_COLUMNS by position starting at column first (2 when a join puts a key column in front)
+    static RowMapper<Book> bookMapper(int first) {
+        return rs -> {
+            Book book = new Book(rs.getString(first), rs.getString(first + 1), rs.getString(first + 2),
+                    year(rs.getInt(first + 3)), rs.getString(first + 4));
+            book.setCopies(rs.getInt(first + 5), rs.getInt(first + 6));
+            return book;
+        };
+    }
+
+    // BOOK_COLUMNS qualified for a join, e.g. "b.isbn, b.title, ..."
+    static String bookColumns(String alias) {
+        return alias + "." + BOOK_COLUMNS.replace(", ", ", " + alias + ".");
+    }
+
+    private static Year year(int value) {
+        return value >= 0 && value < YEARS.length ? YEARS[value] : Year.of(value);
+    }
+
+    // ── Change tracking ───────────────────────────────────────
+    // Rows inserted or updated at or after since (inclusive, so replays are idempotent). Throws rather
+    // than returning a short list, so a failed replay never advances its mark past changes it missed.
+    public List<Book> getBooksChangedSince(Timestamp since) throws SQLException {
+        List<Book> books = new ArrayList<>();
+        String sql = "SELECT " + BOOK_COLUMNS + " FROM books WHERE updated_at >= ? ORDER BY updated_at";
+        long start = System.nanoTime();
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = prepare(conn, sql)) {
+
+            pstmt.setTimestamp(1, since);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    books.add(BOOK.map(rs));
+                }
+            }
+            CHANGED_SINCE.success(start, books.size());
+
+        } catch (SQLException e) {
+            CHANGED_SINCE.failure(start);
+            throw e;
+        }
+
+        return books;
+    }
+
+    public List<String> getIsbnsDeletedSince(Timestamp since) throws SQLException {
+        return DeletionLog.keysDeletedSince("book", since);
+    }
+
+    // ── Bulk import ───────────────────────────────────────────
+    public ImportResult insertBooks(Iterable<Book> books) {
+        return insertBooks(books, BatchWriter.DEFAULT_BATCH_SIZE);
+    }
+
+    // Each batch of batchSize rows is one JDBC batch and one transaction
+    public ImportResult insertBooks(Iterable<Book> books, int batchSize) {
+        ImportResult result = new ImportResult();
+        newBatchWriter(batchSize).write(books.iterator(), null, result);
+        return result;
+    }
+
+    // CSV with header (isbn,title,author,publication_year,genre[,total_copies,available_copies]) or JSON lines
+    // with the same keys; a boolean "available" column from single-copy exports is still accepted
+    public ImportResult importBooks(Path file, int batchSize) throws IOException {
+        ImportResult result = new ImportResult();
+        try (RecordFileReader<Book> reader = new RecordFileReader<>(file, BookDAO::fromRecord, result)) {
+            newBatchWriter(batchSize).write(reader, reader::currentLine, result);
+        }
+        return result;
+    }
+
+    private static BatchWriter<Book> newBatchWriter(int batchSize) {
+        return new BatchWriter<>(INSERT_SQL, BookDAO::bindInsert, Book::getIsbn, batchSize, INSERT_BATCH);
+    }
+
+    private static void bindInsert(PreparedStatement pstmt, Book book) throws SQLException {
+        pstmt.setString(1, book.getIsbn());
+        pstmt.setString(2, book.getTitle());
+        pstmt.setString(3, book.getAuthor());
+        pstmt.setInt(4, book.getPublicationYear().getValue());
+        pstmt.setString(5, book.getGenre());
+        pstmt.setInt(6, book.getTotalCopies());
+        pstmt.setInt(7, book.getAvailableCopies());
+    }
+
+    private static Book fromRecord(Map<String, String> r) {
+        String year = r.get("publication_year");
+        if (year == null) {
+            throw new IllegalArgumentException("missing publication_year");
+        }
+        Book book = new Book(r.get("isbn"), r.get("title"), r.get("author"),
+                Year.of(Integer.parseInt(year.trim())), r.get("genre"));
+        String total = r.get("total_copies");
+        String availableCopies = r.get("available_copies");
+        String available = r.get("available");
+        if (total != null && !total.isBlank()) {
+            int copies = Integer.parseInt(total.trim());
+            book.setCopies(copies, availableCopies != null && !availableCopies.isBlank()
+                    ? Integer.parseInt(availableCopies.trim()) : copies);
+        } else if (available != null && !available.isBlank() && !Boolean.parseBoolean(available.trim())) {
+            book.setCopies(1, 0);   // older single-copy files
+        }
+        return book;
     }
 }
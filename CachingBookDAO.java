@@ -0,0 +1,101 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+
+// BookDAO with a read-through cache on getBookByIsbn; every write through this DAO invalidates the key.
+// The cache sits in the findByIsbn core, so a database error is thrown (and logged by getBookByIsbn)
+// rather than remembered as "not found".
+// Invalidation sits in the throwing cores, so writes made through AsyncLibraryDAO invalidate too.
+// Loans change available_copies behind this DAO's back: hand it to LoanDAO.setBookCache.
+// The cache holds immutable rows and every hit builds a fresh Book, as the CatalogStore contract promises.
+class CachingBookDAO extends BookDAO {
+    private final LookupCache<String, InMemoryStore.BookRow> cache;
+
+    public CachingBookDAO() {
+        this(10_000, 10 * 60_000, 30_000);
+    }
+
+    public CachingBookDAO(int maxSize, long ttlMillis, long negativeTtlMillis) {
+        this.cache = new LookupCache<>(maxSize, ttlMillis, negativeTtlMillis, isbn -> {
+            try {
+                Book book = super.findByIsbn(isbn);
+                return book != null ? new InMemoryStore.BookRow(book) : null;
+            } catch (SQLException e) {
+                throw new DataAccessException("findByIsbn", e);
+            }
+        });
+    }
+
+    @Override
+    Book findByIsbn(String isbn) throws SQLException {
+        InMemoryStore.BookRow row;
+        try {
+            row = cache.get(isbn);
+        } catch (DataAccessException e) {
+            throw (SQLException) e.getCause();
+        }
+        return row != null ? row.toBook() : null;
+    }
+
+    @Override
+    int insert(Book book) throws SQLException {
+        try {
+            return super.insert(book);
+        } finally {
+            cache.invalidate(book.getIsbn());
+        }
+    }
+
+    @Override
+    int updateAvailability(String isbn, boolean newAvailable) throws SQLException {
+        try {
+            return super.updateAvailability(isbn, newAvailable);
+        } finally {
+            cache.invalidate(isbn);
+        }
+    }
+
+    @Override
+    int delete(String isbn) throws SQLException {
+        try {
+            return super.delete(isbn);
+        } finally {
+            cache.invalidate(isbn);
+        }
+    }
+
+    @Override
+    public boolean addCopies(String isbn, int count) {
+        try {
+            return super.addCopies(isbn, count);
+        } finally {
+            cache.invalidate(isbn);
+        }
+    }
+
+    // For writes made elsewhere (loans)
+    public void invalidate(String isbn) {
+        cache.invalidate(isbn);
+    }
+
+    // Bulk loads may turn cached "not found" entries stale, so drop everything
+    @Override
+    public ImportResult insertBooks(Iterable<Book> books, int batchSize) {
+        ImportResult result = super.insertBooks(books, batchSize);
+        cache.invalidateAll();
+        return result;
+    }
+
+    @Override
+    public ImportResult importBooks(Path file, int batchSize) throws IOException {
+        try {
+            return super.importBooks(file, batchSize);
+        } finally {
+            cache.invalidateAll();
+        }
+    }
+
+    public LookupCache.Stats getCacheStats() {
+        return cache.getStats();
+    }
+}
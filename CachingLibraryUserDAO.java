@@ -0,0 +1,85 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+
+// LibraryUserDAO with a read-through cache on getUserById; every write through this DAO invalidates the key.
+// Loads go through the throwing findById, so a failed lookup is never cached as "not found".
+// Invalidation sits in the throwing cores, so writes made through AsyncLibraryDAO invalidate too.
+// The cache holds immutable rows and a hit never hands out a LibraryUser another caller holds.
+class CachingLibraryUserDAO extends LibraryUserDAO {
+    private final LookupCache<String, InMemoryStore.UserRow> cache;
+
+    public CachingLibraryUserDAO() {
+        this(10_000, 10 * 60_000, 30_000);
+    }
+
+    public CachingLibraryUserDAO(int maxSize, long ttlMillis, long negativeTtlMillis) {
+        this.cache = new LookupCache<>(maxSize, ttlMillis, negativeTtlMillis, id -> {
+            try {
+                LibraryUser user = super.findById(id);
+                return user != null ? new InMemoryStore.UserRow(user) : null;
+            } catch (SQLException e) {
+                throw new DataAccessException("findById", e);
+            }
+        });
+    }
+
+    @Override
+    LibraryUser findById(String id) throws SQLException {
+        InMemoryStore.UserRow row;
+        try {
+            row = cache.get(id);
+        } catch (DataAccessException e) {
+            throw (SQLException) e.getCause();
+        }
+        return row != null ? row.toUser() : null;
+    }
+
+    @Override
+    int insert(LibraryUser user) throws SQLException {
+        try {
+            return super.insert(user);
+        } finally {
+            cache.invalidate(user.getId());
+        }
+    }
+
+    @Override
+    int updateName(String id, String newName) throws SQLException {
+        try {
+            return super.updateName(id, newName);
+        } finally {
+            cache.invalidate(id);
+        }
+    }
+
+    @Override
+    int delete(String id) throws SQLException {
+        try {
+            return super.delete(id);
+        } finally {
+            cache.invalidate(id);
+        }
+    }
+
+    // Bulk loads may turn cached "not found" entries stale, so drop everything
+    @Override
+    public ImportResult insertUsers(Iterable<? extends LibraryUser> users, int batchSize) {
+        ImportResult result = super.insertUsers(users, batchSize);
+        cache.invalidateAll();
+        return result;
+    }
+
+    @Override
+    public ImportResult importUsers(Path file, int batchSize) throws IOException {
+        try {
+            return super.importUsers(file, batchSize);
+        } finally {
+            cache.invalidateAll();
+        }
+    }
+
+    public LookupCache.Stats getCacheStats() {
+        return cache.getStats();
+    }
+}
@@ -0,0 +1,113 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+// Secondary indexes kept in step with the catalog: author, genre, and available books sorted by title.
+// "Available" means at least one free copy; Book reports only the transitions, not every borrow.
+// Queries cost O(result) instead of a scan over every book. All structures are concurrent, so
+// borrow/return on different books update the availability sets without a shared lock.
+class CatalogIndex implements Book.AvailabilityListener {
+    static final Comparator<Book> BY_TITLE = Comparator.comparing(Book::getTitle).thenComparing(Book::getIsbn);
+
+    private final ConcurrentHashMap<String, Set<Book>> byAuthor = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<Book>> byGenre = new ConcurrentHashMap<>();
+    private final NavigableSet<Book> available = new ConcurrentSkipListSet<>(BY_TITLE);
+    private final ConcurrentHashMap<String, Set<Book>> availableByGenre = new ConcurrentHashMap<>();
+
+    public void add(Book book) {
+        addTo(byAuthor, normalize(book.getAuthor()), book, false);
+        addTo(byGenre, normalize(book.getGenre()), book, false);
+        if (book.isAvailable()) {
+            markAvailable(book);
+        }
+        book.setAvailabilityListener(this);
+    }
+
+    public void remove(Book book) {
+        book.setAvailabilityListener(null);
+        removeFrom(byAuthor, normalize(book.getAuthor()), book);
+        removeFrom(byGenre, normalize(book.getGenre()), book);
+        markUnavailable(book);
+    }
+
+    @Override
+    public void availabilityChanged(Book book, boolean nowAvailable) {
+        if (nowAvailable) {
+            markAvailable(book);
+        } else {
+            markUnavailable(book);
+        }
+    }
+
+    public List<Book> byAuthor(String author) {
+        return copyOf(byAuthor.get(normalize(author)));
+    }
+
+    public List<Book> byGenre(String genre) {
+        return copyOf(byGenre.get(normalize(genre)));
+    }
+
+    public List<Book> available() {
+        return new ArrayList<>(available);
+    }
+
+    public List<Book> availableByGenre(String genre) {
+        return copyOf(availableByGenre.get(normalize(genre)));
+    }
+
+    public List<Book> availableByAuthor(String author) {
+        Set<Book> books = byAuthor.get(normalize(author));
+        if (books == null) {
+            return Collections.emptyList();
+        }
+        List<Book> result = new ArrayList<>();
+        for (Book book : books) {
+            if (book.isAvailable()) {
+                result.add(book);
+            }
+        }
+        result.sort(BY_TITLE);
+        return result;
+    }
+
+    // ── Internals ─────────────────────────────────────────────
+    private void markAvailable(Book book) {
+        available.add(book);
+        addTo(availableByGenre, normalize(book.getGenre()), book, true);
+    }
+
+    private void markUnavailable(Book book) {
+        available.remove(book);
+        removeFrom(availableByGenre, normalize(book.getGenre()), book);
+    }
+
+    // compute() makes "create set if missing" / "drop set once empty" atomic per key
+    private static void addTo(ConcurrentHashMap<String, Set<Book>> index, String key, Book book, boolean sorted) {
+        index.compute(key, (k, books) -> {
+            Set<Book> set = books != null ? books
+                    : sorted ? new ConcurrentSkipListSet<>(BY_TITLE) : ConcurrentHashMap.newKeySet();
+            set.add(book);
+            return set;
+        });
+    }
+
+    private static void removeFrom(ConcurrentHashMap<String, Set<Book>> index, String key, Book book) {
+        index.computeIfPresent(key, (k, books) -> {
+            books.remove(book);
+            return books.isEmpty() ? null : books;
+        });
+    }
+
+    private static List<Book> copyOf(Set<Book> books) {
+        return books == null ? new ArrayList<>() : new ArrayList<>(books);
+    }
+
+    static String normalize(String s) {
+        return s.toLowerCase();
+    }
+}
@@ -0,0 +1,302 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+// Versioned, checksummed binary snapshot of books and users, read back through a memory-mapped file.
+// Records are sorted by key (UTF-8 byte order) with an offset table, so findBook/findUser binary-search
+// the mapped bytes and decode one record, no up-front deserialization pass.
+//
+// Layout (big-endian): 64-byte header | book records | user records | book offsets | user offsets
+//   header: magic "DLIBSNAP", version, bookCount, userCount, reserved, highWaterMark,
+//           bookIndexOffset, userIndexOffset, payloadLength, CRC32(payload)
+//   book:   isbn, title, author, genre (u16 length + UTF-8 each), year (short), total copies (int),
+//           available copies (int)
+//   user:   id, name (u16 length + UTF-8 each), registration epoch day (int), type (0 regular, 1 premium)
+// Version 1 (single-copy books, an available byte) is rejected; rebuild such snapshots from the database.
+class CatalogSnapshot implements AutoCloseable {
+    static final int VERSION = 2;
+    private static final byte[] MAGIC = "DLIBSNAP".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER_SIZE = 64;
+    private static final Comparator<byte[]> UTF8_ORDER = Arrays::compareUnsigned;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int bookCount;
+    private final int userCount;
+    private final long highWaterMark;
+    private final int bookIndexOffset;
+    private final int userIndexOffset;
+
+    private CatalogSnapshot(FileChannel channel, MappedByteBuffer buffer) throws IOException {
+        this.channel = channel;
+        this.buffer = buffer;
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(0, magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a library snapshot");
+        }
+        int version = buffer.getInt(8);
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version + " (expected " + VERSION + ")");
+        }
+        this.bookCount = buffer.getInt(12);
+        this.userCount = buffer.getInt(16);
+        this.highWaterMark = buffer.getLong(24);
+        this.bookIndexOffset = (int) buffer.getLong(32);
+        this.userIndexOffset = (int) buffer.getLong(40);
+        long payloadLength = buffer.getLong(48);
+        if (HEADER_SIZE + payloadLength != buffer.capacity()) {
+            throw new IOException("Snapshot is truncated");
+        }
+    }
+
+    // ── Writing ───────────────────────────────────────────────
+    // highWaterMark: epoch millis of the newest database change included (see Library.replayChanges)
+    public static void write(Path file, Collection<Book> books, Collection<? extends LibraryUser> users,
+                             long highWaterMark) throws IOException {
+        List<Book> sortedBooks = new ArrayList<>(books);
+        sortedBooks.sort((a, b) -> UTF8_ORDER.compare(utf8(a.getIsbn()), utf8(b.getIsbn())));
+        List<LibraryUser> sortedUsers = new ArrayList<>(users);
+        sortedUsers.sort((a, b) -> UTF8_ORDER.compare(utf8(a.getId()), utf8(b.getId())));
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ch.position(HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            int[] bookOffsets = new int[sortedBooks.size()];
+            int[] userOffsets = new int[sortedUsers.size()];
+            long bookIndexOffset;
+            long userIndexOffset;
+            long payloadLength;
+
+            CountingOutput counter = new CountingOutput(HEADER_SIZE);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(Channels.newOutputStream(ch), crc), 1 << 16))) {
+                for (int i = 0; i < sortedBooks.size(); i++) {
+                    Book b = sortedBooks.get(i);
+                    bookOffsets[i] = counter.checkedPosition();
+                    counter.add(writeString(out, b.getIsbn()) + writeString(out, b.getTitle())
+                            + writeString(out, b.getAuthor()) + writeString(out, b.getGenre()));
+                    out.writeShort(b.getPublicationYear().getValue());
+                    out.writeInt(b.getTotalCopies());
+                    out.writeInt(b.getAvailableCopies());
+                    counter.add(10);
+                }
+                for (int i = 0; i < sortedUsers.size(); i++) {
+                    LibraryUser u = sortedUsers.get(i);
+                    userOffsets[i] = counter.checkedPosition();
+                    counter.add(writeString(out, u.getId()) + writeString(out, u.getName()));
+                    out.writeInt((int) u.getRegistrationDate().toEpochDay());
+                    out.writeByte(u instanceof PremiumUser ? 1 : 0);
+                    counter.add(5);
+                }
+                bookIndexOffset = counter.checkedPosition();
+                for (int offset : bookOffsets) {
+                    out.writeInt(offset);
+                }
+                counter.add(4L * bookOffsets.length);
+                userIndexOffset = counter.checkedPosition();
+                for (int offset : userOffsets) {
+                    out.writeInt(offset);
+                }
+                counter.add(4L * userOffsets.length);
+                payloadLength = counter.position - HEADER_SIZE;
+                out.flush();
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+                header.put(MAGIC).putInt(VERSION).putInt(sortedBooks.size()).putInt(sortedUsers.size()).putInt(0)
+                        .putLong(highWaterMark).putLong(bookIndexOffset).putLong(userIndexOffset)
+                        .putLong(payloadLength).putInt((int) crc.getValue());
+                header.flip();
+                ch.write(header, 0);
+                ch.force(true);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // ── Reading ───────────────────────────────────────────────
+    public static CatalogSnapshot open(Path file) throws IOException {
+        return open(file, true);
+    }
+
+    // verifyChecksum=false skips the CRC pass (e.g. for a file this process just wrote)
+    public static CatalogSnapshot open(Path file, boolean verifyChecksum) throws IOException {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            if (ch.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot larger than 2 GB is not supported");
+            }
+            MappedByteBuffer buffer = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            CatalogSnapshot snapshot = new CatalogSnapshot(ch, buffer);
+            if (verifyChecksum) {
+                snapshot.verifyChecksum();
+            }
+            return snapshot;
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    public int getBookCount() { return bookCount; }
+    public int getUserCount() { return userCount; }
+    public long getHighWaterMark() { return highWaterMark; }
+
+    public Optional<Book> findBook(String isbn) {
+        int offset = search(bookIndexOffset, bookCount, utf8(isbn));
+        return offset < 0 ? Optional.empty() : Optional.of(readBook(offset));
+    }
+
+    public Optional<LibraryUser> findUser(String id) {
+        int offset = search(userIndexOffset, userCount, utf8(id));
+        return offset < 0 ? Optional.empty() : Optional.of(readUser(offset));
+    }
+
+    // Sequential scan in ISBN order
+    public void forEachBook(Consumer<Book> action) {
+        for (int i = 0; i < bookCount; i++) {
+            action.accept(readBook(buffer.getInt(bookIndexOffset + 4 * i)));
+        }
+    }
+
+    public void forEachUser(Consumer<LibraryUser> action) {
+        for (int i = 0; i < userCount; i++) {
+            action.accept(readUser(buffer.getInt(userIndexOffset + 4 * i)));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();   // the mapping itself is released when the buffer is collected
+    }
+
+    // ── Internals ─────────────────────────────────────────────
+    private void verifyChecksum() throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(HEADER_SIZE);
+        crc.update(payload);
+        if ((int) crc.getValue() != buffer.getInt(56)) {
+            throw new IOException("Snapshot checksum mismatch");
+        }
+    }
+
+    // Returns the record offset for key, or -1
+    private int search(int indexOffset, int count, byte[] key) {
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int offset = buffer.getInt(indexOffset + 4 * mid);
+            int cmp = compareKey(offset, key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    // Compares the length-prefixed string at offset with key, unsigned byte order
+    private int compareKey(int offset, byte[] key) {
+        int length = buffer.getShort(offset) & 0xFFFF;
+        int start = offset + 2;
+        int n = Math.min(length, key.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = Integer.compare(buffer.get(start + i) & 0xFF, key[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    private Book readBook(int offset) {
+        int[] pos = {offset};
+        String isbn = readString(pos);
+        String title = readString(pos);
+        String author = readString(pos);
+        String genre = readString(pos);
+        Book book = new Book(isbn, title, author, Year.of(buffer.getShort(pos[0])), genre,
+                buffer.getInt(pos[0] + 2));
+        book.setCopies(book.getTotalCopies(), buffer.getInt(pos[0] + 6));
+        return book;
+    }
+
+    private LibraryUser readUser(int offset) {
+        int[] pos = {offset};
+        String id = readString(pos);
+        String name = readString(pos);
+        LocalDate registered = LocalDate.ofEpochDay(buffer.getInt(pos[0]));
+        byte type = buffer.get(pos[0] + 4);
+        return type == 1 ? new PremiumUser(id, name, registered) : new RegularUser(id, name, registered);
+    }
+
+    private String readString(int[] pos) {
+        int length = buffer.getShort(pos[0]) & 0xFFFF;
+        byte[] bytes = new byte[length];
+        buffer.get(pos[0] + 2, bytes);
+        pos[0] += 2 + length;
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = utf8(s);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("String too long for snapshot: " + s.substring(0, 40) + "...");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+        return 2 + bytes.length;
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Tracks the file position of the buffered stream; offsets must fit the int index entries
+    private static final class CountingOutput {
+        long position;
+
+        CountingOutput(long start) {
+            this.position = start;
+        }
+
+        void add(long bytes) {
+            position += bytes;
+        }
+
+        int checkedPosition() throws IOException {
+            if (position > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot larger than 2 GB is not supported");
+            }
+            return (int) position;
+        }
+    }
+}
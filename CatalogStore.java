@@ -0,0 +1,30 @@
+import java.util.List;
+
+// Where books are persisted. BookDAO (PostgreSQL) implements it, as do InMemoryStore and
+// LogStructuredStore for running and load-testing without a database server. Same contract as
+// BookDAO: failures are logged and show up as null/false/empty results, not exceptions, and every
+// read returns fresh Book objects the caller may keep.
+interface CatalogStore {
+    // A book whose ISBN is already stored is rejected (logged), as the primary key does in the database
+    void insertBook(Book book);
+
+    // null when absent
+    Book getBookByIsbn(String isbn);
+
+    // By title
+    List<Book> getAllBooks();
+
+    // Single-copy books only: true puts the copy back on the shelf unless it is on loan, false takes it off.
+    // Books with several copies are left alone (logged); use addCopies for those.
+    void updateBookAvailability(String isbn, boolean newAvailable);
+
+    // Negative count withdraws copies, but only ones on the shelf; false if there aren't enough
+    boolean addCopies(String isbn, int count);
+
+    void deleteBook(String isbn);
+
+    // Keyset pagination in (title, isbn) order; pass null lastTitle for the first page
+    List<Book> getBooksAfter(String lastTitle, String lastIsbn, int limit);
+
+    ImportResult insertBooks(Iterable<Book> books);
+}
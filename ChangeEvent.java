@@ -0,0 +1,36 @@
+import java.util.Objects;
+
+// One entry of the change stream (see ChangeStream). key is the ISBN or user id; detail is the title
+// for BOOK_ADDED, the (new) name for user events and the new state for AVAILABILITY_CHANGED
+// ("available/total" copies when known).
+final class ChangeEvent {
+    enum Type {
+        BOOK_ADDED, BOOK_DELETED, AVAILABILITY_CHANGED, USER_REGISTERED, USER_RENAMED, USER_DELETED
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final String key;
+    private final String detail;
+    private final long timestampMillis;
+
+    ChangeEvent(long sequence, Type type, String key, String detail, long timestampMillis) {
+        this.sequence = sequence;
+        this.type = Objects.requireNonNull(type);
+        this.key = Objects.requireNonNull(key);
+        this.detail = detail != null ? detail : "";
+        this.timestampMillis = timestampMillis;
+    }
+
+    // Gap-free and increasing, starting at 1
+    public long getSequence() { return sequence; }
+    public Type getType() { return type; }
+    public String getKey() { return key; }
+    public String getDetail() { return detail; }
+    public long getTimestampMillis() { return timestampMillis; }
+
+    @Override
+    public String toString() {
+        return String.format("ChangeEvent{seq=%d, type=%s, key='%s', detail='%s'}", sequence, type, key, detail);
+    }
+}
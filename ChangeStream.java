@@ -0,0 +1,726 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+// Ordered change events from Library and the DAOs, held in a bounded ring buffer that subscribers read
+// at their own pace, in batches. A publisher waits (up to publishTimeoutMillis) while the ring is full
+// of events some subscriber hasn't read yet: that is the back-pressure. After the timeout the event is
+// published anyway and the slow subscriber is overrun.
+// A journaled stream also appends every event to segment files (changes-<first sequence>.seg, rolled at
+// segmentBytes), so an overrun or restarted subscriber carries on from disk. Subscribers commit their
+// position to <name>.offset in the same directory and subscribe(name) resumes after it (at-least-once).
+// The journal is buffered, so a crash can lose its newest events; changes.sequence (forced to disk, a
+// block of sequences ahead) keeps a reopened stream from handing those sequences out a second time.
+class ChangeStream implements AutoCloseable {
+    private static final String SEGMENT_PREFIX = "changes-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String OFFSET_SUFFIX = ".offset";
+    private static final String SEQUENCE_FILE = "changes.sequence";
+    private static final long SEQUENCE_RESERVE = 4096;
+    private static final long OFFSET_COMPACT_BYTES = 64 * 1024;
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+    private static final Pattern SUBSCRIBER_NAME = Pattern.compile("[A-Za-z0-9._-]+");
+    private static final ChangeEvent.Type[] TYPES = ChangeEvent.Type.values();
+
+    private static final OperationMetrics PUBLISH = Metrics.operation("changes.publish");
+    private static final OperationMetrics POLL = Metrics.operation("changes.poll");
+
+    private final ChangeEvent[] ring;
+    private final int mask;
+    private final long publishTimeoutMillis;
+    private final Path dir;               // null for an in-memory stream
+    private final long segmentBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition notEmpty = lock.newCondition();
+    // Guarded by lock
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private final TreeMap<Long, Path> segments = new TreeMap<>();   // first sequence -> file
+    private long published;               // sequence of the newest event, 0 before the first
+    private long ringStart = 1;           // first sequence ever put in the ring; older ones are only on disk
+    private OutputStream journal;
+    private long journalBytes;
+    private FileChannel sequenceFile;
+    private long reserved;                // highest sequence recorded in changes.sequence
+    private boolean closed;
+
+    // Statistics, guarded by lock
+    private long overruns;
+    private long journalFailures;
+    private long publishWaitNanos;
+
+    // In memory only: a subscriber that falls more than capacity events behind loses events
+    ChangeStream(int capacity, long publishTimeoutMillis) {
+        this(capacity, publishTimeoutMillis, null, 0);
+    }
+
+    private ChangeStream(int capacity, long publishTimeoutMillis, Path dir, long segmentBytes) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.ring = new ChangeEvent[capacity];
+        this.mask = capacity - 1;
+        this.publishTimeoutMillis = publishTimeoutMillis;
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+    }
+
+    // Continues the sequence found in dir, if any
+    static ChangeStream open(Path dir, int capacity, long publishTimeoutMillis, long segmentBytes) throws IOException {
+        if (segmentBytes < 1) {
+            throw new IllegalArgumentException("Segment size must be positive: " + segmentBytes);
+        }
+        Files.createDirectories(dir);
+        ChangeStream stream = new ChangeStream(capacity, publishTimeoutMillis, dir, segmentBytes);
+        stream.recover();
+        return stream;
+    }
+
+    // ── Publishing ────────────────────────────────────────────
+    // Returns the event's sequence, or -1 once the stream is closed. Never throws: publishers call this
+    // after their change is made, so a journal write error is logged and counted instead.
+    long publish(ChangeEvent.Type type, String key, String detail) {
+        return publish(type, key, () -> detail);
+    }
+
+    // detail is evaluated in sequence order, so for one key the newest event always carries the newest state
+    long publish(ChangeEvent.Type type, String key, Supplier<String> detail) {
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            if (closed) {
+                return -1;
+            }
+            long seq = published + 1;
+            awaitRoom(seq);
+            if (dir != null && seq > reserved) {
+                try {
+                    reserveSequences(seq + SEQUENCE_RESERVE);
+                } catch (IOException e) {
+                    journalFailures++;
+                    LibraryLog.error("Error reserving change sequences: " + e.getMessage());
+                }
+            }
+            ChangeEvent event = new ChangeEvent(seq, type, key, detail.get(), System.currentTimeMillis());
+            ring[(int) seq & mask] = event;
+            published = seq;
+            if (dir != null) {
+                try {
+                    append(event);
+                } catch (IOException e) {
+                    journalFailures++;
+                    closeJournalQuietly();   // the next event starts a fresh segment
+                    LibraryLog.error("Error writing change journal: " + e.getMessage());
+                }
+            }
+            notEmpty.signalAll();
+            PUBLISH.success(start, 1);
+            return seq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Waits while taking the slot for seq would drop an event that a subscriber is about to read.
+    // Subscribers already further behind read from the journal (or are overrun) and don't hold publishers up.
+    private void awaitRoom(long seq) {
+        long wrapped = seq - ring.length;
+        if (wrapped < ringStart || !isNeeded(wrapped)) {
+            return;
+        }
+        long waitStart = System.nanoTime();
+        long remaining = TimeUnit.MILLISECONDS.toNanos(publishTimeoutMillis);
+        try {
+            while (isNeeded(wrapped)) {
+                if (remaining <= 0) {
+                    overruns++;
+                    return;
+                }
+                remaining = notFull.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            overruns++;
+        } finally {
+            publishWaitNanos += System.nanoTime() - waitStart;
+        }
+    }
+
+    private boolean isNeeded(long seq) {
+        for (Subscription s : subscriptions) {
+            if (s.next == seq) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long oldestInRing() {
+        return Math.max(ringStart, published - ring.length + 1);
+    }
+
+    public long getLastSequence() {
+        lock.lock();
+        try {
+            return published;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ── Subscribing ───────────────────────────────────────────
+    // Resumes after the position last committed under this name; otherwise starts with the next event
+    Subscription subscribe(String name) throws IOException {
+        long committed = dir != null ? readOffset(name) : -1;
+        lock.lock();
+        try {
+            return subscribe(name, committed >= 0 ? committed + 1 : published + 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // fromSequence is the first event to deliver; it must still be retained (in the ring or on disk)
+    Subscription subscribe(String name, long fromSequence) {
+        if (!SUBSCRIBER_NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid subscriber name: " + name);
+        }
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Change stream is closed");
+            }
+            long first = dir != null && !segments.isEmpty() ? segments.firstKey() : oldestInRing();
+            if (fromSequence < first && fromSequence <= published) {
+                throw new IllegalArgumentException("Events before " + first + " are no longer retained");
+            }
+            for (Subscription s : subscriptions) {
+                if (s.name.equals(name)) {
+                    throw new IllegalStateException("Subscriber " + name + " is already connected");
+                }
+            }
+            Subscription s = new Subscription(name, Math.min(Math.max(fromSequence, 1), published + 1));
+            subscriptions.add(s);
+            return s;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Retention: deletes whole segments holding only events before sequence (e.g. the lowest committed
+    // position of all subscribers). Returns the number of files deleted.
+    public int deleteSegmentsBefore(long sequence) throws IOException {
+        List<Path> doomed = new ArrayList<>();
+        lock.lock();
+        try {
+            Long first;
+            while (segments.size() > 1 && (first = segments.higherKey(segments.firstKey())) != null
+                    && first <= sequence) {
+                doomed.add(segments.pollFirstEntry().getValue());
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Path file : doomed) {
+            Files.deleteIfExists(file);
+        }
+        return doomed.size();
+    }
+
+    // Pushes buffered journal bytes to the OS (reads from disk do this themselves)
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            if (journal != null) {
+                journal.flush();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+            try {
+                if (journal != null) {
+                    journal.close();
+                    journal = null;
+                }
+            } finally {
+                if (sequenceFile != null) {
+                    try {
+                        reserveSequences(published);   // clean shutdown: reopen continues without a gap
+                    } finally {
+                        sequenceFile.close();
+                        sequenceFile = null;
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Stats getStats() {
+        lock.lock();
+        try {
+            long maxLag = 0;
+            for (Subscription s : subscriptions) {
+                maxLag = Math.max(maxLag, published - (s.next - 1));
+            }
+            return new Stats(published, subscriptions.size(), maxLag, overruns, publishWaitNanos,
+                    journalFailures, segments.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ── Journal ───────────────────────────────────────────────
+    // Record: int length, then seq, timestamp, type, key and detail (each string as int length + UTF-8)
+    private static byte[] encode(ChangeEvent e) {
+        byte[] key = e.getKey().getBytes(StandardCharsets.UTF_8);
+        byte[] detail = e.getDetail().getBytes(StandardCharsets.UTF_8);
+        int length = 8 + 8 + 1 + 4 + key.length + 4 + detail.length;
+        ByteBuffer b = ByteBuffer.allocate(4 + length);
+        b.putInt(length).putLong(e.getSequence()).putLong(e.getTimestampMillis()).put((byte) e.getType().ordinal());
+        b.putInt(key.length).put(key).putInt(detail.length).put(detail);
+        return b.array();
+    }
+
+    // null at the end of the segment, including a record torn by a crash or still being written
+    private static ChangeEvent readRecord(DataInputStream in) throws IOException {
+        byte[] body;
+        try {
+            int length = in.readInt();
+            if (length < 25 || length > MAX_RECORD_BYTES) {
+                return null;
+            }
+            body = new byte[length];
+            in.readFully(body);
+        } catch (EOFException e) {
+            return null;
+        }
+        ByteBuffer b = ByteBuffer.wrap(body);
+        long seq = b.getLong();
+        long timestamp = b.getLong();
+        ChangeEvent.Type type = TYPES[b.get()];
+        String key = readString(b);
+        String detail = readString(b);
+        return new ChangeEvent(seq, type, key, detail, timestamp);
+    }
+
+    private static String readString(ByteBuffer b) {
+        byte[] bytes = new byte[b.getInt()];
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Must hold the lock. Writes are buffered; readers flush before they read.
+    private void append(ChangeEvent event) throws IOException {
+        if (journal != null && journalBytes >= segmentBytes) {
+            journal.close();
+            journal = null;
+        }
+        if (journal == null) {
+            Path file = dir.resolve(SEGMENT_PREFIX + String.format("%020d", event.getSequence()) + SEGMENT_SUFFIX);
+            journal = new BufferedOutputStream(Files.newOutputStream(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), 64 * 1024);
+            journalBytes = 0;
+            segments.put(event.getSequence(), file);
+        }
+        byte[] record = encode(event);
+        journal.write(record);
+        journalBytes += record.length;
+    }
+
+    // Must hold the lock. Sequences up to upTo may be handed out once this returns.
+    private void reserveSequences(long upTo) throws IOException {
+        if (sequenceFile == null) {
+            sequenceFile = FileChannel.open(dir.resolve(SEQUENCE_FILE), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        sequenceFile.write(ByteBuffer.allocate(8).putLong(0, upTo), 0);
+        sequenceFile.force(false);
+        reserved = upTo;
+    }
+
+    private void closeJournalQuietly() {
+        try {
+            if (journal != null) {
+                journal.close();
+            }
+        } catch (IOException ignored) {
+            // already failing; the error has been logged
+        } finally {
+            journal = null;
+        }
+    }
+
+    // Finds the segments, cuts a torn last record off the newest one and continues its sequence, or
+    // after the reserved block when a crash lost events that had already been handed out
+    private void recover() throws IOException {
+        Path sequencePath = dir.resolve(SEQUENCE_FILE);
+        if (Files.exists(sequencePath) && Files.size(sequencePath) >= 8) {
+            reserved = ByteBuffer.wrap(Files.readAllBytes(sequencePath)).getLong();
+            published = reserved;
+            ringStart = reserved + 1;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())), file);
+                }
+            });
+        }
+        if (segments.isEmpty()) {
+            return;
+        }
+        Map.Entry<Long, Path> last = segments.lastEntry();
+        long lastSeq = last.getKey() - 1;
+        long validBytes = 0;
+        try (DataInputStream in = openSegment(last.getValue())) {
+            ChangeEvent e;
+            while ((e = readRecord(in)) != null) {
+                lastSeq = e.getSequence();
+                validBytes += encode(e).length;
+            }
+        }
+        try (FileChannel ch = FileChannel.open(last.getValue(), StandardOpenOption.WRITE)) {
+            if (ch.size() > validBytes) {
+                LibraryLog.warn("Truncating torn change journal record in " + last.getValue());
+                ch.truncate(validBytes);
+            }
+        }
+        if (lastSeq > published) {
+            published = lastSeq;
+            ringStart = lastSeq + 1;
+        }
+        if (validBytes == 0) {
+            Files.delete(last.getValue());   // recreated by the first append
+            segments.remove(last.getKey());
+        } else {
+            journal = new BufferedOutputStream(Files.newOutputStream(last.getValue(),
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND), 64 * 1024);
+            journalBytes = validBytes;
+        }
+    }
+
+    private static DataInputStream openSegment(Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024));
+    }
+
+    // ── Offsets ───────────────────────────────────────────────
+    // <name>.offset is a run of 8-byte positions, newest last; rewritten to one entry when it grows large
+    private long readOffset(String name) throws IOException {
+        Path file = dir.resolve(name + OFFSET_SUFFIX);
+        if (!Files.exists(file)) {
+            return -1;
+        }
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long entries = ch.size() / 8;
+            if (entries == 0) {
+                return -1;
+            }
+            ByteBuffer b = ByteBuffer.allocate(8);
+            ch.read(b, (entries - 1) * 8);
+            return b.getLong(0);
+        }
+    }
+
+    private void writeOffset(String name, long position) throws IOException {
+        Path file = dir.resolve(name + OFFSET_SUFFIX);
+        ByteBuffer b = ByteBuffer.allocate(8).putLong(0, position);
+        if (Files.exists(file) && Files.size(file) >= OFFSET_COMPACT_BYTES) {
+            Path tmp = dir.resolve(name + OFFSET_SUFFIX + ".tmp");
+            Files.write(tmp, b.array());
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ch.write(b);
+        }
+    }
+
+    // ── Subscription ──────────────────────────────────────────
+    // One consumer's cursor. poll() and commit() are meant to be called from a single thread.
+    final class Subscription implements AutoCloseable {
+        private final String name;
+        private long next;                     // next sequence to deliver; guarded by lock
+        private DataInputStream reader;        // journal position for catching up from disk
+        private long readerSegment;
+        private long readerNext;
+
+        private Subscription(String name, long next) {
+            this.name = name;
+            this.next = next;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        // Sequence of the last event handed out by poll, 0 before the first
+        public long getPosition() {
+            lock.lock();
+            try {
+                return next - 1;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Up to maxBatch events in sequence order, waiting up to timeoutMillis for the first one; empty on
+        // timeout. An in-memory subscriber that was overrun gets IllegalStateException once and then
+        // continues with the oldest event still in the ring.
+        public List<ChangeEvent> poll(int maxBatch, long timeoutMillis) throws IOException {
+            if (maxBatch < 1) {
+                throw new IllegalArgumentException("Batch size must be positive: " + maxBatch);
+            }
+            long start = System.nanoTime();
+            try {
+                List<ChangeEvent> batch = nextBatch(maxBatch, timeoutMillis);
+                POLL.success(start, batch.size());
+                return batch;
+            } catch (IOException | RuntimeException e) {
+                POLL.failure(start);
+                throw e;
+            }
+        }
+
+        private List<ChangeEvent> nextBatch(int maxBatch, long timeoutMillis) throws IOException {
+            long from;
+            long upTo;
+            lock.lock();
+            try {
+                long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+                while (next > published) {
+                    if (remaining <= 0 || closed || !subscriptions.contains(this)) {
+                        return Collections.emptyList();
+                    }
+                    try {
+                        remaining = notEmpty.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for change events", e);
+                    }
+                }
+                from = next;
+                long oldest = oldestInRing();
+                if (from >= oldest) {
+                    int n = (int) Math.min(maxBatch, published - from + 1);
+                    List<ChangeEvent> batch = new ArrayList<>(n);
+                    for (int i = 0; i < n; i++) {
+                        batch.add(ring[(int) (from + i) & mask]);
+                    }
+                    next = from + n;
+                    notFull.signalAll();
+                    return batch;
+                }
+                if (dir == null) {
+                    next = oldest;
+                    notFull.signalAll();
+                    throw new IllegalStateException("Subscriber " + name + " was overrun: events " + from
+                            + ".." + (oldest - 1) + " are lost");
+                }
+                if (journal != null) {
+                    journal.flush();
+                }
+                upTo = Math.min(published, from + maxBatch - 1);
+            } finally {
+                lock.unlock();
+            }
+
+            // Behind the ring: read from the journal without holding up publishers
+            List<ChangeEvent> batch = readJournal(from, upTo);
+            lock.lock();
+            try {
+                if (batch.isEmpty()) {
+                    next = oldestInRing();   // missing from disk too (journal write failures)
+                    LibraryLog.warn("Change journal has no events " + from + ".." + (next - 1)
+                            + "; subscriber " + name + " skips them");
+                } else {
+                    next = batch.get(batch.size() - 1).getSequence() + 1;
+                }
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            return batch;
+        }
+
+        // Everything up to upTo has been flushed, so an early end of segment means "go to the next one"
+        private List<ChangeEvent> readJournal(long from, long upTo) throws IOException {
+            List<ChangeEvent> batch = new ArrayList<>((int) Math.min(upTo - from + 1, 1024));
+            if (reader == null || readerNext != from) {
+                closeReader();
+                if (!openReaderAt(from)) {
+                    return batch;
+                }
+            }
+            long last = from - 1;
+            while (last < upTo) {
+                ChangeEvent e = readRecord(reader);
+                if (e == null) {
+                    closeReader();
+                    Long segment = segmentAfter(readerSegment);
+                    if (segment == null || !openReader(segment) && !openReaderAt(last + 1)) {
+                        break;
+                    }
+                    continue;
+                }
+                if (e.getSequence() < from) {
+                    continue;
+                }
+                batch.add(e);
+                last = e.getSequence();
+            }
+            readerNext = last + 1;
+            return batch;
+        }
+
+        // Retention may delete segments under a reader; falls back to whichever segment now holds seq
+        private boolean openReaderAt(long seq) throws IOException {
+            Long tried = null;
+            Long segment;
+            while ((segment = segmentAtOrBefore(seq)) != null && !segment.equals(tried)) {
+                if (openReader(segment)) {
+                    return true;
+                }
+                tried = segment;
+            }
+            return false;
+        }
+
+        // false if the segment has been deleted meanwhile
+        private boolean openReader(long segment) throws IOException {
+            Path file;
+            lock.lock();
+            try {
+                file = segments.get(segment);
+            } finally {
+                lock.unlock();
+            }
+            if (file == null) {
+                return false;
+            }
+            try {
+                reader = openSegment(file);
+            } catch (NoSuchFileException e) {
+                return false;
+            }
+            readerSegment = segment;
+            return true;
+        }
+
+        private void closeReader() throws IOException {
+            if (reader != null) {
+                reader.close();
+                reader = null;
+            }
+        }
+
+        // Persists getPosition(); a restarted subscribe(name) continues after it
+        public void commit() throws IOException {
+            if (dir == null) {
+                throw new IllegalStateException("Offsets need a journaled stream");
+            }
+            writeOffset(name, getPosition());
+        }
+
+        // Stops the subscription; it no longer holds publishers back
+        @Override
+        public void close() throws IOException {
+            lock.lock();
+            try {
+                subscriptions.remove(this);
+                notFull.signalAll();
+                notEmpty.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            closeReader();
+        }
+    }
+
+    private Long segmentAtOrBefore(long seq) {
+        lock.lock();
+        try {
+            Long key = segments.floorKey(seq);
+            return key != null ? key : (segments.isEmpty() ? null : segments.firstKey());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Long segmentAfter(long first) {
+        lock.lock();
+        try {
+            return segments.higherKey(first);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Latencies in nanoseconds; maxLag is how many events the slowest subscriber has yet to read
+    public static final class Stats {
+        public final long lastSequence;
+        public final int subscribers;
+        public final long maxLag;
+        public final long overruns;
+        public final long publishWaitNanos;
+        public final long journalFailures;
+        public final int segments;
+
+        Stats(long lastSequence, int subscribers, long maxLag, long overruns, long publishWaitNanos,
+              long journalFailures, int segments) {
+            this.lastSequence = lastSequence;
+            this.subscribers = subscribers;
+            this.maxLag = maxLag;
+            this.overruns = overruns;
+            this.publishWaitNanos = publishWaitNanos;
+            this.journalFailures = journalFailures;
+            this.segments = segments;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Changes{last=%d, subscribers=%d, maxLag=%d, overruns=%d, publishWait=%.3fms, " +
+                            "journalFailures=%d, segments=%d}",
+                    lastSequence, subscribers, maxLag, overruns, publishWaitNanos / 1e6, journalFailures, segments);
+        }
+    }
+}
@@ -0,0 +1,317 @@
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// Column-oriented book store for very large catalogs: one array per field instead of one Book
+// (plus a Year, plus a HashMap entry) per title. Authors and genres are dictionary-encoded, the year
+// and copy counters are shorts, and ISBN-13s are packed into a long keying an open-addressing map.
+// get() hands out ordinary Book objects; borrow/return on them writes straight back to the store.
+// A live row has at most one Book at a time (held weakly, so idle rows cost nothing): concurrent callers
+// share its CAS counter and can't both take the last copy. Views of removed or replaced rows stop
+// writing back.
+class CompactCatalog implements Book.AvailabilityListener {
+    private static final int NOT_FOUND = -1;
+    // Packed ISBN layout: 13 digits in the low bits, formatting flag in bit 60
+    private static final long HYPHENATED = 1L << 60;   // "978-0132350884" style
+
+    private long[] isbns;          // packed ISBN, or -1 - index into irregularIsbns
+    private String[] titles;
+    private int[] authorIds;
+    private short[] genreIds;
+    private short[] years;
+    private short[] totalCopies;
+    private short[] availableCopies;
+    private long[] liveBits;       // cleared on remove; slots are not reused
+    private int rows;
+    private int liveRows;
+
+    private final LongIntHashMap rowByIsbn;
+    private final Map<String, Integer> rowByIrregularIsbn = new HashMap<>();   // ISBNs that don't pack
+    private final List<String> irregularIsbns = new ArrayList<>();
+    private final Dictionary authors = new Dictionary();
+    private final Dictionary genres = new Dictionary();
+    private final Map<Integer, View> views = new HashMap<>();
+    private final ReferenceQueue<Book> collectedViews = new ReferenceQueue<>();
+
+    CompactCatalog(int expectedBooks) {
+        int capacity = Math.max(16, expectedBooks);
+        isbns = new long[capacity];
+        titles = new String[capacity];
+        authorIds = new int[capacity];
+        genreIds = new short[capacity];
+        years = new short[capacity];
+        totalCopies = new short[capacity];
+        availableCopies = new short[capacity];
+        liveBits = new long[(capacity + 63) >>> 6];
+        rowByIsbn = new LongIntHashMap(expectedBooks);
+    }
+
+    // A rejected book leaves any existing row for its ISBN in place
+    public synchronized void add(Book book) {
+        int year = book.getPublicationYear().getValue();
+        if (year < Short.MIN_VALUE || year > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Publication year out of range: " + year);
+        }
+        if (book.getTotalCopies() > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many copies: " + book.getTotalCopies());
+        }
+        int genre = genres.idOf(book.getGenre());
+        if (genre > Short.MAX_VALUE) {
+            throw new IllegalStateException("Too many distinct genres");
+        }
+        int existing = rowOf(book.getIsbn());
+        if (existing != NOT_FOUND) {
+            markRemoved(existing);
+        }
+        ensureCapacity(rows + 1);
+
+        int row = rows++;
+        long packed = pack(book.getIsbn());
+        if (packed >= 0) {
+            isbns[row] = packed;
+            rowByIsbn.put(packed, row);
+        } else {
+            isbns[row] = -1 - irregularIsbns.size();
+            irregularIsbns.add(book.getIsbn());
+            rowByIrregularIsbn.put(book.getIsbn(), row);
+        }
+        titles[row] = book.getTitle();
+        authorIds[row] = authors.idOf(book.getAuthor());
+        genreIds[row] = (short) genre;
+        years[row] = (short) year;
+        totalCopies[row] = (short) book.getTotalCopies();
+        availableCopies[row] = (short) book.getAvailableCopies();
+        setBit(liveBits, row, true);
+        liveRows++;
+    }
+
+    public synchronized boolean remove(String isbn) {
+        int row = rowOf(isbn);
+        if (row == NOT_FOUND) {
+            return false;
+        }
+        markRemoved(row);
+        return true;
+    }
+
+    public synchronized Optional<Book> get(String isbn) {
+        int row = rowOf(isbn);
+        return row == NOT_FOUND ? Optional.empty() : Optional.of(view(row));
+    }
+
+    public synchronized boolean isAvailable(String isbn) {
+        int row = rowOf(isbn);
+        return row != NOT_FOUND && availableCopies[row] > 0;
+    }
+
+    public synchronized int size() {
+        return liveRows;
+    }
+
+    // Every live book, in insertion order
+    public synchronized List<Book> books() {
+        List<Book> result = new ArrayList<>(liveRows);
+        for (int row = 0; row < rows; row++) {
+            if (getBit(liveBits, row)) {
+                result.add(view(row));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void availabilityChanged(Book book, boolean available) {
+        // copiesChanged follows every transition and stores the counts
+    }
+
+    // Stores the counts as read now, so updates applied out of order still converge
+    @Override
+    public synchronized void copiesChanged(Book book) {
+        int row = rowOf(book.getIsbn());
+        View current = row != NOT_FOUND ? views.get(row) : null;
+        if (current != null && current.get() == book) {
+            totalCopies[row] = (short) book.getTotalCopies();
+            availableCopies[row] = (short) book.getAvailableCopies();
+        }
+    }
+
+    // ── Footprint ─────────────────────────────────────────────
+    // Estimated retained bytes (64-bit JVM, compressed oops, compact Latin-1 strings)
+    public synchronized long footprintBytes() {
+        long bytes = arrayBytes(isbns.length, 8) + arrayBytes(titles.length, 4)
+                + arrayBytes(authorIds.length, 4) + arrayBytes(genreIds.length, 2)
+                + arrayBytes(years.length, 2) + arrayBytes(totalCopies.length, 2) + arrayBytes(availableCopies.length, 2)
+                + arrayBytes(liveBits.length, 8) + rowByIsbn.footprintBytes()
+                + authors.footprintBytes() + genres.footprintBytes();
+        for (int row = 0; row < rows; row++) {
+            if (titles[row] != null) {
+                bytes += stringBytes(titles[row]);
+            }
+        }
+        for (String isbn : irregularIsbns) {
+            bytes += stringBytes(isbn) + 48;   // string + HashMap entry and boxed row
+        }
+        return bytes;
+    }
+
+    public synchronized String footprintReport() {
+        long bytes = footprintBytes();
+        return String.format("CompactCatalog{books=%d, authors=%d, genres=%d, bytes=%d, bytesPerBook=%.1f}",
+                liveRows, authors.size(), genres.size(), bytes, liveRows == 0 ? 0.0 : (double) bytes / liveRows);
+    }
+
+    static long stringBytes(String s) {
+        boolean latin1 = s.chars().allMatch(c -> c < 256);
+        return 24 + arrayBytes(s.length(), latin1 ? 1 : 2);
+    }
+
+    private static long arrayBytes(int length, int elementSize) {
+        return (16 + (long) length * elementSize + 7) & ~7L;
+    }
+
+    // ── Internals ─────────────────────────────────────────────
+    // The row's current view, or a new one built from the columns
+    private Book view(int row) {
+        expungeCollectedViews();
+        View existing = views.get(row);
+        Book book = existing != null ? existing.get() : null;
+        if (book == null) {
+            book = new Book(isbnAt(row), titles[row], authors.valueOf(authorIds[row]),
+                    Year.of(years[row]), genres.valueOf(genreIds[row]), totalCopies[row]);
+            book.setCopies(totalCopies[row], availableCopies[row]);
+            book.setAvailabilityListener(this);
+            views.put(row, new View(book, row, collectedViews));
+        }
+        return book;
+    }
+
+    private void expungeCollectedViews() {
+        View collected;
+        while ((collected = (View) collectedViews.poll()) != null) {
+            views.remove(collected.row, collected);
+        }
+    }
+
+    private int rowOf(String isbn) {
+        long packed = pack(isbn);
+        int row = packed >= 0 ? rowByIsbn.get(packed, NOT_FOUND) : rowByIrregularIsbn.getOrDefault(isbn, NOT_FOUND);
+        return row != NOT_FOUND && getBit(liveBits, row) ? row : NOT_FOUND;
+    }
+
+    private void markRemoved(int row) {
+        views.remove(row);
+        setBit(liveBits, row, false);
+        titles[row] = null;
+        long packed = isbns[row];
+        if (packed >= 0) {
+            rowByIsbn.remove(packed);
+        } else {
+            rowByIrregularIsbn.remove(irregularIsbns.get((int) (-1 - packed)));
+        }
+        liveRows--;
+    }
+
+    private String isbnAt(int row) {
+        long packed = isbns[row];
+        if (packed < 0) {
+            return irregularIsbns.get((int) (-1 - packed));
+        }
+        String digits = String.format("%013d", packed & ~HYPHENATED);
+        return (packed & HYPHENATED) != 0 ? digits.substring(0, 3) + "-" + digits.substring(3) : digits;
+    }
+
+    // "9780132350884" or "978-0132350884" -> packed long; anything else -> -1
+    static long pack(String isbn) {
+        int length = isbn.length();
+        boolean hyphenated = length == 14 && isbn.charAt(3) == '-';
+        if (length != 13 && !hyphenated) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            if (hyphenated && i == 3) {
+                continue;
+            }
+            char c = isbn.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return hyphenated ? value | HYPHENATED : value;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= isbns.length) {
+            return;
+        }
+        int capacity = Math.max(needed, isbns.length + (isbns.length >> 1));
+        isbns = Arrays.copyOf(isbns, capacity);
+        titles = Arrays.copyOf(titles, capacity);
+        authorIds = Arrays.copyOf(authorIds, capacity);
+        genreIds = Arrays.copyOf(genreIds, capacity);
+        years = Arrays.copyOf(years, capacity);
+        totalCopies = Arrays.copyOf(totalCopies, capacity);
+        availableCopies = Arrays.copyOf(availableCopies, capacity);
+        liveBits = Arrays.copyOf(liveBits, (capacity + 63) >>> 6);
+    }
+
+    private static boolean getBit(long[] bits, int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    private static void setBit(long[] bits, int i, boolean value) {
+        if (value) {
+            bits[i >>> 6] |= 1L << i;
+        } else {
+            bits[i >>> 6] &= ~(1L << i);
+        }
+    }
+
+    private static final class View extends WeakReference<Book> {
+        final int row;
+
+        View(Book book, int row, ReferenceQueue<Book> queue) {
+            super(book, queue);
+            this.row = row;
+        }
+    }
+
+    // Interned string <-> dense int id
+    private static final class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int idOf(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+            }
+            return id;
+        }
+
+        String valueOf(int id) {
+            return values.get(id);
+        }
+
+        int size() {
+            return values.size();
+        }
+
+        long footprintBytes() {
+            long bytes = arrayBytes(values.size(), 4) + arrayBytes(Integer.highestOneBit(Math.max(1, ids.size())) * 2, 4);
+            for (String v : values) {
+                bytes += stringBytes(v) + 32 + 16;   // HashMap node + boxed id
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,495 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+class ConnectionPool {
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minIdle;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final int validationTimeoutSeconds;
+    private final int statementCacheSize;   // per connection; 0 disables the cache
+
+    // Guarded by "this"
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();   // LIFO → warmest connection first
+    private int total;       // idle + borrowed + being opened
+    private int active;      // currently handed out
+    private int waiters;
+    private boolean closed;
+
+    // Statistics, guarded by "this"
+    private long acquireCount;
+    private long acquireNanosTotal;
+    private long acquireNanosMax;
+    private long timeouts;
+    private long created;
+    private long evicted;
+    private long validationFailures;
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+
+    public ConnectionPool(String url, String user, String password,
+                          int minIdle, int maxSize,
+                          long acquireTimeoutMillis, long idleTimeoutMillis,
+                          int validationTimeoutSeconds, int statementCacheSize) {
+        if (maxSize < 1 || minIdle < 0 || minIdle > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minIdle + ", max=" + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minIdle = minIdle;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.statementCacheSize = Math.max(0, statementCacheSize);
+    }
+
+    // Opens connections until minIdle are idle (or maxSize is reached)
+    public void warmUp() throws SQLException {
+        while (true) {
+            synchronized (this) {
+                if (closed || idle.size() >= minIdle || total >= maxSize) {
+                    return;
+                }
+                total++;
+            }
+            Connection physical;
+            try {
+                physical = open();
+            } catch (SQLException e) {
+                synchronized (this) {
+                    total--;
+                    notifyAll();
+                }
+                throw e;
+            }
+            synchronized (this) {
+                idle.push(new PooledConnection(physical));
+                notifyAll();
+            }
+        }
+    }
+
+    public Connection acquire() throws SQLException {
+        long start = System.nanoTime();
+        long deadline = start + acquireTimeoutMillis * 1_000_000L;
+
+        while (true) {
+            PooledConnection candidate = null;
+            boolean mustOpen = false;
+
+            synchronized (this) {
+                while (true) {
+                    if (closed) {
+                        throw new SQLException("Connection pool is closed");
+                    }
+                    evictIdle(System.currentTimeMillis());
+                    if (!idle.isEmpty()) {
+                        candidate = idle.pop();
+                        active++;
+                        break;
+                    }
+                    if (total < maxSize) {
+                        total++;
+                        active++;
+                        mustOpen = true;
+                        break;
+                    }
+                    long remainingNanos = deadline - System.nanoTime();
+                    if (remainingNanos <= 0) {
+                        timeouts++;
+                        throw new SQLTimeoutException("Timed out after " + acquireTimeoutMillis
+                                + " ms waiting for a database connection (max " + maxSize + ")");
+                    }
+                    waiters++;
+                    try {
+                        long millis = Math.max(1, remainingNanos / 1_000_000L);
+                        wait(millis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a database connection", e);
+                    } finally {
+                        waiters--;
+                    }
+                }
+            }
+
+            if (mustOpen) {
+                try {
+                    candidate = new PooledConnection(open());
+                } catch (SQLException e) {
+                    discard(null);
+                    throw e;
+                }
+            } else if (!isValid(candidate.physical)) {
+                synchronized (this) {
+                    validationFailures++;
+                }
+                discard(candidate);
+                continue;   // try the next idle connection or open a new one
+            }
+
+            recordAcquire(System.nanoTime() - start);
+            return candidate.borrow();
+        }
+    }
+
+    // Closes idle connections and makes further acquires fail; borrowed ones are closed on release
+    public void close() {
+        Deque<PooledConnection> toClose;
+        synchronized (this) {
+            closed = true;
+            toClose = new ArrayDeque<>(idle);
+            total -= idle.size();
+            idle.clear();
+            notifyAll();
+        }
+        for (PooledConnection pc : toClose) {
+            closeQuietly(pc.physical);
+        }
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(active, idle.size(), total, waiters, maxSize,
+                acquireCount,
+                acquireCount == 0 ? 0 : acquireNanosTotal / acquireCount,
+                acquireNanosMax, timeouts, created, evicted, validationFailures,
+                statementHits.sum(), statementMisses.sum());
+    }
+
+    // ── Internals ─────────────────────────────────────────────
+    private Connection open() throws SQLException {
+        Connection c = DriverManager.getConnection(url, user, password);
+        synchronized (this) {
+            created++;
+        }
+        return c;
+    }
+
+    private boolean isValid(Connection c) {
+        try {
+            return !c.isClosed() && c.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    // Must hold the monitor; drops connections idle longer than idleTimeout while above minIdle
+    private void evictIdle(long now) {
+        if (idleTimeoutMillis <= 0) {
+            return;
+        }
+        Iterator<PooledConnection> it = idle.descendingIterator();   // oldest first
+        while (it.hasNext() && idle.size() > minIdle) {
+            PooledConnection pc = it.next();
+            if (now - pc.lastReturnedAt < idleTimeoutMillis) {
+                break;
+            }
+            it.remove();
+            total--;
+            evicted++;
+            closeQuietly(pc.physical);
+        }
+    }
+
+    private synchronized void recordAcquire(long nanos) {
+        acquireCount++;
+        acquireNanosTotal += nanos;
+        if (nanos > acquireNanosMax) {
+            acquireNanosMax = nanos;
+        }
+    }
+
+    private void discard(PooledConnection pc) {
+        if (pc != null) {
+            closeQuietly(pc.physical);
+        }
+        synchronized (this) {
+            total--;
+            active--;
+            notifyAll();
+        }
+    }
+
+    private void release(PooledConnection pc) {
+        pc.returnStatements();
+        boolean reusable;
+        try {
+            reusable = !pc.physical.isClosed();
+            if (reusable && !pc.physical.getAutoCommit()) {
+                pc.physical.rollback();      // never leak a half-finished transaction to the next borrower
+                pc.physical.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            reusable = false;
+        }
+
+        synchronized (this) {
+            if (reusable && !closed) {
+                pc.lastReturnedAt = System.currentTimeMillis();
+                idle.push(pc);
+                active--;
+                notifyAll();
+                return;
+            }
+        }
+        discard(pc);
+    }
+
+    private static void closeQuietly(AutoCloseable c) {
+        try {
+            c.close();
+        } catch (Exception ignored) {
+            // connection or statement is being thrown away anyway
+        }
+    }
+
+    // One physical connection; each borrow hands out a fresh proxy so a stale handle can't be reused
+    private final class PooledConnection {
+        final Connection physical;
+        long lastReturnedAt = System.currentTimeMillis();
+        // Statements prepared through prepareStatement(sql) stay open across borrows, least recently
+        // used first; only the current borrower touches them
+        private final LinkedHashMap<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        PreparedStatement prepare(Connection owner, String sql) throws SQLException {
+            CachedStatement cached = statements.get(sql);
+            if (cached != null && cached.borrowed) {
+                statementMisses.increment();
+                return physical.prepareStatement(sql);   // same SQL open twice at once: the second isn't cached
+            }
+            if (cached == null || cached.broken) {
+                statementMisses.increment();
+                if (cached != null) {
+                    closeQuietly(cached.physical);
+                }
+                cached = new CachedStatement(physical.prepareStatement(sql));
+                statements.put(sql, cached);
+                PreparedStatement handle = cached.borrow(owner);
+                evictStatements();
+                return handle;
+            }
+            statementHits.increment();
+            return cached.borrow(owner);
+        }
+
+        private void evictStatements() {
+            Iterator<CachedStatement> it = statements.values().iterator();
+            while (statements.size() > statementCacheSize && it.hasNext()) {
+                CachedStatement cached = it.next();
+                if (!cached.borrowed) {
+                    it.remove();
+                    closeQuietly(cached.physical);
+                }
+            }
+        }
+
+        // Statements the borrower forgot to close go back with the connection
+        void returnStatements() {
+            for (CachedStatement cached : statements.values()) {
+                if (cached.borrowed) {
+                    cached.giveBack();
+                }
+            }
+        }
+
+        Connection borrow() {
+            InvocationHandler handler = new InvocationHandler() {
+                private boolean released;
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    switch (method.getName()) {
+                        case "close":
+                            if (!released) {
+                                released = true;
+                                release(PooledConnection.this);
+                            }
+                            return null;
+                        case "isClosed":
+                            return released || physical.isClosed();
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return "PooledConnection[" + physical + "]";
+                        case "prepareStatement":
+                            if (!released && statementCacheSize > 0 && args.length == 1) {
+                                return prepare((Connection) proxy, (String) args[0]);
+                            }
+                            return delegate(method, args);   // other overloads (cursors, generated keys) are not cached
+                        default:
+                            return delegate(method, args);
+                    }
+                }
+
+                private Object delegate(Method method, Object[] args) throws Throwable {
+                    if (released) {
+                        throw new SQLException("Connection already returned to the pool");
+                    }
+                    try {
+                        return method.invoke(physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+            };
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+        }
+    }
+
+    // A prepared statement kept open on its connection. Each borrow hands out a proxy whose close()
+    // closes the open result set and clears parameters and batch, then puts the statement back; settings
+    // such as fetch size survive, so callers that change them should not go through the cache.
+    private static final class CachedStatement {
+        final PreparedStatement physical;
+        boolean borrowed;
+        boolean broken;       // reset failed; replaced on the next prepare
+        private Handle current;
+
+        CachedStatement(PreparedStatement physical) {
+            this.physical = physical;
+        }
+
+        PreparedStatement borrow(Connection owner) {
+            borrowed = true;
+            current = new Handle(owner);
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, current);
+        }
+
+        void giveBack() {
+            if (current == null || current.released) {
+                return;
+            }
+            current.released = true;
+            try {
+                if (current.results != null) {
+                    current.results.close();
+                }
+                physical.clearParameters();
+                physical.clearBatch();
+            } catch (SQLException e) {
+                broken = true;
+            }
+            current = null;
+            borrowed = false;
+        }
+
+        private final class Handle implements InvocationHandler {
+            private final Connection owner;
+            ResultSet results;   // the latest one; executing again closes the previous one anyway
+            boolean released;
+
+            Handle(Connection owner) {
+                this.owner = owner;
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        if (!released) {
+                            giveBack();
+                        }
+                        return null;
+                    case "isClosed":
+                        return released || physical.isClosed();
+                    case "getConnection":
+                        return owner;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "CachedStatement[" + physical + "]";
+                    default:
+                        if (released) {
+                            throw new SQLException("Statement already closed");
+                        }
+                        Object result;
+                        try {
+                            result = method.invoke(physical, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                        if (result instanceof ResultSet) {
+                            results = (ResultSet) result;
+                        }
+                        return result;
+                }
+            }
+        }
+    }
+
+    // Snapshot of pool state, latencies in nanoseconds
+    public static final class Stats {
+        public final int active;
+        public final int idle;
+        public final int total;
+        public final int waiters;
+        public final int maxSize;
+        public final long acquireCount;
+        public final long avgAcquireNanos;
+        public final long maxAcquireNanos;
+        public final long timeouts;
+        public final long created;
+        public final long evicted;
+        public final long validationFailures;
+        public final long statementCacheHits;
+        public final long statementCacheMisses;
+
+        Stats(int active, int idle, int total, int waiters, int maxSize,
+              long acquireCount, long avgAcquireNanos, long maxAcquireNanos,
+              long timeouts, long created, long evicted, long validationFailures,
+              long statementCacheHits, long statementCacheMisses) {
+            this.active = active;
+            this.idle = idle;
+            this.total = total;
+            this.waiters = waiters;
+            this.maxSize = maxSize;
+            this.acquireCount = acquireCount;
+            this.avgAcquireNanos = avgAcquireNanos;
+            this.maxAcquireNanos = maxAcquireNanos;
+            this.timeouts = timeouts;
+            this.created = created;
+            this.evicted = evicted;
+            this.validationFailures = validationFailures;
+            this.statementCacheHits = statementCacheHits;
+            this.statementCacheMisses = statementCacheMisses;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Pool{active=%d, idle=%d, total=%d/%d, waiters=%d, acquires=%d, " +
+                            "avgAcquire=%.3fms, maxAcquire=%.3fms, timeouts=%d, created=%d, evicted=%d, invalid=%d, " +
+                            "statementHits=%d, statementMisses=%d}",
+                    active, idle, total, maxSize, waiters, acquireCount,
+                    avgAcquireNanos / 1e6, maxAcquireNanos / 1e6, timeouts, created, evicted, validationFailures,
+                    statementCacheHits, statementCacheMisses);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+import java.util.Arrays;
+
+// Consistent hashing of string keys onto shards 0..shardCount-1. Each shard owns virtualNodes points
+// on a 64-bit ring; a key belongs to the first point at or after its hash. Going from n to n+1 shards
+// moves only ~1/(n+1) of the keys, all of them to the new shard.
+final class ConsistentHashRing {
+    private final int shardCount;
+    private final long[] points;    // sorted
+    private final int[] owners;     // owners[i] owns points[i]
+
+    ConsistentHashRing(int shardCount, int virtualNodes) {
+        if (shardCount < 1 || virtualNodes < 1) {
+            throw new IllegalArgumentException("Need at least one shard and one virtual node");
+        }
+        this.shardCount = shardCount;
+        int n = shardCount * virtualNodes;
+        long[][] entries = new long[n][];
+        for (int shard = 0; shard < shardCount; shard++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                entries[shard * virtualNodes + v] = new long[]{hash("shard-" + shard + "#" + v), shard};
+            }
+        }
+        Arrays.sort(entries, (a, b) -> Long.compare(a[0], b[0]));
+        points = new long[n];
+        owners = new int[n];
+        for (int i = 0; i < n; i++) {
+            points[i] = entries[i][0];
+            owners[i] = (int) entries[i][1];
+        }
+    }
+
+    int shardFor(String key) {
+        int i = Arrays.binarySearch(points, hash(key));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return owners[i == points.length ? 0 : i];
+    }
+
+    int shardCount() {
+        return shardCount;
+    }
+
+    // FNV-1a over the chars, then the MurmurHash3 finalizer to spread similar keys (ISBNs) around the ring
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
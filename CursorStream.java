@@ -0,0 +1,74 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Lazily reads a query through a server-side cursor: rows are fetched fetchSize at a time
+// and the connection stays borrowed until the stream is closed (use try-with-resources).
+final class CursorStream {
+    static final int DEFAULT_FETCH_SIZE = 500;
+
+    interface ParameterSetter {
+        void set(PreparedStatement pstmt) throws SQLException;
+    }
+
+    private CursorStream() {
+    }
+
+    static <T> Stream<T> open(String sql, ParameterSetter params, int fetchSize, RowMapper<T> mapper)
+            throws SQLException {
+        Connection conn = DatabaseConnection.getConnection();
+        PreparedStatement pstmt = null;
+        ResultSet rs;
+        try {
+            conn.setAutoCommit(false);   // PostgreSQL only honours fetchSize inside a transaction
+            pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            pstmt.setFetchSize(fetchSize);
+            params.set(pstmt);
+            rs = pstmt.executeQuery();
+        } catch (SQLException e) {
+            closeAll(null, pstmt, conn);
+            throw e;
+        }
+
+        PreparedStatement stmt = pstmt;
+        Spliterator<T> rows = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                try {
+                    while (rs.next()) {
+                        T row = mapper.map(rs);
+                        if (row != null) {
+                            action.accept(row);
+                            return true;
+                        }
+                    }
+                    return false;
+                } catch (SQLException e) {
+                    throw new IllegalStateException("Error reading cursor: " + e.getMessage(), e);
+                }
+            }
+        };
+        return StreamSupport.stream(rows, false).onClose(() -> closeAll(rs, stmt, conn));
+    }
+
+    private static void closeAll(ResultSet rs, PreparedStatement pstmt, Connection conn) {
+        try {
+            if (rs != null) rs.close();
+            if (pstmt != null) pstmt.close();
+        } catch (SQLException e) {
+            LibraryLog.error("Error closing cursor: " + e.getMessage());
+        } finally {
+            try {
+                conn.close();   // returns the connection to the pool (open transaction is rolled back)
+            } catch (SQLException e) {
+                LibraryLog.error("Error releasing connection: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+
+// Unchecked, classified wrapper for SQLException, used by the async DAO facade
+class DataAccessException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    enum Kind {
+        CONNECTION,    // can't reach the database / pool exhausted
+        TIMEOUT,       // statement or connection acquire timed out
+        CONSTRAINT,    // duplicate key, foreign key, check constraint
+        CONFLICT,      // serialization failure / deadlock, safe to retry
+        OTHER
+    }
+
+    private final Kind kind;
+    private final String operation;
+
+    DataAccessException(String operation, SQLException cause) {
+        super(operation + " failed: " + cause.getMessage(), cause);
+        this.operation = operation;
+        this.kind = classify(cause);
+    }
+
+    public Kind getKind() { return kind; }
+    public String getOperation() { return operation; }
+    public String getSqlState() { return ((SQLException) getCause()).getSQLState(); }
+
+    public boolean isRetryable() {
+        return kind == Kind.CONFLICT || kind == Kind.TIMEOUT || kind == Kind.CONNECTION;
+    }
+
+    // SQLSTATE classes: 08 connection, 23 integrity, 40 transaction rollback, 57014 query canceled
+    static Kind classify(SQLException e) {
+        if (e instanceof SQLTimeoutException) {
+            return Kind.TIMEOUT;
+        }
+        String state = e.getSQLState();
+        if (state == null) {
+            return Kind.OTHER;
+        }
+        if (state.startsWith("08")) return Kind.CONNECTION;
+        if (state.startsWith("23")) return Kind.CONSTRAINT;
+        if (state.startsWith("40")) return Kind.CONFLICT;
+        if (state.equals("57014")) return Kind.TIMEOUT;
+        return Kind.OTHER;
+    }
+}
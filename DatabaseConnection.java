@@ -1,25 +1,142 @@
+import java.lang.reflect.Method;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
 
 public class DatabaseConnection {
     private static final String URL = "jdbc:postgresql://localhost:5432/digital_library1337";
     private static final String USER = "postgres";
     private static final String PASSWORD = "1488";
 
+    // Pool defaults; override with configure() before first use (e.g. an in-process jdbc:h2:mem: URL for tests)
+    private static final int DEFAULT_MIN_IDLE = 2;
+    private static final int DEFAULT_MAX_SIZE = 10;
+    private static final long DEFAULT_ACQUIRE_TIMEOUT_MS = 5_000;
+    private static final long DEFAULT_IDLE_TIMEOUT_MS = 5 * 60_000;
+    private static final int DEFAULT_VALIDATION_TIMEOUT_S = 2;
+    static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;   // prepared statements kept per connection
+    static final long REPLAY_SAFETY_LAG_SECONDS = 60;    // see changeTrackingMark
+
+    // pgjdbc's PGStatement.setPrepareThreshold, looked up reflectively so other drivers need no PostgreSQL jar
+    private static final Class<?> PG_STATEMENT = optionalClass("org.postgresql.PGStatement");
+    private static final Method SET_PREPARE_THRESHOLD = optionalMethod(PG_STATEMENT, "setPrepareThreshold", int.class);
+
+    private static ConnectionPool pool;
+
+    // Connections are pooled: close() hands the connection back instead of closing the socket
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(URL, USER, PASSWORD);
+        return pool().acquire();
+    }
+
+    public static synchronized void configure(String url, String user, String password,
+                                              int minIdle, int maxSize,
+                                              long acquireTimeoutMillis, long idleTimeoutMillis) {
+        configure(url, user, password, minIdle, maxSize, acquireTimeoutMillis, idleTimeoutMillis,
+                DEFAULT_STATEMENT_CACHE_SIZE);
+    }
+
+    // statementCacheSize 0 prepares every statement afresh
+    public static synchronized void configure(String url, String user, String password,
+                                              int minIdle, int maxSize,
+                                              long acquireTimeoutMillis, long idleTimeoutMillis,
+                                              int statementCacheSize) {
+        if (pool != null) {
+            pool.close();
+        }
+        pool = new ConnectionPool(url, user, password, minIdle, maxSize,
+                acquireTimeoutMillis, idleTimeoutMillis, DEFAULT_VALIDATION_TIMEOUT_S, statementCacheSize);
+    }
+
+    public static ConnectionPool.Stats getPoolStats() {
+        return pool().getStats();
+    }
+
+    public static synchronized void shutdown() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+    }
+
+    private static synchronized ConnectionPool pool() {
+        if (pool == null) {
+            pool = new ConnectionPool(URL, USER, PASSWORD, DEFAULT_MIN_IDLE, DEFAULT_MAX_SIZE,
+                    DEFAULT_ACQUIRE_TIMEOUT_MS, DEFAULT_IDLE_TIMEOUT_MS, DEFAULT_VALIDATION_TIMEOUT_S,
+                    DEFAULT_STATEMENT_CACHE_SIZE);
+        }
+        return pool;
+    }
+
+    // Through the connection's statement cache. serverPrepared makes PostgreSQL plan the statement on
+    // the server from its first execution instead of after pgjdbc's prepareThreshold (5) executions of
+    // the same statement object; other drivers ignore it.
+    static PreparedStatement prepare(Connection conn, String sql, boolean serverPrepared) throws SQLException {
+        PreparedStatement pstmt = conn.prepareStatement(sql);
+        if (serverPrepared && SET_PREPARE_THRESHOLD != null && pstmt.isWrapperFor(PG_STATEMENT)) {
+            try {
+                SET_PREPARE_THRESHOLD.invoke(pstmt.unwrap(PG_STATEMENT), 1);
+            } catch (ReflectiveOperationException e) {
+                LibraryLog.warn("Could not enable server-side prepare: " + e);
+            }
+        }
+        return pstmt;
+    }
+
+    private static Class<?> optionalClass(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static Method optionalMethod(Class<?> type, String name, Class<?>... parameters) {
+        try {
+            return type != null ? type.getMethod(name, parameters) : null;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    // The database clock, so change-tracking marks never depend on this machine's clock
+    public static Timestamp currentDatabaseTime() throws SQLException {
+        try (Connection conn = getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT now()")) {
+            rs.next();
+            return rs.getTimestamp(1);
+        }
+    }
+
+    // High-water mark for change replay. updated_at/deleted_at are transaction start times, so a
+    // transaction still open now can commit rows stamped before now(): the mark goes back to the oldest
+    // open transaction, and never later than now() - REPLAY_SAFETY_LAG for transactions of other roles,
+    // which pg_stat_activity doesn't show. Replays are idempotent, so the overlap only costs re-reads.
+    public static Timestamp changeTrackingMark() throws SQLException {
+        String sql = "SELECT LEAST(now() - make_interval(secs => ?), " +
+                "(SELECT min(xact_start) FROM pg_stat_activity WHERE xact_start IS NOT NULL))";
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, REPLAY_SAFETY_LAG_SECONDS);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                return rs.getTimestamp(1);
+            }
+        }
     }
 
     public static void testConnection() {
         try (Connection conn = getConnection()) {
             if (conn != null) {
-                System.out.println("Connected to PostgreSQL successfully");
+                LibraryLog.info("Connected to PostgreSQL successfully");
             } else {
-                System.out.println("Failed to connect to database");
+                LibraryLog.info("Failed to connect to database");
             }
         } catch (SQLException e) {
-            System.err.println("Connection error: " + e.getMessage());
+            LibraryLog.error("Connection error: " + e.getMessage());
         }
     }
 }
\ No newline at end of file
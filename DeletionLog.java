@@ -0,0 +1,33 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+// Reads the tombstones that BookDAO.deleteBook / LibraryUserDAO.deleteUser leave in "deletions"
+final class DeletionLog {
+
+    private DeletionLog() {
+    }
+
+    static List<String> keysDeletedSince(String entity, Timestamp since) throws SQLException {
+        List<String> keys = new ArrayList<>();
+        String sql = "SELECT entity_key FROM deletions WHERE entity = ? AND deleted_at >= ? ORDER BY deleted_at";
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setString(1, entity);
+            pstmt.setTimestamp(2, since);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    keys.add(rs.getString(1));
+                }
+            }
+        }
+
+        return keys;
+    }
+}
@@ -0,0 +1,413 @@
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Typo- and accent-tolerant lookup of short texts such as author names and titles. Texts are
+// normalized (accents stripped, ł/ø/ß and friends folded, lower-cased, punctuation dropped) and split
+// into words. Each query word is looked up in the word vocabulary through a trigram index: the q-gram
+// count filter leaves only words that can be within the allowed edits, and a banded edit-distance check
+// confirms them. Texts are then scored by how well their words cover the query, so "Robert Martin"
+// finds "Robert C. Martin" and "kowalksa" finds "Kowalska". Cost depends on the vocabulary, not on
+// the number of texts. Searches share a read lock; add/remove take the write lock.
+class FuzzyIndex<T> {
+    static final double DEFAULT_MIN_SCORE = 0.5;
+    private static final int MAX_QUERY_WORDS = 16;
+    private static final int SIM_SCALE = 1000;   // word similarity in thousandths
+    private static final int MAX_BUCKETED_LENGTH = 24;   // longer words share the last posting bucket
+    // Query words found in more texts than this (initials, "john", "the") only add to the score of texts
+    // the rarer query words found, instead of making every one of those texts a candidate
+    private static final int COMMON_WORD_TEXTS = 10_000;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Guarded by lock
+    private final HashMap<String, Integer> wordIds = new HashMap<>();
+    private final ArrayList<String> words = new ArrayList<>();
+    private final ArrayList<IntList> textsByWord = new ArrayList<>();
+    private final HashMap<String, IntList[]> wordsByGram = new HashMap<>();   // gram -> word ids by word length
+    private final HashMap<String, Integer> textIds = new HashMap<>();   // normalized text -> id
+    private final ArrayList<String> texts = new ArrayList<>();           // as added
+    private final ArrayList<int[]> textWords = new ArrayList<>();        // distinct word ids per text
+    private final ArrayList<List<T>> values = new ArrayList<>();          // empty once every value is removed
+    private int liveTexts;
+
+    public void add(String text, T value) {
+        String normalized = normalize(text);
+        if (normalized.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            Integer id = textIds.get(normalized);
+            if (id == null) {
+                id = texts.size();
+                textIds.put(normalized, id);
+                texts.add(text);
+                values.add(new ArrayList<>(1));
+                String[] ws = words(normalized);
+                int[] wordList = new int[ws.length];
+                for (int i = 0; i < ws.length; i++) {
+                    wordList[i] = wordId(ws[i]);
+                    textsByWord.get(wordList[i]).add(id);
+                }
+                textWords.add(wordList);
+            }
+            List<T> vs = values.get(id);
+            if (vs.isEmpty()) {
+                texts.set(id, text);
+                liveTexts++;
+            }
+            vs.add(value);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Ids of emptied texts stay allocated (and are skipped) so re-adding the same text is cheap
+    public boolean remove(String text, T value) {
+        String normalized = normalize(text);
+        lock.writeLock().lock();
+        try {
+            Integer id = textIds.get(normalized);
+            if (id == null) {
+                return false;
+            }
+            List<T> vs = values.get(id);
+            if (!vs.remove(value)) {
+                return false;
+            }
+            if (vs.isEmpty()) {
+                liveTexts--;
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveTexts;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Best matches first, at most limit, none scoring below minScore. A score of 1 is an exact match
+    // (after normalization); misspelt words, missing or extra words each lower it.
+    public List<Match<T>> search(String query, int limit, double minScore) {
+        String[] queryWords = words(normalize(query));
+        if (queryWords.length == 0 || limit <= 0) {
+            return Collections.emptyList();
+        }
+        if (queryWords.length > MAX_QUERY_WORDS) {
+            queryWords = Arrays.copyOf(queryWords, MAX_QUERY_WORDS);
+        }
+        lock.readLock().lock();
+        try {
+            List<List<int[]>> variants = new ArrayList<>(queryWords.length);
+            int rarest = 0;
+            long[] texts = new long[queryWords.length];
+            for (int q = 0; q < queryWords.length; q++) {
+                variants.add(similarWords(queryWords[q]));
+                for (int[] variant : variants.get(q)) {
+                    texts[q] += textsByWord.get(variant[0]).size;
+                }
+                if (texts[q] < texts[rarest]) {
+                    rarest = q;
+                }
+            }
+            // text id -> (sum of matched word similarities) * 64 + matched query words
+            LongIntHashMap matched = new LongIntHashMap(256);
+            List<LongIntHashMap> common = new ArrayList<>();
+            for (int q = 0; q < queryWords.length; q++) {
+                if (q == rarest || texts[q] <= COMMON_WORD_TEXTS) {
+                    collect(variants.get(q), matched);
+                } else {
+                    LongIntHashMap similarity = new LongIntHashMap(variants.get(q).size());
+                    for (int[] variant : variants.get(q)) {
+                        similarity.put(variant[0], variant[1]);
+                    }
+                    common.add(similarity);
+                }
+            }
+            return top(matched, common, queryWords.length, limit, minScore);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Credits each text once per query word, with the best-matching variant (variants come best first)
+    private void collect(List<int[]> variants, LongIntHashMap matched) {
+        LongIntHashMap credited = variants.size() > 1 ? new LongIntHashMap(64) : null;
+        for (int[] variant : variants) {
+            IntList textList = textsByWord.get(variant[0]);
+            for (int i = 0; i < textList.size; i++) {
+                int text = textList.values[i];
+                if (credited != null) {
+                    if (credited.get(text, 0) != 0) {
+                        continue;
+                    }
+                    credited.put(text, 1);
+                }
+                matched.put(text, matched.get(text, 0) + variant[1] * 64 + 1);
+            }
+        }
+    }
+
+    // common: word id -> similarity for each query word that was not walked
+    private List<Match<T>> top(LongIntHashMap matched, List<LongIntHashMap> common, int queryWordCount,
+                               int limit, double minScore) {
+        PriorityQueue<Match<T>> best = new PriorityQueue<>(limit + 1, Match.BEST_FIRST.reversed());
+        matched.forEach((key, packed) -> {
+            int id = (int) key;
+            List<T> vs = values.get(id);
+            if (vs.isEmpty()) {
+                return;
+            }
+            int[] wordList = textWords.get(id);
+            int hits = packed & 63;
+            int similarity = packed >>> 6;
+            for (LongIntHashMap queryWord : common) {
+                int bestWord = 0;
+                for (int w : wordList) {
+                    bestWord = Math.max(bestWord, queryWord.get(w, 0));
+                }
+                if (bestWord > 0) {
+                    similarity += bestWord;
+                    hits++;
+                }
+            }
+            double coverage = (double) similarity / SIM_SCALE / queryWordCount;
+            // Extra words in the text ("Robert C. Martin" for "Robert Martin") cost up to 20%
+            double score = coverage * (0.8 + 0.2 * hits / Math.max(hits, wordList.length));
+            if (score < minScore) {
+                return;
+            }
+            if (best.size() < limit || score > best.peek().score) {
+                best.add(new Match<>(texts.get(id), score, new ArrayList<>(vs)));
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+        });
+        List<Match<T>> result = new ArrayList<>(best);
+        result.sort(Match.BEST_FIRST);
+        return result;
+    }
+
+    // {word id, similarity in thousandths} for vocabulary words within the allowed edits, best first.
+    // Short words must match exactly, up to 8 letters one edit, longer ones two.
+    private List<int[]> similarWords(String queryWord) {
+        int maxEdits = queryWord.length() <= 3 ? 0 : queryWord.length() <= 8 ? 1 : 2;
+        List<int[]> result = new ArrayList<>();
+        if (maxEdits == 0) {
+            Integer id = wordIds.get(queryWord);
+            if (id != null) {
+                result.add(new int[]{id, SIM_SCALE});
+            }
+            return result;
+        }
+        // An edit destroys at most 3 of the query's trigrams (a swap 4), so a match keeps at least this
+        // many; only postings of words whose length is within maxEdits are read
+        Set<String> grams = grams(queryWord);
+        int minShared = Math.max(1, grams.size() - 4 * maxEdits);
+        int fromBucket = bucket(queryWord.length() - maxEdits);
+        int toBucket = bucket(queryWord.length() + maxEdits);
+        LongIntHashMap shared = new LongIntHashMap(1024);
+        for (String gram : grams) {
+            IntList[] byLength = wordsByGram.get(gram);
+            if (byLength == null) {
+                continue;
+            }
+            for (int b = fromBucket; b <= toBucket; b++) {
+                IntList posting = byLength[b];
+                for (int i = 0; posting != null && i < posting.size; i++) {
+                    shared.put(posting.values[i], shared.get(posting.values[i], 0) + 1);
+                }
+            }
+        }
+        int[][] rows = new int[3][queryWord.length() + maxEdits + 1];
+        shared.forEach((id, count) -> {
+            if (count < minShared) {
+                return;
+            }
+            String word = words.get((int) id);
+            int distance = boundedEditDistance(queryWord, word, maxEdits, rows);
+            if (distance <= maxEdits) {
+                int longer = Math.max(queryWord.length(), word.length());
+                result.add(new int[]{(int) id, SIM_SCALE - SIM_SCALE * distance / longer});
+            }
+        });
+        result.sort((a, b) -> Integer.compare(b[1], a[1]));
+        return result;
+    }
+
+    // Must hold the write lock
+    private int wordId(String word) {
+        Integer id = wordIds.get(word);
+        if (id != null) {
+            return id;
+        }
+        int newId = words.size();
+        wordIds.put(word, newId);
+        words.add(word);
+        textsByWord.add(new IntList());
+        int b = bucket(word.length());
+        for (String gram : grams(word)) {
+            IntList[] byLength = wordsByGram.computeIfAbsent(gram, g -> new IntList[MAX_BUCKETED_LENGTH + 1]);
+            if (byLength[b] == null) {
+                byLength[b] = new IntList();
+            }
+            byLength[b].add(newId);
+        }
+        return newId;
+    }
+
+    private static int bucket(int length) {
+        return Math.max(0, Math.min(length, MAX_BUCKETED_LENGTH));
+    }
+
+    // ── Text helpers ──────────────────────────────────────────
+    // Lower-case ASCII-ish form: "Łukasz Żółć-Kowalska" -> "lukasz zolc kowalska"
+    static String normalize(String s) {
+        String decomposed = Normalizer.normalize(s, Normalizer.Form.NFKD);
+        StringBuilder sb = new StringBuilder(decomposed.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            String folded = fold(c);
+            if (folded != null || Character.isLetterOrDigit(c)) {
+                if (pendingSpace && sb.length() > 0) {
+                    sb.append(' ');
+                }
+                pendingSpace = false;
+                if (folded != null) {
+                    sb.append(folded);
+                } else {
+                    sb.append(Character.toLowerCase(c));
+                }
+            } else {
+                pendingSpace = true;
+            }
+        }
+        return sb.toString();
+    }
+
+    // Letters that NFKD leaves alone
+    private static String fold(char c) {
+        switch (c) {
+            case 'ł': case 'Ł': return "l";
+            case 'ø': case 'Ø': return "o";
+            case 'đ': case 'Đ': return "d";
+            case 'ı': return "i";
+            case 'ß': return "ss";
+            case 'æ': case 'Æ': return "ae";
+            case 'œ': case 'Œ': return "oe";
+            case 'þ': case 'Þ': return "th";
+            default: return null;
+        }
+    }
+
+    // Distinct words in order of appearance
+    private static String[] words(String normalized) {
+        if (normalized.isEmpty()) {
+            return new String[0];
+        }
+        return Arrays.stream(normalized.split(" ")).distinct().toArray(String[]::new);
+    }
+
+    // Trigrams of "$word$", so the first and last letters count as much as the middle ones
+    private static Set<String> grams(String word) {
+        String padded = '$' + word + '$';
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        return grams;
+    }
+
+    // Edit distance counting a swap of adjacent letters as one edit ("kowalksa"), if it is at most max,
+    // otherwise max + 1; only the diagonal band of width 2*max is filled. rows: three scratch arrays
+    // longer than b.
+    static int boundedEditDistance(String a, String b, int max, int[][] rows) {
+        if (Math.abs(a.length() - b.length()) > max) {
+            return max + 1;
+        }
+        int[] prev2 = rows[0];
+        int[] prev = rows[1];
+        int[] cur = rows[2];
+        for (int j = 0; j <= b.length(); j++) {
+            prev[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            int from = Math.max(1, i - max);
+            int to = Math.min(b.length(), i + max);
+            Arrays.fill(cur, 0, b.length() + 1, max + 1);
+            cur[0] = i;
+            int rowMin = from == 1 ? i : max + 1;
+            for (int j = from; j <= to; j++) {
+                char ca = a.charAt(i - 1);
+                char cb = b.charAt(j - 1);
+                int d = Math.min(prev[j - 1] + (ca == cb ? 0 : 1), Math.min(prev[j] + 1, cur[j - 1] + 1));
+                if (i > 1 && j > 1 && ca == b.charAt(j - 2) && a.charAt(i - 2) == cb) {
+                    d = Math.min(d, prev2[j - 2] + 1);
+                }
+                cur[j] = Math.min(d, max + 1);
+                rowMin = Math.min(rowMin, cur[j]);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int[] swap = prev2;
+            prev2 = prev;
+            prev = cur;
+            cur = swap;
+        }
+        return Math.min(prev[b.length()], max + 1);
+    }
+
+    // Growable int array; no boxing in the postings
+    private static final class IntList {
+        int[] values = new int[2];
+        int size;
+
+        void add(int v) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = v;
+        }
+    }
+
+    public static final class Match<T> {
+        static final Comparator<Match<?>> BEST_FIRST =
+                Comparator.<Match<?>>comparingDouble(m -> -m.score).thenComparing(m -> m.text);
+
+        public final String text;
+        public final double score;
+        public final List<T> values;
+
+        Match(String text, double score, List<T> values) {
+            this.text = text;
+            this.score = score;
+            this.values = Collections.unmodifiableList(values);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Match{text='%s', score=%.3f, values=%d}", text, score, values.size());
+        }
+    }
+}
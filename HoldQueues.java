@@ -0,0 +1,135 @@
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Per-book hold queues. Each book has its own lock-free skip list ordered by (priority, arrival), so
+// placing, cancelling and allocating holds on one popular title never blocks any other title.
+class HoldQueues {
+    interface HoldListener {
+        void holdFilled(Hold hold, Book book);
+    }
+
+    // What happened when the book was offered to one holder
+    enum Offer {
+        TAKEN,        // the holder borrowed it; the hold is filled
+        SKIPPED,      // the holder can't take it right now; keeps their place
+        DROPPED,      // the hold is void (e.g. the holder already has a copy); removed
+        EXHAUSTED     // no copy left to offer; the hold keeps its place and allocation stops
+    }
+
+    interface OfferHandler {
+        Offer offer(Hold hold);
+    }
+
+    private final boolean premiumPriority;
+    private final AtomicLong sequence = new AtomicLong();
+    private final ConcurrentHashMap<String, Queue> queues = new ConcurrentHashMap<>();
+
+    // With premiumPriority, every premium hold is served before any regular one (FIFO within each class)
+    HoldQueues(boolean premiumPriority) {
+        this.premiumPriority = premiumPriority;
+    }
+
+    // Throws if the user already holds this book
+    Hold place(LibraryUser user, String isbn) {
+        int priority = premiumPriority && user instanceof PremiumUser ? 0 : 1;
+        Hold hold = new Hold(isbn, user.getId(), priority, sequence.incrementAndGet(), Instant.now());
+        Queue q = queues.computeIfAbsent(isbn, k -> new Queue());
+        if (q.byUser.putIfAbsent(user.getId(), hold) != null) {
+            throw new IllegalStateException(user.getName() + " already has a hold on " + isbn);
+        }
+        q.waiting.add(hold);
+        return hold;
+    }
+
+    boolean cancel(String userId, String isbn) {
+        Queue q = queues.get(isbn);
+        if (q == null) {
+            return false;
+        }
+        Hold hold = q.byUser.remove(userId);
+        return hold != null && q.waiting.remove(hold);
+    }
+
+    boolean hasWaiting(String isbn) {
+        Queue q = queues.get(isbn);
+        return q != null && !q.waiting.isEmpty();
+    }
+
+    int waitingCount(String isbn) {
+        Queue q = queues.get(isbn);
+        return q == null ? 0 : q.waiting.size();
+    }
+
+    // Offers the book to holders in queue order until one takes it or it runs out (see Offer).
+    // Each hold is claimed by removing it from the skip list, so concurrent allocators never hand
+    // the same hold out twice.
+    Hold allocate(String isbn, OfferHandler handler) {
+        Queue q = queues.get(isbn);
+        if (q == null) {
+            return null;
+        }
+        for (Hold hold : q.waiting) {
+            if (!q.waiting.remove(hold)) {
+                continue;   // claimed by another allocator or cancelled
+            }
+            switch (handler.offer(hold)) {
+                case TAKEN:
+                    q.byUser.remove(hold.getUserId(), hold);
+                    return hold;
+                case DROPPED:
+                    q.byUser.remove(hold.getUserId(), hold);
+                    break;
+                case EXHAUSTED:
+                    restore(q, hold);
+                    return null;
+                default:
+                    restore(q, hold);
+                    break;
+            }
+        }
+        return null;
+    }
+
+    private static void restore(Queue q, Hold hold) {
+        // Same sequence number, so the hold goes back to its old place unless it was cancelled meanwhile
+        if (q.byUser.get(hold.getUserId()) == hold) {
+            q.waiting.add(hold);
+        }
+    }
+
+    private static final class Queue {
+        final ConcurrentSkipListSet<Hold> waiting = new ConcurrentSkipListSet<>(
+                Comparator.comparingInt(Hold::getPriority).thenComparingLong(Hold::getSequence));
+        final ConcurrentHashMap<String, Hold> byUser = new ConcurrentHashMap<>();
+    }
+
+    static final class Hold {
+        private final String isbn;
+        private final String userId;
+        private final int priority;      // lower is served first
+        private final long sequence;
+        private final Instant placedAt;
+
+        Hold(String isbn, String userId, int priority, long sequence, Instant placedAt) {
+            this.isbn = isbn;
+            this.userId = userId;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.placedAt = placedAt;
+        }
+
+        public String getIsbn() { return isbn; }
+        public String getUserId() { return userId; }
+        public int getPriority() { return priority; }
+        public long getSequence() { return sequence; }
+        public Instant getPlacedAt() { return placedAt; }
+
+        @Override
+        public String toString() {
+            return String.format("Hold{isbn='%s', user='%s', priority=%d, placed=%s}", isbn, userId, priority, placedAt);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Outcome of a bulk insert/import: counts plus the first failures (capped so huge imports stay bounded)
+class ImportResult {
+    static final int MAX_RECORDED_FAILURES = 1000;
+
+    private long inserted;
+    private long failed;
+    private String abortMessage;   // set when the import stopped early; not a row failure
+    private final List<RowFailure> failures = new ArrayList<>();
+
+    void recordInserted(long count) {
+        inserted += count;
+    }
+
+    void recordFailure(long row, String key, String message) {
+        failed++;
+        if (failures.size() < MAX_RECORDED_FAILURES) {
+            failures.add(new RowFailure(row, key, message));
+        }
+    }
+
+    // The rows not reached are neither inserted nor failed
+    void recordAborted(long afterRow, String message) {
+        abortMessage = "Import aborted after row " + afterRow + ": " + message;
+    }
+
+    public long getInserted() { return inserted; }
+    public long getFailed() { return failed; }
+    public List<RowFailure> getFailures() {
+        return Collections.unmodifiableList(failures);
+    }
+    public boolean hasFailures() { return failed > 0; }
+    public boolean isAborted() { return abortMessage != null; }
+    public String getAbortMessage() { return abortMessage; }
+
+    @Override
+    public String toString() {
+        return String.format("ImportResult{inserted=%d, failed=%d%s}", inserted, failed,
+                abortMessage != null ? ", " + abortMessage : "");
+    }
+
+    // row is the 1-based position in the input (line number for file imports)
+    static final class RowFailure {
+        private final long row;
+        private final String key;
+        private final String message;
+
+        RowFailure(long row, String key, String message) {
+            this.row = row;
+            this.key = key;
+            this.message = message;
+        }
+
+        public long getRow() { return row; }
+        public String getKey() { return key; }
+        public String getMessage() { return message; }
+
+        @Override
+        public String toString() {
+            return String.format("row %d (%s): %s", row, key, message);
+        }
+    }
+}
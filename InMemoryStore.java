@@ -0,0 +1,289 @@
+import java.time.LocalDate;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.UnaryOperator;
+
+// CatalogStore and UserStore at memory speed, nothing persisted: for tests, load tests and edge
+// branches without a database. Rows are immutable and live in ConcurrentHashMaps, so reads never block
+// and every write is a CAS (replace/putIfAbsent retried on conflict), never a lock. The ordered reads go
+// through skip-list indexes, (title, isbn) for books and id for users; an index entry whose row is gone
+// (or, for books, has a different title) is stale and skipped.
+class InMemoryStore implements CatalogStore, UserStore {
+    private final ConcurrentHashMap<String, BookRow> books = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<BookRow> byTitle = new ConcurrentSkipListSet<>(BookRow.TITLE_ORDER);
+    private final ConcurrentHashMap<String, UserRow> users = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<String> userIds = new ConcurrentSkipListSet<>();
+
+    // ── Books ─────────────────────────────────────────────────
+    @Override
+    public void insertBook(Book book) {
+        if (!insert(book)) {
+            LibraryLog.error("Error inserting book: duplicate ISBN " + book.getIsbn());
+        }
+    }
+
+    private boolean insert(Book book) {
+        BookRow row = new BookRow(book);
+        if (books.putIfAbsent(row.isbn, row) != null) {
+            return false;
+        }
+        byTitle.add(row);
+        return true;
+    }
+
+    @Override
+    public Book getBookByIsbn(String isbn) {
+        BookRow row = books.get(isbn);
+        return row != null ? row.toBook() : null;
+    }
+
+    @Override
+    public List<Book> getAllBooks() {
+        return getBooksAfter(null, null, Integer.MAX_VALUE);
+    }
+
+    // No loans are kept here, so the one copy's counter is all there is to set
+    @Override
+    public void updateBookAvailability(String isbn, boolean newAvailable) {
+        if (updateBook(isbn, row -> row.totalCopies != 1 ? null : row.withCopies(1, newAvailable ? 1 : 0)) == null) {
+            LibraryLog.info("Book with ISBN=" + isbn + " not found or has several copies (use addCopies)");
+        }
+    }
+
+    @Override
+    public boolean addCopies(String isbn, int count) {
+        return updateBook(isbn, row -> row.availableCopies + count < 0 ? null
+                : row.withCopies(row.totalCopies + count, row.availableCopies + count)) != null;
+    }
+
+    // Retries until no other writer got in between; change returning null leaves the row alone
+    private BookRow updateBook(String isbn, UnaryOperator<BookRow> change) {
+        while (true) {
+            BookRow current = books.get(isbn);
+            if (current == null) {
+                return null;
+            }
+            BookRow updated = change.apply(current);
+            if (updated == null) {
+                return null;
+            }
+            if (books.replace(isbn, current, updated)) {
+                return updated;
+            }
+        }
+    }
+
+    @Override
+    public void deleteBook(String isbn) {
+        // Index entry first: a concurrent insert of the same ISBN can only succeed once the row is gone,
+        // so it never has its fresh index entry removed by this delete
+        BookRow row = books.get(isbn);
+        if (row != null) {
+            byTitle.remove(row);
+        }
+        if (row == null || books.remove(isbn) == null) {
+            LibraryLog.info("Book with ISBN=" + isbn + " not found");
+        }
+    }
+
+    @Override
+    public List<Book> getBooksAfter(String lastTitle, String lastIsbn, int limit) {
+        Iterable<BookRow> keys = lastTitle == null ? byTitle
+                : byTitle.tailSet(BookRow.key(lastTitle, lastIsbn != null ? lastIsbn : ""), false);
+        List<Book> page = new ArrayList<>(Math.min(limit, 1024));
+        for (BookRow key : keys) {
+            if (page.size() >= limit) {
+                break;
+            }
+            BookRow row = books.get(key.isbn);
+            if (row != null && row.title.equals(key.title)) {
+                page.add(row.toBook());
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public ImportResult insertBooks(Iterable<Book> books) {
+        ImportResult result = new ImportResult();
+        long rowNumber = 0;
+        for (Book book : books) {
+            rowNumber++;
+            if (insert(book)) {
+                result.recordInserted(1);
+            } else {
+                result.recordFailure(rowNumber, book.getIsbn(), "duplicate ISBN");
+            }
+        }
+        return result;
+    }
+
+    public int bookCount() {
+        return books.size();
+    }
+
+    // ── Users ─────────────────────────────────────────────────
+    @Override
+    public void insertLibraryUser(LibraryUser user) {
+        if (!insert(user)) {
+            LibraryLog.error("Error inserting user: duplicate id " + user.getId());
+        }
+    }
+
+    private boolean insert(LibraryUser user) {
+        if (users.putIfAbsent(user.getId(), new UserRow(user)) != null) {
+            return false;
+        }
+        userIds.add(user.getId());
+        return true;
+    }
+
+    @Override
+    public LibraryUser getUserById(String id) {
+        UserRow row = users.get(id);
+        return row != null ? row.toUser() : null;
+    }
+
+    @Override
+    public List<LibraryUser> getAllUsers() {
+        return getUsersAfter(null, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void updateUserName(String id, String newName) {
+        while (true) {
+            UserRow current = users.get(id);
+            if (current == null) {
+                LibraryLog.info("User with ID=" + id + " not found");
+                return;
+            }
+            if (users.replace(id, current, current.withName(newName))) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void deleteUser(String id) {
+        // Index entry first, as in deleteBook
+        boolean present = users.containsKey(id);
+        if (present) {
+            userIds.remove(id);
+        }
+        if (!present || users.remove(id) == null) {
+            LibraryLog.info("User with ID=" + id + " not found");
+        }
+    }
+
+    @Override
+    public List<LibraryUser> getUsersAfter(String lastId, int limit) {
+        NavigableSet<String> ids = lastId == null ? userIds : userIds.tailSet(lastId, false);
+        List<LibraryUser> page = new ArrayList<>(Math.min(limit, 1024));
+        for (String id : ids) {
+            if (page.size() >= limit) {
+                break;
+            }
+            UserRow row = users.get(id);
+            if (row != null) {
+                page.add(row.toUser());
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public ImportResult insertUsers(Iterable<? extends LibraryUser> users) {
+        ImportResult result = new ImportResult();
+        long rowNumber = 0;
+        for (LibraryUser user : users) {
+            rowNumber++;
+            if (insert(user)) {
+                result.recordInserted(1);
+            } else {
+                result.recordFailure(rowNumber, user.getId(), "duplicate id");
+            }
+        }
+        return result;
+    }
+
+    public int userCount() {
+        return users.size();
+    }
+
+    // ── Rows ──────────────────────────────────────────────────
+    // Snapshot of a book's stored columns; also used by LogStructuredStore
+    static final class BookRow {
+        static final Comparator<BookRow> TITLE_ORDER =
+                Comparator.<BookRow, String>comparing(r -> r.title).thenComparing(r -> r.isbn);
+
+        final String isbn;
+        final String title;
+        final String author;
+        final int publicationYear;
+        final String genre;
+        final int totalCopies;
+        final int availableCopies;
+
+        BookRow(String isbn, String title, String author, int publicationYear, String genre,
+                int totalCopies, int availableCopies) {
+            this.isbn = isbn;
+            this.title = title;
+            this.author = author;
+            this.publicationYear = publicationYear;
+            this.genre = genre;
+            this.totalCopies = totalCopies;
+            this.availableCopies = availableCopies;
+        }
+
+        BookRow(Book book) {
+            this(book.getIsbn(), book.getTitle(), book.getAuthor(), book.getPublicationYear().getValue(),
+                    book.getGenre(), book.getTotalCopies(), book.getAvailableCopies());
+        }
+
+        // Probe for TITLE_ORDER lookups
+        static BookRow key(String title, String isbn) {
+            return new BookRow(isbn, title, "", 0, "", 0, 0);
+        }
+
+        BookRow withCopies(int total, int available) {
+            return new BookRow(isbn, title, author, publicationYear, genre, total, available);
+        }
+
+        Book toBook() {
+            Book book = new Book(isbn, title, author, Year.of(publicationYear), genre);
+            book.setCopies(totalCopies, availableCopies);
+            return book;
+        }
+    }
+
+    static final class UserRow {
+        final String id;
+        final String name;
+        final LocalDate registrationDate;
+        final boolean premium;
+
+        UserRow(String id, String name, LocalDate registrationDate, boolean premium) {
+            this.id = id;
+            this.name = name;
+            this.registrationDate = registrationDate;
+            this.premium = premium;
+        }
+
+        UserRow(LibraryUser user) {
+            this(user.getId(), user.getName(), user.getRegistrationDate(), user instanceof PremiumUser);
+        }
+
+        UserRow withName(String newName) {
+            return new UserRow(id, newName, registrationDate, premium);
+        }
+
+        LibraryUser toUser() {
+            return premium ? new PremiumUser(id, name, registrationDate) : new RegularUser(id, name, registrationDate);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// The aggregates of LibraryAnalytics kept current on every catalog and loan change, so a report costs
+// O(groups) instead of a pass over the catalog. Counters are LongAdders: borrow/return on different
+// threads never contend on one cache line. Also counts borrows per title per day for most-borrowed
+// queries over the last historyDays days. Library feeds it (see Library.enableIncrementalAnalytics).
+final class IncrementalAnalytics {
+    private final int historyDays;
+    private final Counters overall = new Counters();
+    private final ConcurrentHashMap<String, Counters> byGenre = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Counters> byAuthor = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Counters> byDecade = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicLongArray> loansPerUser = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, ConcurrentHashMap<String, LongAdder>> borrowsByDay =
+            new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, String> titles = new ConcurrentHashMap<>();
+
+    IncrementalAnalytics(int historyDays) {
+        this.historyDays = historyDays;
+    }
+
+    // Starting point from the current catalog; with no changes running meanwhile this matches compute()
+    void seed(Collection<Book> books, Collection<LibraryUser> users) {
+        books.parallelStream().forEach(this::bookAdded);
+        users.parallelStream().forEach(this::userAdded);
+    }
+
+    // ── Catalog ───────────────────────────────────────────────
+    void bookAdded(Book book) {
+        update(book, 1, book.getTotalCopies(), book.getTotalCopies() - book.getAvailableCopies());
+    }
+
+    void bookRemoved(Book book) {
+        update(book, -1, -book.getTotalCopies(), -(book.getTotalCopies() - book.getAvailableCopies()));
+    }
+
+    // Negative for withdrawn copies (always ones on the shelf)
+    void copiesAdded(Book book, int count) {
+        update(book, 0, count, 0);
+    }
+
+    private void update(Book book, int books, int copies, int onLoan) {
+        overall.add(books, copies, onLoan);
+        byGenre.computeIfAbsent(book.getGenre(), k -> new Counters()).add(books, copies, onLoan);
+        byAuthor.computeIfAbsent(book.getAuthor(), k -> new Counters()).add(books, copies, onLoan);
+        byDecade.computeIfAbsent(LibraryAnalytics.decadeOf(book), k -> new Counters()).add(books, copies, onLoan);
+    }
+
+    // ── Users and loans ───────────────────────────────────────
+    void userAdded(LibraryUser user) {
+        histogram(user).incrementAndGet(bucket(user.getBorrowedBooks().size()));
+    }
+
+    void userRemoved(LibraryUser user) {
+        histogram(user).decrementAndGet(bucket(user.getBorrowedBooks().size()));
+    }
+
+    // Called with the user's monitor held, right after the loan was added
+    void borrowed(LibraryUser user, Book book, LocalDate day) {
+        moveUser(user, 1);
+        update(book, 0, 0, 1);
+
+        long epochDay = day.toEpochDay();
+        borrowsByDay.computeIfAbsent(epochDay, d -> new ConcurrentHashMap<>())
+                .computeIfAbsent(book.getIsbn(), k -> new LongAdder()).increment();
+        titles.putIfAbsent(book.getIsbn(), book.getTitle());
+        Map<Long, ?> expired = borrowsByDay.headMap(epochDay - historyDays, true);
+        if (!expired.isEmpty()) {
+            expired.clear();
+        }
+    }
+
+    // A loan re-attached from the database: the book's counts already include it, only the user moves
+    void loanRestored(LibraryUser user) {
+        moveUser(user, 1);
+    }
+
+    // Called with the user's monitor held, right after the loan was removed
+    void returned(LibraryUser user, Book book) {
+        moveUser(user, -1);
+        update(book, 0, 0, -1);
+    }
+
+    // The user's loan count just changed by delta: move them to their new histogram bucket
+    private void moveUser(LibraryUser user, int delta) {
+        int loans = user.getBorrowedBooks().size();
+        AtomicLongArray h = histogram(user);
+        h.decrementAndGet(bucket(loans - delta));
+        h.incrementAndGet(bucket(loans));
+    }
+
+    private AtomicLongArray histogram(LibraryUser user) {
+        return loansPerUser.computeIfAbsent(user.getClass().getSimpleName(),
+                k -> new AtomicLongArray(LibraryAnalytics.MAX_LOANS_TRACKED + 1));
+    }
+
+    private static int bucket(int loans) {
+        return Math.min(loans, LibraryAnalytics.MAX_LOANS_TRACKED);
+    }
+
+    // ── Reports ───────────────────────────────────────────────
+    LibraryAnalytics.Report report() {
+        long start = System.nanoTime();
+        Map<String, LibraryAnalytics.Distribution> loans = new TreeMap<>();
+        loansPerUser.forEach((type, h) -> {
+            long[] copy = new long[h.length()];
+            for (int i = 0; i < copy.length; i++) {
+                copy[i] = h.get(i);
+            }
+            loans.put(type, new LibraryAnalytics.Distribution(type, copy));
+        });
+        return new LibraryAnalytics.Report(overall.toGroup(), groups(byGenre), groups(byAuthor),
+                new TreeMap<>(groups(byDecade)), loans, System.nanoTime() - start);
+    }
+
+    private static <K> Map<K, LibraryAnalytics.Group> groups(Map<K, Counters> counters) {
+        Map<K, LibraryAnalytics.Group> result = new HashMap<>(counters.size() * 2);
+        counters.forEach((key, c) -> {
+            LibraryAnalytics.Group g = c.toGroup();
+            if (g.books != 0) {
+                result.put(key, g);   // groups whose books were all removed drop out
+            }
+        });
+        return result;
+    }
+
+    // Borrows between from and to (inclusive), most first; only the last historyDays days are kept
+    List<LibraryAnalytics.TitleCount> mostBorrowed(LocalDate from, LocalDate to, int limit) {
+        Map<String, long[]> counts = new HashMap<>();
+        for (Map<String, LongAdder> day : borrowsByDay.subMap(from.toEpochDay(), true, to.toEpochDay(), true).values()) {
+            day.forEach((isbn, n) -> counts.computeIfAbsent(isbn, k -> new long[1])[0] += n.sum());
+        }
+        return LibraryAnalytics.top(counts, titles, limit);
+    }
+
+    private static final class Counters {
+        final LongAdder books = new LongAdder();
+        final LongAdder copies = new LongAdder();
+        final LongAdder onLoan = new LongAdder();
+
+        void add(int b, int c, int l) {
+            if (b != 0) {
+                books.add(b);
+            }
+            if (c != 0) {
+                copies.add(c);
+            }
+            if (l != 0) {
+                onLoan.add(l);
+            }
+        }
+
+        LibraryAnalytics.Group toGroup() {
+            return new LibraryAnalytics.Group(books.sum(), copies.sum(), onLoan.sum());
+        }
+    }
+}
@@ -1,65 +1,580 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalTime;
 import java.time.Year;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+// Thread-safe: maps and indexes are concurrent, borrow/return lock only the user and the book involved
+class Library implements AutoCloseable {
+    // Shared by all Library instances; see Metrics for the JMX / scrape export
+    private static final OperationMetrics FIND_BY_ISBN = Metrics.operation("library.findBookByIsbn");
+    private static final OperationMetrics TITLE_CONTAINS = Metrics.operation("library.findBooksByTitleContains");
+    private static final OperationMetrics TITLE_PREFIX = Metrics.operation("library.findBooksByTitlePrefix");
+    private static final OperationMetrics BY_AUTHOR = Metrics.operation("library.findBooksByAuthor");
+    private static final OperationMetrics SEARCH_AUTHORS = Metrics.operation("library.searchAuthors");
+    private static final OperationMetrics SEARCH_TITLES = Metrics.operation("library.searchTitles");
+    private static final OperationMetrics BY_GENRE = Metrics.operation("library.findBooksByGenre");
+    private static final OperationMetrics AVAILABLE = Metrics.operation("library.getAvailableBooks");
+    private static final OperationMetrics NEWEST = Metrics.operation("library.getNewestBooks");
+    private static final OperationMetrics PUBLISHED_BETWEEN = Metrics.operation("library.getBooksPublishedBetween");
+    private static final OperationMetrics BORROW = Metrics.operation("library.borrow");
+    private static final OperationMetrics RETURN = Metrics.operation("library.return");
+    private static final OperationMetrics HOLD_FILLED = Metrics.operation("library.holdFilled");
+    private static final int LOCK_STRIPES = 256;
 
-class Library {
     private final String name;
-    private final Map<String, Book> booksByIsbn = new HashMap<>();
-    private final Map<String, LibraryUser> usersById = new HashMap<>();
+    private final ConcurrentHashMap<String, Book> booksByIsbn = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LibraryUser> usersById = new ConcurrentHashMap<>();
+    private final TitleIndex titleIndex = new TitleIndex();
+    private final CatalogIndex catalogIndex = new CatalogIndex();
+    private final PublicationIndex publicationIndex = new PublicationIndex();
+    private final FuzzyIndex<Book> authorSearch = new FuzzyIndex<>();
+    private final FuzzyIndex<Book> titleSearch = new FuzzyIndex<>();
+    private final LoanTracker loanTracker;
+    private final HoldQueues holds;
+    private final Object[] stripes = new Object[LOCK_STRIPES];   // per-ISBN lock: catalog change + its event
+    private volatile HoldQueues.HoldListener holdListener;
+    private volatile ChangeStream changes;
+    private volatile IncrementalAnalytics analytics;   // null unless enableIncrementalAnalytics
 
     public Library(String name) {
+        this(name, false);
+    }
+
+    // premiumHoldPriority: holds from premium users are served before regular ones
+    public Library(String name, boolean premiumHoldPriority) {
+        this(name, Clock.systemDefaultZone(), premiumHoldPriority);
+    }
+
+    // The clock decides "today" for due dates and overdue checks
+    Library(String name, Clock clock, boolean premiumHoldPriority) {
         this.name = name;
+        this.loanTracker = new LoanTracker(clock);
+        this.holds = new HoldQueues(premiumHoldPriority);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            stripes[i] = new Object();
+        }
     }
 
     // ── Book operations ───────────────────────────────────────
+    // The stripe keeps the change and its event together, so events for one ISBN come out in the order the
+    // changes were made; publish may block on a full stream, which is why it isn't inside compute()
     public void addBook(Book book) {
-        booksByIsbn.put(book.getIsbn(), book);
+        synchronized (stripe(book.getIsbn())) {
+            indexBook(book);
+            publish(ChangeEvent.Type.BOOK_ADDED, book.getIsbn(), book.getTitle());
+        }
+    }
+
+    private void indexBook(Book book) {
+        // compute() keeps concurrent add/remove of the same ISBN from interleaving their index updates
+        booksByIsbn.compute(book.getIsbn(), (isbn, previous) -> {
+            IncrementalAnalytics live = analytics;
+            if (previous != null) {
+                unindex(previous);
+                if (live != null) {
+                    live.bookRemoved(previous);
+                }
+            }
+            titleIndex.add(book);
+            catalogIndex.add(book);
+            publicationIndex.add(book);
+            authorSearch.add(book.getAuthor(), book);
+            titleSearch.add(book.getTitle(), book);
+            if (live != null) {
+                live.bookAdded(book);
+            }
+            return book;
+        });
+    }
+
+    public Optional<Book> removeBook(String isbn) {
+        synchronized (stripe(isbn)) {
+            Book[] removed = new Book[1];
+            booksByIsbn.computeIfPresent(isbn, (k, book) -> {
+                unindex(book);
+                IncrementalAnalytics live = analytics;
+                if (live != null) {
+                    live.bookRemoved(book);
+                }
+                removed[0] = book;
+                return null;
+            });
+            if (removed[0] != null) {
+                publish(ChangeEvent.Type.BOOK_DELETED, isbn, removed[0].getTitle());
+            }
+            return Optional.ofNullable(removed[0]);
+        }
+    }
+
+    private Object stripe(String key) {
+        return stripes[(key.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+    }
+
+    private void unindex(Book book) {
+        titleIndex.remove(book);
+        catalogIndex.remove(book);
+        publicationIndex.remove(book);
+        authorSearch.remove(book.getAuthor(), book);
+        titleSearch.remove(book.getTitle(), book);
     }
 
     public Optional<Book> findBookByIsbn(String isbn) {
-        return Optional.ofNullable(booksByIsbn.get(isbn));
+        long start = System.nanoTime();
+        Book book = booksByIsbn.get(isbn);
+        FIND_BY_ISBN.success(start, book != null ? 1 : 0);
+        return Optional.ofNullable(book);
     }
 
     public List<Book> findBooksByTitleContains(String fragment) {
-        String lower = fragment.toLowerCase();
-        return booksByIsbn.values().stream()
-                .filter(b -> b.getTitle().toLowerCase().contains(lower))
-                .collect(Collectors.toList());
+        long start = System.nanoTime();
+        return recorded(TITLE_CONTAINS, start, titleIndex.containing(fragment));
+    }
+
+    // Best matches first (exact, prefix, word start, ...), at most limit results
+    public List<Book> findBooksByTitleContains(String fragment, int limit) {
+        long start = System.nanoTime();
+        return recorded(TITLE_CONTAINS, start, titleIndex.containing(fragment, limit, true));
+    }
+
+    public List<Book> findBooksByTitlePrefix(String prefix, int limit) {
+        long start = System.nanoTime();
+        return recorded(TITLE_PREFIX, start, titleIndex.startingWith(prefix, limit));
     }
 
     public List<Book> findBooksByAuthor(String author) {
-        String normAuthor = author.toLowerCase();
-        return booksByIsbn.values().stream()
-                .filter(b -> b.getAuthor().toLowerCase().equals(normAuthor))
-                .collect(Collectors.toList());
+        long start = System.nanoTime();
+        return recorded(BY_AUTHOR, start, catalogIndex.byAuthor(author));
+    }
+
+    // Typo- and accent-tolerant, best first: "Robert Martin" finds "Robert C. Martin", "kowalksa" finds
+    // "Kowalska"; each match carries the author's books
+    public List<FuzzyIndex.Match<Book>> searchAuthors(String query, int limit) {
+        long start = System.nanoTime();
+        List<FuzzyIndex.Match<Book>> result = authorSearch.search(query, limit, FuzzyIndex.DEFAULT_MIN_SCORE);
+        SEARCH_AUTHORS.success(start, result.size());
+        return result;
+    }
+
+    public List<FuzzyIndex.Match<Book>> searchTitles(String query, int limit) {
+        long start = System.nanoTime();
+        List<FuzzyIndex.Match<Book>> result = titleSearch.search(query, limit, FuzzyIndex.DEFAULT_MIN_SCORE);
+        SEARCH_TITLES.success(start, result.size());
+        return result;
     }
 
+    public List<Book> findBooksByGenre(String genre) {
+        long start = System.nanoTime();
+        return recorded(BY_GENRE, start, catalogIndex.byGenre(genre));
+    }
+
+    // Sorted by title (ties by ISBN)
     public List<Book> getAllAvailableBooks() {
-        return booksByIsbn.values().stream()
-                .filter(Book::isAvailable)
-                .sorted(Comparator.comparing(Book::getTitle))
-                .collect(Collectors.toList());
+        long start = System.nanoTime();
+        return recorded(AVAILABLE, start, catalogIndex.available());
+    }
+
+    public List<Book> getAvailableBooksByGenre(String genre) {
+        long start = System.nanoTime();
+        return recorded(AVAILABLE, start, catalogIndex.availableByGenre(genre));
     }
 
+    public List<Book> getAvailableBooksByAuthor(String author) {
+        long start = System.nanoTime();
+        return recorded(AVAILABLE, start, catalogIndex.availableByAuthor(author));
+    }
+
+    // Newest first; books from the same year come in ISBN order
     public List<Book> getTopNewestBooks(int limit) {
-        return booksByIsbn.values().stream()
-                .sorted(Comparator.comparing(Book::getPublicationYear).reversed())
-                .limit(limit)
-                .collect(Collectors.toList());
+        long start = System.nanoTime();
+        return recorded(NEWEST, start, publicationIndex.newest(0, limit));
+    }
+
+    public List<Book> getNewestBooks(int offset, int limit) {
+        long start = System.nanoTime();
+        return recorded(NEWEST, start, publicationIndex.newest(offset, limit));
+    }
+
+    // e.g. getBooksPublishedBetween(2015, 2020, 0, 20); both years inclusive, newest first
+    public List<Book> getBooksPublishedBetween(int fromYear, int toYear, int offset, int limit) {
+        long start = System.nanoTime();
+        return recorded(PUBLISHED_BETWEEN, start, publicationIndex.publishedBetween(fromYear, toYear, offset, limit));
+    }
+
+    private static List<Book> recorded(OperationMetrics metrics, long start, List<Book> result) {
+        metrics.success(start, result.size());
+        return result;
     }
 
     // ── User operations ───────────────────────────────────────
     public void registerUser(LibraryUser user) {
-        if (usersById.containsKey(user.getId())) {
+        if (usersById.putIfAbsent(user.getId(), user) != null) {
             throw new IllegalArgumentException("User with id " + user.getId() + " already exists");
         }
-        usersById.put(user.getId(), user);
+        IncrementalAnalytics live = analytics;
+        if (live != null) {
+            live.userAdded(user);
+        }
+        publish(ChangeEvent.Type.USER_REGISTERED, user.getId(), user.getName());
     }
 
     public Optional<LibraryUser> findUser(String id) {
         return Optional.ofNullable(usersById.get(id));
     }
 
+    // Used by ShardedLibrary to move users between shards
+    Optional<LibraryUser> removeUser(String id) {
+        LibraryUser removed = usersById.remove(id);
+        IncrementalAnalytics live = analytics;
+        if (removed != null && live != null) {
+            live.userRemoved(removed);
+        }
+        return Optional.ofNullable(removed);
+    }
+
+    // Live views, weakly consistent under concurrent changes
+    Collection<Book> books() {
+        return Collections.unmodifiableCollection(booksByIsbn.values());
+    }
+
+    Collection<LibraryUser> users() {
+        return Collections.unmodifiableCollection(usersById.values());
+    }
+
+    // ── Change events ─────────────────────────────────────────
+    // Book, user and availability changes are published here when set (null turns publishing off)
+    public void setChangeStream(ChangeStream changes) {
+        this.changes = changes;
+    }
+
+    private void publish(ChangeEvent.Type type, String key, String detail) {
+        ChangeStream stream = changes;
+        if (stream != null) {
+            stream.publish(type, key, detail);
+        }
+    }
+
+    // Counts are read when the event gets its sequence number, so the latest event has the latest counts
+    private void copiesChanged(Book book) {
+        ChangeStream stream = changes;
+        if (stream != null) {
+            stream.publish(ChangeEvent.Type.AVAILABILITY_CHANGED, book.getIsbn(),
+                    () -> book.getAvailableCopies() + "/" + book.getTotalCopies());
+        }
+    }
+
+    // ── Analytics ─────────────────────────────────────────────
+    // One parallel pass over all books and users on the common fork-join pool
+    public LibraryAnalytics.Report computeAnalytics() {
+        return LibraryAnalytics.compute(booksByIsbn.values(), usersById.values());
+    }
+
+    // From here on every change updates the aggregates, and borrows per title are counted for the last
+    // historyDays days. Seeds from the current state, so call it before traffic starts.
+    public void enableIncrementalAnalytics(int historyDays) {
+        IncrementalAnalytics live = new IncrementalAnalytics(historyDays);
+        live.seed(booksByIsbn.values(), usersById.values());
+        analytics = live;
+    }
+
+    // O(groups) when incremental analytics is on, otherwise a full pass
+    public LibraryAnalytics.Report getAnalytics() {
+        IncrementalAnalytics live = analytics;
+        return live != null ? live.report() : computeAnalytics();
+    }
+
+    // Titles borrowed most often between from and to (inclusive); counted since incremental analytics
+    // was enabled (LoanDAO.getMostBorrowed covers the full history in the database)
+    public List<LibraryAnalytics.TitleCount> getMostBorrowed(LocalDate from, LocalDate to, int limit) {
+        IncrementalAnalytics live = analytics;
+        if (live == null) {
+            throw new IllegalStateException("Incremental analytics is not enabled");
+        }
+        return live.mostBorrowed(from, to, limit);
+    }
+
+    // Must hold the user's monitor
+    private void borrowed(LibraryUser user, Book book) {
+        IncrementalAnalytics live = analytics;
+        if (live != null) {
+            live.borrowed(user, book, loanTracker.today());
+        }
+    }
+
+    // ── Snapshots ─────────────────────────────────────────────
+    public void writeSnapshot(Path file, long highWaterMark) throws IOException {
+        CatalogSnapshot.write(file, booksByIsbn.values(), usersById.values(), highWaterMark);
+    }
+
+    // Loads every book and user from a snapshot; point lookups alone can use the snapshot directly
+    public static Library fromSnapshot(String name, CatalogSnapshot snapshot) {
+        Library library = new Library(name);
+        snapshot.forEachBook(library::addBook);
+        snapshot.forEachUser(library::registerUser);
+        return library;
+    }
+
+    // Applies database changes made since the snapshot's high-water mark (epoch millis).
+    // Returns the mark to store with the next snapshot. Tombstones go first: a key deleted and then
+    // re-inserted since the mark is removed and comes back with its current row, while a key that is
+    // deleted now has no row left to re-add it. Everything is read before anything is applied, so a failed
+    // query throws with the library untouched and the caller keeps its old mark.
+    public long replayChanges(BookDAO bookDAO, LibraryUserDAO userDAO, long sinceMillis) throws SQLException {
+        Timestamp mark = DatabaseConnection.changeTrackingMark();
+        Timestamp since = new Timestamp(sinceMillis);
+        List<String> deletedIsbns = bookDAO.getIsbnsDeletedSince(since);
+        List<Book> changedBooks = bookDAO.getBooksChangedSince(since);
+        List<String> deletedIds = userDAO.getIdsDeletedSince(since);
+        List<LibraryUser> changedUsers = userDAO.getUsersChangedSince(since);
+
+        for (String isbn : deletedIsbns) {
+            removeBook(isbn);
+        }
+        for (Book book : changedBooks) {
+            addBook(book);
+        }
+        for (String id : deletedIds) {
+            LibraryUser removed = usersById.remove(id);
+            if (removed != null) {
+                IncrementalAnalytics live = analytics;
+                if (live != null) {
+                    live.userRemoved(removed);
+                }
+                publish(ChangeEvent.Type.USER_DELETED, id, removed.getName());
+            }
+        }
+        for (LibraryUser user : changedUsers) {
+            LibraryUser previous = usersById.put(user.getId(), user);
+            IncrementalAnalytics live = analytics;
+            if (previous != null) {
+                previous.getBorrowedBooks().forEach(user::restoreLoan);
+                if (live != null) {
+                    live.userRemoved(previous);
+                }
+                if (!previous.getName().equals(user.getName())) {
+                    publish(ChangeEvent.Type.USER_RENAMED, user.getId(), user.getName());
+                }
+            } else {
+                publish(ChangeEvent.Type.USER_REGISTERED, user.getId(), user.getName());
+            }
+            if (live != null) {
+                live.userAdded(user);
+            }
+        }
+        return mark.getTime();
+    }
+
+    // ── Circulation ───────────────────────────────────────────
+    // Rejected borrows/returns (unknown ids, book already out, limit reached) count as errors.
+    // The user's monitor is held across the loan and its tracking so a return can't slip in between.
+    // While holds are waiting, a copy on the shelf goes to the queue first; walk-ins only get it
+    // when no holder can take it.
+    public void borrowBook(String userId, String isbn) {
+        long start = System.nanoTime();
+        try {
+            LibraryUser user = requireUser(userId);
+            Book book = requireBook(isbn);
+            if (holds.hasWaiting(isbn)) {
+                HoldQueues.Hold filled;
+                while ((filled = allocateToHolders(book)) != null) {
+                    if (filled.getUserId().equals(userId)) {
+                        BORROW.success(start, 1);
+                        return;
+                    }
+                }
+            }
+            synchronized (user) {
+                user.borrowBook(book);
+                loanTracker.track(Loan.start(user, book, loanTracker.today()));
+                borrowed(user, book);
+            }
+            copiesChanged(book);
+            BORROW.success(start, 1);
+        } catch (RuntimeException e) {
+            BORROW.failure(start);
+            throw e;
+        }
+    }
+
+    public void returnBook(String userId, String isbn) {
+        long start = System.nanoTime();
+        try {
+            LibraryUser user = requireUser(userId);
+            Book book = requireBook(isbn);
+            synchronized (user) {
+                user.returnBook(book);
+                loanTracker.untrack(isbn, userId);
+                IncrementalAnalytics live = analytics;
+                if (live != null) {
+                    live.returned(user, book);
+                }
+            }
+            copiesChanged(book);
+            RETURN.success(start, 1);
+            allocateToHolders(book);
+        } catch (RuntimeException e) {
+            RETURN.failure(start);
+            throw e;
+        }
+    }
+
+    // ── Copies ────────────────────────────────────────────────
+    // New copies go to waiting holders first
+    public void addCopies(String isbn, int count) {
+        Book book = requireBook(isbn);
+        book.addCopies(count);
+        IncrementalAnalytics live = analytics;
+        if (live != null) {
+            live.copiesAdded(book, count);
+        }
+        copiesChanged(book);
+        while (allocateToHolders(book) != null) {
+            // one free copy per waiting holder
+        }
+    }
+
+    // Only copies on the shelf can be withdrawn; false if fewer than count are free
+    public boolean withdrawCopies(String isbn, int count) {
+        Book book = requireBook(isbn);
+        if (!book.withdrawCopies(count)) {
+            return false;
+        }
+        IncrementalAnalytics live = analytics;
+        if (live != null) {
+            live.copiesAdded(book, -count);
+        }
+        copiesChanged(book);
+        return true;
+    }
+
+    // ── Holds ─────────────────────────────────────────────────
+    // Queues the user for the book instead of failing when it's out; if it's on the shelf (or comes
+    // back meanwhile) it is lent to the first eligible holder straight away. Holders are told
+    // through the hold listener.
+    public HoldQueues.Hold placeHold(String userId, String isbn) {
+        LibraryUser user = requireUser(userId);
+        Book book = requireBook(isbn);
+        if (user.getBorrowedBooks().contains(book)) {
+            throw new IllegalStateException(user.getName() + " already has " + book.getTitle());
+        }
+        HoldQueues.Hold hold = holds.place(user, isbn);
+        allocateToHolders(book);
+        return hold;
+    }
+
+    public boolean cancelHold(String userId, String isbn) {
+        return holds.cancel(userId, isbn);
+    }
+
+    public int getHoldCount(String isbn) {
+        return holds.waitingCount(isbn);
+    }
+
+    // Called on the thread that returned (or freed) the book, after all locks are released
+    public void setHoldListener(HoldQueues.HoldListener listener) {
+        this.holdListener = listener;
+    }
+
+    // Holders at their loan limit (or no longer registered) are skipped but keep their place; a holder
+    // who meanwhile borrowed the book another way has their hold dropped
+    private HoldQueues.Hold allocateToHolders(Book book) {
+        if (!book.isAvailable()) {
+            return null;
+        }
+        long start = System.nanoTime();
+        HoldQueues.Hold filled = holds.allocate(book.getIsbn(), hold -> {
+            LibraryUser holder = usersById.get(hold.getUserId());
+            if (holder == null) {
+                return HoldQueues.Offer.SKIPPED;
+            }
+            synchronized (holder) {
+                if (holder.getBorrowedBooks().contains(book)) {
+                    return HoldQueues.Offer.DROPPED;
+                }
+                if (!holder.canBorrowMore()) {
+                    return HoldQueues.Offer.SKIPPED;
+                }
+                try {
+                    holder.borrowBook(book);
+                } catch (IllegalStateException e) {
+                    // limit and duplicate were ruled out under the same monitor: the copies ran out
+                    return HoldQueues.Offer.EXHAUSTED;
+                }
+                loanTracker.track(Loan.start(holder, book, loanTracker.today()));
+                borrowed(holder, book);
+                return HoldQueues.Offer.TAKEN;
+            }
+        });
+        if (filled != null) {
+            copiesChanged(book);
+            HOLD_FILLED.success(start, 1);
+            HoldQueues.HoldListener listener = holdListener;
+            if (listener != null) {
+                listener.holdFilled(filled, book);
+            }
+        }
+        return filled;
+    }
+
+    // Re-attaches a loan read from the database (see LoanDAO.streamOpenLoans)
+    public void restoreLoan(Loan loan) {
+        LibraryUser user = requireUser(loan.getUserId());
+        synchronized (user) {
+            int before = user.getBorrowedBooks().size();
+            user.restoreLoan(requireBook(loan.getIsbn()));
+            loanTracker.track(loan);
+            IncrementalAnalytics live = analytics;
+            if (live != null && user.getBorrowedBooks().size() > before) {
+                live.loanRestored(user);
+            }
+        }
+    }
+
+    public Optional<Loan> findLoan(String userId, String isbn) {
+        return Optional.ofNullable(loanTracker.getLoan(isbn, userId));
+    }
+
+    // Oldest due date first; cost grows with the number of overdue loans, not all loans
+    public List<Loan> getOverdueLoans() {
+        return loanTracker.overdue(loanTracker.today());
+    }
+
+    public LoanTracker.DailyReport runDailyLoanBatch() {
+        return loanTracker.runDaily(loanTracker.today());
+    }
+
+    // Computes fines and reminders every day at the given time until close() (see LoanTracker)
+    public void startDailyLoanBatch(LocalTime at, Consumer<LoanTracker.DailyReport> handler) {
+        loanTracker.startDailyBatch(at, handler);
+    }
+
+    @Override
+    public void close() {
+        loanTracker.close();
+    }
+
+    private LibraryUser requireUser(String id) {
+        LibraryUser user = usersById.get(id);
+        if (user == null) {
+            throw new IllegalArgumentException("Unknown user: " + id);
+        }
+        return user;
+    }
+
+    private Book requireBook(String isbn) {
+        Book book = booksByIsbn.get(isbn);
+        if (book == null) {
+            throw new IllegalArgumentException("Unknown book: " + isbn);
+        }
+        return book;
+    }
+
     // Quick demo / test
     public static void main(String[] args) {
         // Test database connection
@@ -0,0 +1,255 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+// Catalog and circulation statistics in one parallel pass. Each fork-join worker fills its own Tally
+// (long[] counters per group, so nothing is boxed or synchronized per book) and tallies are merged
+// pairwise as the stream joins. See IncrementalAnalytics for aggregates kept current without a pass.
+final class LibraryAnalytics {
+    static final int MAX_LOANS_TRACKED = 64;   // histogram buckets per user type; more loans share the last
+
+    private static final OperationMetrics COMPUTE = Metrics.operation("analytics.compute");
+
+    private LibraryAnalytics() {
+    }
+
+    static Report compute(Collection<Book> books, Collection<LibraryUser> users) {
+        long start = System.nanoTime();
+        Tally catalog = books.parallelStream().collect(Tally::new, Tally::add, Tally::merge);
+        LoanHistogram loans = users.parallelStream().collect(LoanHistogram::new, LoanHistogram::add, LoanHistogram::merge);
+        Report report = catalog.toReport(loans.toDistributions(), System.nanoTime() - start);
+        COMPUTE.success(start, books.size() + users.size());
+        return report;
+    }
+
+    static int decadeOf(Book book) {
+        return Math.floorDiv(book.getPublicationYear().getValue(), 10) * 10;
+    }
+
+    // Highest count first, ties by ISBN
+    static List<TitleCount> top(Map<String, long[]> counts, Map<String, String> titles, int limit) {
+        Comparator<Map.Entry<String, long[]>> order = Comparator.<Map.Entry<String, long[]>>comparingLong(e -> e.getValue()[0])
+                .thenComparing(Map.Entry::getKey, Comparator.reverseOrder());
+        PriorityQueue<Map.Entry<String, long[]>> best = new PriorityQueue<>(Math.max(1, limit), order);
+        for (Map.Entry<String, long[]> e : counts.entrySet()) {
+            if (best.size() < limit) {
+                best.add(e);
+            } else if (limit > 0 && order.compare(e, best.peek()) > 0) {
+                best.poll();
+                best.add(e);
+            }
+        }
+        List<TitleCount> result = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            Map.Entry<String, long[]> e = best.poll();
+            result.add(new TitleCount(e.getKey(), titles.get(e.getKey()), e.getValue()[0]));
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    // ── Accumulators ──────────────────────────────────────────
+    // {books, copies, onLoan}
+    private static final class Tally {
+        final long[] overall = new long[3];
+        final HashMap<String, long[]> byGenre = new HashMap<>();
+        final HashMap<String, long[]> byAuthor = new HashMap<>();
+        final HashMap<Integer, long[]> byDecade = new HashMap<>();
+
+        void add(Book book) {
+            int copies = book.getTotalCopies();
+            int onLoan = copies - book.getAvailableCopies();
+            count(overall, copies, onLoan);
+            count(byGenre.computeIfAbsent(book.getGenre(), k -> new long[3]), copies, onLoan);
+            count(byAuthor.computeIfAbsent(book.getAuthor(), k -> new long[3]), copies, onLoan);
+            count(byDecade.computeIfAbsent(decadeOf(book), k -> new long[3]), copies, onLoan);
+        }
+
+        private static void count(long[] c, int copies, int onLoan) {
+            c[0]++;
+            c[1] += copies;
+            c[2] += onLoan;
+        }
+
+        void merge(Tally other) {
+            for (int i = 0; i < 3; i++) {
+                overall[i] += other.overall[i];
+            }
+            mergeInto(byGenre, other.byGenre);
+            mergeInto(byAuthor, other.byAuthor);
+            mergeInto(byDecade, other.byDecade);
+        }
+
+        private static <K> void mergeInto(Map<K, long[]> into, Map<K, long[]> from) {
+            for (Map.Entry<K, long[]> e : from.entrySet()) {
+                long[] c = into.putIfAbsent(e.getKey(), e.getValue());
+                if (c != null) {
+                    long[] o = e.getValue();
+                    c[0] += o[0];
+                    c[1] += o[1];
+                    c[2] += o[2];
+                }
+            }
+        }
+
+        Report toReport(Map<String, Distribution> loans, long elapsedNanos) {
+            return new Report(group(overall), groups(byGenre), groups(byAuthor), new TreeMap<>(groups(byDecade)),
+                    loans, elapsedNanos);
+        }
+    }
+
+    static Group group(long[] c) {
+        return new Group(c[0], c[1], c[2]);
+    }
+
+    static <K> Map<K, Group> groups(Map<K, long[]> counts) {
+        Map<K, Group> result = new HashMap<>(counts.size() * 2);
+        for (Map.Entry<K, long[]> e : counts.entrySet()) {
+            result.put(e.getKey(), group(e.getValue()));
+        }
+        return result;
+    }
+
+    // User type -> users per number of books currently borrowed
+    private static final class LoanHistogram {
+        final HashMap<String, long[]> byType = new HashMap<>();
+
+        void add(LibraryUser user) {
+            long[] h = byType.computeIfAbsent(user.getClass().getSimpleName(), k -> new long[MAX_LOANS_TRACKED + 1]);
+            h[Math.min(user.getBorrowedBooks().size(), MAX_LOANS_TRACKED)]++;
+        }
+
+        void merge(LoanHistogram other) {
+            for (Map.Entry<String, long[]> e : other.byType.entrySet()) {
+                long[] h = byType.putIfAbsent(e.getKey(), e.getValue());
+                if (h != null) {
+                    for (int i = 0; i < h.length; i++) {
+                        h[i] += e.getValue()[i];
+                    }
+                }
+            }
+        }
+
+        Map<String, Distribution> toDistributions() {
+            Map<String, Distribution> result = new TreeMap<>();
+            byType.forEach((type, h) -> result.put(type, new Distribution(type, h)));
+            return result;
+        }
+    }
+
+    // ── Results ───────────────────────────────────────────────
+    public static final class Group {
+        public final long books;
+        public final long copies;
+        public final long onLoan;
+
+        Group(long books, long copies, long onLoan) {
+            this.books = books;
+            this.copies = copies;
+            this.onLoan = onLoan;
+        }
+
+        // Share of copies out on loan
+        public double getUtilization() {
+            return copies == 0 ? 0 : (double) onLoan / copies;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Group{books=%d, copies=%d, onLoan=%d, utilization=%.1f%%}",
+                    books, copies, onLoan, getUtilization() * 100);
+        }
+    }
+
+    // usersWithLoans[k] = users currently holding k books (the last bucket also counts anything above)
+    public static final class Distribution {
+        public final String userType;
+        public final long users;
+        public final long loans;
+        private final long[] usersWithLoans;
+
+        Distribution(String userType, long[] usersWithLoans) {
+            this.userType = userType;
+            this.usersWithLoans = usersWithLoans.clone();
+            long u = 0;
+            long l = 0;
+            for (int k = 0; k < usersWithLoans.length; k++) {
+                u += usersWithLoans[k];
+                l += k * usersWithLoans[k];
+            }
+            this.users = u;
+            this.loans = l;
+        }
+
+        public long usersWithLoans(int k) {
+            return k < usersWithLoans.length ? usersWithLoans[k] : 0;
+        }
+
+        public double getMeanLoans() {
+            return users == 0 ? 0 : (double) loans / users;
+        }
+
+        @Override
+        public String toString() {
+            int last = usersWithLoans.length - 1;
+            while (last > 0 && usersWithLoans[last] == 0) {
+                last--;
+            }
+            StringBuilder sb = new StringBuilder();
+            for (int k = 0; k <= last; k++) {
+                sb.append(k == 0 ? "" : ", ").append(k).append('=').append(usersWithLoans[k]);
+            }
+            return String.format("Distribution{type=%s, users=%d, mean=%.2f, histogram={%s}}",
+                    userType, users, getMeanLoans(), sb);
+        }
+    }
+
+    public static final class TitleCount {
+        public final String isbn;
+        public final String title;
+        public final long count;
+
+        TitleCount(String isbn, String title, long count) {
+            this.isbn = isbn;
+            this.title = title;
+            this.count = count;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("TitleCount{isbn='%s', title='%s', count=%d}", isbn, title, count);
+        }
+    }
+
+    public static final class Report {
+        public final Group overall;
+        public final Map<String, Group> byGenre;
+        public final Map<String, Group> byAuthor;
+        public final SortedMap<Integer, Group> byDecade;         // key: first year of the decade
+        public final Map<String, Distribution> loansPerUser;     // key: user class, e.g. "PremiumUser"
+        public final long elapsedNanos;
+
+        Report(Group overall, Map<String, Group> byGenre, Map<String, Group> byAuthor,
+               SortedMap<Integer, Group> byDecade, Map<String, Distribution> loansPerUser, long elapsedNanos) {
+            this.overall = overall;
+            this.byGenre = Collections.unmodifiableMap(byGenre);
+            this.byAuthor = Collections.unmodifiableMap(byAuthor);
+            this.byDecade = Collections.unmodifiableSortedMap(byDecade);
+            this.loansPerUser = Collections.unmodifiableMap(loansPerUser);
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Report{%s, genres=%d, authors=%d, decades=%d, userTypes=%s, took=%.1fms}",
+                    overall, byGenre.size(), byAuthor.size(), byDecade.size(), loansPerUser.keySet(), elapsedNanos / 1e6);
+        }
+    }
+}
@@ -0,0 +1,507 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.stream.Stream;
+
+// Throughput benchmarks for Library queries, concurrent circulation and (optionally) DAO round-trips.
+// Fixed seed + fixed warmup/measurement rounds, results written as JSON. Usage:
+//   java LibraryBenchmark books=10000,1000000 threads=8 seconds=1 warmup=3 rounds=5 out=bench.json
+//                         [jdbc=jdbc:h2:mem:lib user=sa password=]   (DAO suite, schema must exist)
+//                         [stores=memory,log,jdbc storeBooks=100000]  (same CatalogStore suite per backend)
+//   java LibraryBenchmark mode=footprint books=10000000                  (heap bytes per book)
+//   java LibraryBenchmark mode=stress books=200 threads=16 seconds=10    (no double loans; fails loudly)
+// Run with a large heap (-Xmx) for catalogs in the millions.
+public class LibraryBenchmark {
+    private static final long MIN_BATCH_NANOS = 100_000;
+    private static final int MAX_BATCH = 1 << 20;
+    private static final int CIRCULATION_BATCH = 64;   // borrow/return pairs between deadline checks
+    private static volatile long sink;   // keeps the JIT from discarding query results
+
+    private final Map<String, String> options;
+    private final long seed;
+    private final int warmupRounds;
+    private final int measuredRounds;
+    private final long roundNanos;
+    private final List<String> results = new ArrayList<>();
+
+    LibraryBenchmark(Map<String, String> options) {
+        this.options = options;
+        this.seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        this.warmupRounds = Integer.parseInt(options.getOrDefault("warmup", "3"));
+        this.measuredRounds = Integer.parseInt(options.getOrDefault("rounds", "5"));
+        this.roundNanos = TimeUnit.MILLISECONDS.toNanos(
+                (long) (Double.parseDouble(options.getOrDefault("seconds", "1")) * 1000));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Expected key=value, got: " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        new LibraryBenchmark(options).runAll();
+    }
+
+    void runAll() throws Exception {
+        if ("footprint".equals(options.get("mode"))) {
+            for (String size : options.getOrDefault("books", "1000000").split(",")) {
+                runFootprint(Integer.parseInt(size.trim()));
+            }
+        } else if ("stress".equals(options.get("mode"))) {
+            int threads = Integer.parseInt(options.getOrDefault("threads",
+                    String.valueOf(Math.max(4, Runtime.getRuntime().availableProcessors() * 2))));
+            int books = Integer.parseInt(options.getOrDefault("books", "200"));
+            runStress(books, Integer.parseInt(options.getOrDefault("users", String.valueOf(Math.max(1, books / 4)))),
+                    threads);
+        } else {
+            int threads = Integer.parseInt(options.getOrDefault("threads",
+                    String.valueOf(Runtime.getRuntime().availableProcessors())));
+            for (String size : options.getOrDefault("books", "10000,100000").split(",")) {
+                int books = Integer.parseInt(size.trim());
+                runLibrarySuite(books, Math.max(1, books / 20), threads);
+            }
+            if (options.containsKey("jdbc")) {
+                runDaoSuite(Integer.parseInt(options.getOrDefault("daoBooks", "10000")));
+            }
+            if (options.containsKey("stores")) {
+                int storeBooks = Integer.parseInt(options.getOrDefault("storeBooks", "100000"));
+                for (String store : options.get("stores").split(",")) {
+                    runStoreSuite(store.trim(), storeBooks);
+                }
+            }
+        }
+        writeResults(Paths.get(options.getOrDefault("out", "bench_output.json")));
+    }
+
+    // ── Library queries ───────────────────────────────────────
+    private void runLibrarySuite(int bookCount, int userCount, int threads) throws Exception {
+        SyntheticCatalog catalog = new SyntheticCatalog(seed);
+        List<Book> books = catalog.books(bookCount);
+        List<LibraryUser> users = catalog.users(userCount);
+        Library library = new Library("bench");
+        books.forEach(library::addBook);
+        users.forEach(library::registerUser);
+
+        Random random = new Random(seed);
+        // A third of the catalog is out on loan, like a busy branch
+        for (int i = 0; i < bookCount / 3; i++) {
+            LibraryUser user = users.get(random.nextInt(userCount));
+            Book book = books.get(random.nextInt(bookCount));
+            if (book.isAvailable() && user.canBorrowMore()) {
+                user.borrowBook(book);
+            }
+        }
+
+        measure("findBookByIsbn", bookCount, 1,
+                () -> library.findBookByIsbn(books.get(random.nextInt(bookCount)).getIsbn()).isPresent() ? 1 : 0);
+        measure("findBooksByTitleContains", bookCount, 1,
+                () -> library.findBooksByTitleContains(catalog.word()).size());
+        measure("findBooksByTitleContains.top10", bookCount, 1,
+                () -> library.findBooksByTitleContains(catalog.word(), 10).size());
+        measure("findBooksByAuthor", bookCount, 1,
+                () -> library.findBooksByAuthor(books.get(random.nextInt(bookCount)).getAuthor()).size());
+        measure("getAllAvailableBooks", bookCount, 1,
+                () -> library.getAllAvailableBooks().size());
+        measure("getTopNewestBooks.10", bookCount, 1,
+                () -> library.getTopNewestBooks(10).size());
+        measureCirculation(library, books, users, bookCount, threads);
+    }
+
+    // Each thread borrows a random copy for a random user and returns it straight away
+    private void measureCirculation(Library library, List<Book> books, List<LibraryUser> users,
+                                    int bookCount, int threads) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            double[] rates = new double[measuredRounds];
+            for (int round = -warmupRounds; round < measuredRounds; round++) {
+                LongAdder ops = new LongAdder();
+                long start = System.nanoTime();
+                long deadline = start + roundNanos;
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    long threadSeed = seed + t;
+                    futures.add(pool.submit(() -> {
+                        Random r = new Random(threadSeed);
+                        long done = 0;
+                        while (System.nanoTime() < deadline) {
+                            for (int i = 0; i < CIRCULATION_BATCH; i++) {
+                                String userId = users.get(r.nextInt(users.size())).getId();
+                                String isbn = books.get(r.nextInt(bookCount)).getIsbn();
+                                try {
+                                    library.borrowBook(userId, isbn);
+                                    library.returnBook(userId, isbn);
+                                    done += 2;
+                                } catch (IllegalStateException e) {
+                                    done++;   // a rejected borrow is still a completed operation
+                                }
+                            }
+                        }
+                        ops.add(done);
+                    }));
+                }
+                for (Future<?> f : futures) {
+                    f.get();
+                }
+                if (round >= 0) {
+                    rates[round] = ops.sum() / ((System.nanoTime() - start) / 1e9);   // the last batches overrun
+                }
+            }
+            record("borrowReturn", bookCount, threads, rates);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // ── Circulation stress ────────────────────────────────────
+    // Many threads borrow, return and place holds on a small catalog (1-3 copies per title, few users, so
+    // most calls contend), while one more thread keeps checking loan limits. Afterwards every title must
+    // have free copies + open loans == total copies, every open loan must be in the loan tracker, and no
+    // user may hold a title twice or more titles than getMaxBooksAllowed(). Throws AssertionError otherwise.
+    private void runStress(int bookCount, int userCount, int threads) throws Exception {
+        SyntheticCatalog catalog = new SyntheticCatalog(seed);
+        List<Book> books = catalog.books(bookCount);
+        List<LibraryUser> users = catalog.users(userCount);
+        Random random = new Random(seed);
+        Library library = new Library("stress", true);
+        for (Book book : books) {
+            book.addCopies(random.nextInt(3));
+            library.addBook(book);
+        }
+        users.forEach(library::registerUser);
+
+        LongAdder ops = new LongAdder();
+        LongAdder refused = new LongAdder();
+        AtomicReference<String> violation = new AtomicReference<>();
+        long deadline = System.nanoTime() + roundNanos;
+        ExecutorService pool = Executors.newFixedThreadPool(threads + 1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                long threadSeed = seed + t;
+                futures.add(pool.submit(() -> {
+                    Random r = new Random(threadSeed);
+                    while (System.nanoTime() < deadline && violation.get() == null) {
+                        LibraryUser user = users.get(r.nextInt(userCount));
+                        String isbn = books.get(r.nextInt(bookCount)).getIsbn();
+                        int action = r.nextInt(10);
+                        try {
+                            if (action < 5) {
+                                library.borrowBook(user.getId(), isbn);
+                            } else if (action < 9) {
+                                Book[] held = user.getBorrowedBooks().toArray(new Book[0]);
+                                library.returnBook(user.getId(), held.length > 0 ? held[r.nextInt(held.length)].getIsbn() : isbn);
+                            } else if (r.nextBoolean()) {
+                                library.placeHold(user.getId(), isbn);
+                            } else {
+                                library.cancelHold(user.getId(), isbn);
+                            }
+                            ops.increment();
+                        } catch (IllegalStateException | IllegalArgumentException e) {
+                            refused.increment();   // no copy, at the limit, already held, not borrowed
+                        }
+                    }
+                }));
+            }
+            futures.add(pool.submit(() -> {
+                while (System.nanoTime() < deadline && violation.get() == null) {
+                    for (LibraryUser user : users) {
+                        checkLoans(user, violation);
+                    }
+                }
+            }));
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Map<Book, Integer> openLoans = new HashMap<>();
+        for (LibraryUser user : users) {
+            checkLoans(user, violation);
+            for (Book book : user.getBorrowedBooks()) {
+                openLoans.merge(book, 1, Integer::sum);
+                if (!library.findLoan(user.getId(), book.getIsbn()).isPresent()) {
+                    violation.compareAndSet(null, "untracked loan of " + book.getIsbn() + " by " + user.getId());
+                }
+            }
+        }
+        for (Book book : books) {
+            int open = openLoans.getOrDefault(book, 0);
+            if (book.getAvailableCopies() + open != book.getTotalCopies()) {
+                violation.compareAndSet(null, book.getIsbn() + ": " + book.getAvailableCopies() + " free + " + open
+                        + " on loan != " + book.getTotalCopies() + " copies");
+            }
+        }
+        System.out.printf(Locale.ROOT, "stress n=%d users=%d threads=%d: %d calls, %d refused, %d open loans%n",
+                bookCount, userCount, threads, ops.sum() + refused.sum(), refused.sum(),
+                openLoans.values().stream().mapToInt(Integer::intValue).sum());
+        if (violation.get() != null) {
+            throw new AssertionError("Circulation stress failed: " + violation.get());
+        }
+        record("stress.circulation", bookCount, threads,
+                new double[]{(ops.sum() + refused.sum()) / (roundNanos / 1e9)});
+    }
+
+    // One user's loans as seen by a reader: within the limit and one copy per title
+    private static void checkLoans(LibraryUser user, AtomicReference<String> violation) {
+        List<Book> loans = new ArrayList<>(user.getBorrowedBooks());   // one snapshot for both checks
+        int size = loans.size();
+        if (size > user.getMaxBooksAllowed()) {
+            violation.compareAndSet(null, user.getId() + " holds " + size + " titles, limit "
+                    + user.getMaxBooksAllowed());
+        }
+        if (new HashSet<>(loans).size() != size) {
+            violation.compareAndSet(null, user.getId() + " holds a title twice: " + loans);
+        }
+    }
+
+    // ── DAO round-trips ───────────────────────────────────────
+    private void runDaoSuite(int bookCount) throws IOException {
+        configureDao(DatabaseConnection.DEFAULT_STATEMENT_CACHE_SIZE);
+        List<Book> books = new SyntheticCatalog(seed).books(bookCount);
+        BookDAO dao = new BookDAO();
+        Random random = new Random(seed);
+
+        LibraryLog.Level level = LibraryLog.getLevel();
+        LibraryLog.setLevel(LibraryLog.Level.WARN);   // DAOs log a line per call at INFO
+        try {
+            long start = System.nanoTime();
+            ImportResult imported = dao.insertBooks(books);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            record("dao.insertBooks", bookCount, 1, new double[]{imported.getInserted() / seconds});
+
+            // Without and with the per-connection statement cache, then with server-side prepare
+            for (String variant : new String[]{".uncached", "", ".serverPrepared"}) {
+                configureDao(variant.equals(".uncached") ? 0 : DatabaseConnection.DEFAULT_STATEMENT_CACHE_SIZE);
+                dao.setServerPreparedStatements(variant.equals(".serverPrepared"));
+                measure("dao.getBookByIsbn" + variant, bookCount, 1,
+                        () -> dao.getBookByIsbn(books.get(random.nextInt(bookCount)).getIsbn()) != null ? 1 : 0);
+                measure("dao.updateBookAvailability" + variant, bookCount, 1, () -> {
+                    dao.updateBookAvailability(books.get(random.nextInt(bookCount)).getIsbn(), random.nextBoolean());
+                    return 1;
+                });
+                IntSupplier page = () -> {
+                    Book from = books.get(random.nextInt(bookCount));
+                    return dao.getBooksAfter(from.getTitle(), from.getIsbn(), 100).size();
+                };
+                measure("dao.getBooksAfter.100" + variant, bookCount, 1, page);
+                measureAllocation("dao.getBooksAfter.100" + variant, bookCount, page);
+            }
+            dao.setServerPreparedStatements(false);
+
+            for (Book book : books) {
+                dao.deleteBook(book.getIsbn());
+            }
+        } finally {
+            LibraryLog.setLevel(level);
+            DatabaseConnection.shutdown();
+        }
+    }
+
+    // ── Storage backends ──────────────────────────────────────
+    private void runStoreSuite(String backend, int bookCount) throws IOException {
+        LibraryLog.Level level = LibraryLog.getLevel();
+        LibraryLog.setLevel(LibraryLog.Level.WARN);
+        Path dir = null;
+        LogStructuredStore logStore = null;
+        try {
+            CatalogStore store;
+            switch (backend) {
+                case "memory":
+                    store = new InMemoryStore();
+                    break;
+                case "log":
+                    dir = Files.createTempDirectory("bench-store");
+                    store = logStore = LogStructuredStore.open(dir);
+                    break;
+                case "jdbc":
+                    configureDao(DatabaseConnection.DEFAULT_STATEMENT_CACHE_SIZE);
+                    store = new BookDAO();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown store: " + backend);
+            }
+            measureStore("store." + backend, store, new SyntheticCatalog(seed).books(bookCount));
+            if (logStore != null) {
+                logStore.compact();
+                System.out.println(logStore.getStats());
+            }
+        } finally {
+            LibraryLog.setLevel(level);
+            if (logStore != null) {
+                logStore.close();
+            }
+            if (dir != null) {
+                try (Stream<Path> files = Files.list(dir)) {
+                    for (Path file : (Iterable<Path>) files::iterator) {
+                        Files.delete(file);
+                    }
+                }
+                Files.delete(dir);
+            }
+            if (backend.equals("jdbc")) {
+                DatabaseConnection.shutdown();
+            }
+        }
+    }
+
+    private void measureStore(String name, CatalogStore store, List<Book> books) {
+        int bookCount = books.size();
+        Random random = new Random(seed);
+        long start = System.nanoTime();
+        ImportResult imported = store.insertBooks(books);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        record(name + ".insertBooks", bookCount, 1, new double[]{imported.getInserted() / seconds});
+
+        measure(name + ".getBookByIsbn", bookCount, 1,
+                () -> store.getBookByIsbn(books.get(random.nextInt(bookCount)).getIsbn()) != null ? 1 : 0);
+        measure(name + ".updateBookAvailability", bookCount, 1, () -> {
+            store.updateBookAvailability(books.get(random.nextInt(bookCount)).getIsbn(), random.nextBoolean());
+            return 1;
+        });
+        measure(name + ".getBooksAfter.100", bookCount, 1, () -> {
+            Book from = books.get(random.nextInt(bookCount));
+            return store.getBooksAfter(from.getTitle(), from.getIsbn(), 100).size();
+        });
+        for (Book book : books) {
+            store.deleteBook(book.getIsbn());
+        }
+    }
+
+    private void configureDao(int statementCacheSize) {
+        DatabaseConnection.configure(options.get("jdbc"), options.getOrDefault("user", ""),
+                options.getOrDefault("password", ""), 2, 10, 5_000, 60_000, statementCacheSize);
+    }
+
+    // Bytes allocated by this thread per returned row, over a fixed number of calls after a warmup
+    private void measureAllocation(String name, int catalogSize, IntSupplier op) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < 1_000; i++) {
+            sink += op.getAsInt();
+        }
+        long rows = 0;
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1_000; i++) {
+            rows += op.getAsInt();
+        }
+        double bytesPerRow = (double) (threads.getThreadAllocatedBytes(threadId) - before) / Math.max(1, rows);
+        System.out.printf(Locale.ROOT, "%-34s n=%-9d %14.1f bytes/row%n", name, catalogSize, bytesPerRow);
+        results.add(String.format(Locale.ROOT,
+                "    {\"benchmark\": \"%s\", \"catalogSize\": %d, \"allocatedBytesPerRow\": %.1f}",
+                name, catalogSize, bytesPerRow));
+    }
+
+    // ── Memory footprint ──────────────────────────────────────
+    // Measured heap growth per book: Book objects in a HashMap vs. the CompactCatalog columns
+    private void runFootprint(int bookCount) {
+        long base = usedHeapAfterGc();
+        Map<String, Book> objects = new HashMap<>();
+        new SyntheticCatalog(seed).forEachBook(bookCount, b -> objects.put(b.getIsbn(), b));
+        long objectBytes = usedHeapAfterGc() - base;
+        sink += objects.size();
+        objects.clear();
+
+        base = usedHeapAfterGc();
+        CompactCatalog compact = new CompactCatalog(bookCount);
+        new SyntheticCatalog(seed).forEachBook(bookCount, compact::add);
+        long compactBytes = usedHeapAfterGc() - base;
+        sink += compact.size();
+
+        System.out.printf(Locale.ROOT, "footprint n=%d: objects %.1f B/book, compact %.1f B/book (estimate %.1f)%n",
+                bookCount, (double) objectBytes / bookCount, (double) compactBytes / bookCount,
+                (double) compact.footprintBytes() / bookCount);
+        results.add(String.format(Locale.ROOT,
+                "    {\"benchmark\": \"footprint\", \"catalogSize\": %d, " +
+                        "\"objectBytesPerBook\": %.1f, \"compactBytesPerBook\": %.1f}",
+                bookCount, (double) objectBytes / bookCount, (double) compactBytes / bookCount));
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    // ── Harness ───────────────────────────────────────────────
+    // The clock is read once per batch, not per op: a nanoTime call costs as much as the fastest lookups.
+    // Batches double until one takes MIN_BATCH_NANOS, so slow ops (database round-trips) still stop on time.
+    private void measure(String name, int catalogSize, int threads, IntSupplier op) {
+        double[] rates = new double[measuredRounds];
+        int batch = 1;
+        for (int round = -warmupRounds; round < measuredRounds; round++) {
+            long ops = 0;
+            long acc = 0;
+            long start = System.nanoTime();
+            long batchStart = start;
+            long elapsed;
+            do {
+                for (int i = 0; i < batch; i++) {
+                    acc += op.getAsInt();
+                }
+                ops += batch;
+                long now = System.nanoTime();
+                if (now - batchStart < MIN_BATCH_NANOS && batch < MAX_BATCH) {
+                    batch <<= 1;
+                }
+                batchStart = now;
+                elapsed = now - start;
+            } while (elapsed < roundNanos);
+            sink += acc;
+            if (round >= 0) {
+                rates[round] = ops / (elapsed / 1e9);
+            }
+        }
+        record(name, catalogSize, threads, rates);
+    }
+
+    private void record(String name, int catalogSize, int threads, double[] rates) {
+        double mean = 0;
+        for (double r : rates) mean += r;
+        mean /= rates.length;
+        double var = 0;
+        for (double r : rates) var += (r - mean) * (r - mean);
+        double stddev = rates.length > 1 ? Math.sqrt(var / (rates.length - 1)) : 0;
+
+        System.out.printf(Locale.ROOT, "%-34s n=%-9d threads=%-3d %14.1f ops/s  +- %.1f  (%.1f ns/op)%n",
+                name, catalogSize, threads, mean, stddev, 1e9 / mean * threads);
+        results.add(String.format(Locale.ROOT,
+                "    {\"benchmark\": \"%s\", \"catalogSize\": %d, \"threads\": %d, " +
+                        "\"opsPerSecond\": %.3f, \"stddev\": %.3f, \"nsPerOp\": %.3f, \"rounds\": %d}",
+                name, catalogSize, threads, mean, stddev, 1e9 / mean * threads, rates.length));
+    }
+
+    private void writeResults(Path out) throws IOException {
+        String json = String.format(Locale.ROOT,
+                "{%n  \"seed\": %d,%n  \"warmupRounds\": %d,%n  \"measuredRounds\": %d,%n" +
+                        "  \"roundMillis\": %d,%n  \"jvm\": \"%s\",%n  \"cpus\": %d,%n  \"results\": [%n%s%n  ]%n}%n",
+                seed, warmupRounds, measuredRounds, TimeUnit.NANOSECONDS.toMillis(roundNanos),
+                System.getProperty("java.vm.name") + " " + System.getProperty("java.version"),
+                Runtime.getRuntime().availableProcessors(), String.join("," + System.lineSeparator(), results));
+        Files.write(out, json.getBytes(StandardCharsets.UTF_8));
+        System.out.println("Results written to " + out.toAbsolutePath() + " (sink=" + sink + ")");
+    }
+}
@@ -0,0 +1,54 @@
+import java.util.function.Supplier;
+
+// Minimal pluggable logger. The default sink keeps the old behaviour (INFO and DEBUG to stdout,
+// WARN and ERROR to stderr); raise the level or install another sink to take it off the hot path.
+final class LibraryLog {
+    enum Level { DEBUG, INFO, WARN, ERROR, OFF }
+
+    interface Sink {
+        void log(Level level, String message);
+    }
+
+    static final Sink CONSOLE = (level, message) -> {
+        if (level.compareTo(Level.WARN) >= 0) {
+            System.err.println(message);
+        } else {
+            System.out.println(message);
+        }
+    };
+
+    private static volatile Level level = Level.INFO;
+    private static volatile Sink sink = CONSOLE;
+
+    private LibraryLog() {
+    }
+
+    static void setLevel(Level newLevel) { level = newLevel; }
+    static Level getLevel() { return level; }
+    static void setSink(Sink newSink) { sink = newSink; }
+
+    static boolean isEnabled(Level l) {
+        return l.compareTo(level) >= 0 && l != Level.OFF;
+    }
+
+    static void debug(Supplier<String> message) {
+        if (isEnabled(Level.DEBUG)) sink.log(Level.DEBUG, message.get());
+    }
+
+    static void info(String message) {
+        if (isEnabled(Level.INFO)) sink.log(Level.INFO, message);
+    }
+
+    // Lazy form for hot paths: the message is only built when INFO is enabled
+    static void info(Supplier<String> message) {
+        if (isEnabled(Level.INFO)) sink.log(Level.INFO, message.get());
+    }
+
+    static void warn(String message) {
+        if (isEnabled(Level.WARN)) sink.log(Level.WARN, message);
+    }
+
+    static void error(String message) {
+        if (isEnabled(Level.ERROR)) sink.log(Level.ERROR, message);
+    }
+}
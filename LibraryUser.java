@@ -1,14 +1,15 @@
 import java.time.LocalDate;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 abstract class LibraryUser {
     protected final String id;          // unique identifier
     protected final String name;
     protected final LocalDate registrationDate;
-    protected final List<Book> borrowedBooks = new ArrayList<>();
+    // Copy-on-write: small list, read far more often than changed; mutations happen under "this"
+    protected final List<Book> borrowedBooks = new CopyOnWriteArrayList<>();
 
     public LibraryUser(String id, String name, LocalDate registrationDate) {
         this.id = Objects.requireNonNull(id);
@@ -34,16 +35,27 @@ abstract class LibraryUser {
         return borrowedBooks.size() < getMaxBooksAllowed();
     }
 
-    public void borrowBook(Book book) {
+    // Synchronized per user so the limit check and the add are atomic; one copy per title
+    public synchronized void borrowBook(Book book) {
         if (!canBorrowMore()) {
             throw new IllegalStateException(name + " has reached the maximum number of books ("
                     + getMaxBooksAllowed() + ")");
         }
+        if (borrowedBooks.contains(book)) {
+            throw new IllegalStateException(name + " already has a copy of " + book.getTitle());
+        }
         book.borrow();
         borrowedBooks.add(book);
     }
 
-    public void returnBook(Book book) {
+    // Re-attaches a loan read from the database; the book is already marked as borrowed there
+    synchronized void restoreLoan(Book book) {
+        if (!borrowedBooks.contains(book)) {
+            borrowedBooks.add(book);
+        }
+    }
+
+    public synchronized void returnBook(Book book) {
         if (borrowedBooks.remove(book)) {
             book.returnBook();
         } else {
@@ -1,132 +1,373 @@
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
-class LibraryUserDAO {
+class LibraryUserDAO implements UserStore {
+    private static final String INSERT_SQL =
+            "INSERT INTO users (id, name, registration_date, user_type) VALUES (?, ?, ?, ?)";
+
+    // Explicit projection, read by position in mapUser: keep the two in the same order
+    static final String USER_COLUMNS = "id, name, registration_date, user_type";
+    private static final RowMapper<LibraryUser> USER = LibraryUserDAO::mapUser;
+
+    private static final OperationMetrics INSERT = Metrics.operation("user.insert");
+    private static final OperationMetrics FIND_BY_ID = Metrics.operation("user.findById");
+    private static final OperationMetrics FIND_BY_IDS = Metrics.operation("user.findByIds");
+    private static final OperationMetrics GET_ALL = Metrics.operation("user.getAll");
+    private static final OperationMetrics GET_AFTER = Metrics.operation("user.getAfter");
+    private static final OperationMetrics CHANGED_SINCE = Metrics.operation("user.changedSince");
+    private static final OperationMetrics UPDATE_NAME = Metrics.operation("user.updateName");
+    private static final OperationMetrics DELETE = Metrics.operation("user.delete");
+    private static final OperationMetrics INSERT_BATCH = Metrics.operation("user.insertBatch");
+
+    private volatile ChangeStream changes;
+    private volatile boolean serverPrepared;
 
     public void insertLibraryUser(LibraryUser user) {
-        String sql = "INSERT INTO users (id, name, registration_date, user_type) VALUES (?, ?, ?, ?)";
+        try {
+            if (insert(user) > 0) {
+                LibraryLog.info(() -> "User inserted: " + user.getName());
+            }
+        } catch (SQLException e) {
+            LibraryLog.error("Error inserting user: " + e.getMessage());
+        }
+    }
+
+    // borrowedBooks is not loaded here; see LoanDAO.loadBorrowedBooks
+    public LibraryUser getUserById(String id) {
+        try {
+            return findById(id);
+        } catch (SQLException e) {
+            LibraryLog.error("Error finding user: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public List<LibraryUser> getAllUsers() {
+        List<LibraryUser> users = new ArrayList<>();
+        String sql = "SELECT " + USER_COLUMNS + " FROM users ORDER BY id";
+        long start = System.nanoTime();
 
         try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+             PreparedStatement pstmt = prepare(conn, sql);
+             ResultSet rs = pstmt.executeQuery()) {
+
+            while (rs.next()) {
+                LibraryUser user = USER.map(rs);
+                if (user != null) {
+                    users.add(user);
+                }
+            }
+            GET_ALL.success(start, users.size());
+
+        } catch (SQLException e) {
+            GET_ALL.failure(start);
+            LibraryLog.error("Error getting users: " + e.getMessage());
+        }
 
-            pstmt.setString(1, user.getId());
-            pstmt.setString(2, user.getName());
-            pstmt.setDate(3, Date.valueOf(user.getRegistrationDate()));
-            String userType = user instanceof RegularUser ? "regular" : "premium";
-            pstmt.setString(4, userType);
+        return users;
+    }
 
-            int rowsAffected = pstmt.executeUpdate();
-            if (rowsAffected > 0) {
-                System.out.println("User inserted: " + user.getName());
+    public void updateUserName(String id, String newName) {
+        try {
+            if (updateName(id, newName) > 0) {
+                LibraryLog.info(() -> "User ID=" + id + " name updated to " + newName);
+            } else {
+                LibraryLog.info("User with ID=" + id + " not found");
             }
+        } catch (SQLException e) {
+            LibraryLog.error("Error updating name: " + e.getMessage());
+        }
+    }
 
+    public void deleteUser(String id) {
+        try {
+            if (delete(id) > 0) {
+                LibraryLog.info(() -> "User ID=" + id + " deleted");
+            } else {
+                LibraryLog.info("User with ID=" + id + " not found");
+            }
         } catch (SQLException e) {
-            System.err.println("Error inserting user: " + e.getMessage());
+            LibraryLog.error("Error deleting user: " + e.getMessage());
         }
     }
 
-    public LibraryUser getUserById(String id) {
-        String sql = "SELECT * FROM users WHERE id = ?";
-        LibraryUser user = null;
+    // ── Throwing cores (used by the wrappers above and by AsyncLibraryDAO) ──
+    int insert(LibraryUser user) throws SQLException {
+        long start = System.nanoTime();
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = prepare(conn, INSERT_SQL)) {
+
+            bindInsert(pstmt, user);
+            int rows = pstmt.executeUpdate();
+            INSERT.success(start, rows);
+            if (rows > 0) {
+                publish(ChangeEvent.Type.USER_REGISTERED, user.getId(), user.getName());
+            }
+            return rows;
+        } catch (SQLException e) {
+            INSERT.failure(start);
+            throw e;
+        }
+    }
+
+    LibraryUser findById(String id) throws SQLException {
+        String sql = "SELECT " + USER_COLUMNS + " FROM users WHERE id = ?";
+        long start = System.nanoTime();
 
         try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+             PreparedStatement pstmt = prepare(conn, sql)) {
 
             pstmt.setString(1, id);
-            ResultSet rs = pstmt.executeQuery();
+            try (ResultSet rs = pstmt.executeQuery()) {
+                LibraryUser user = rs.next() ? USER.map(rs) : null;
+                FIND_BY_ID.success(start, user != null ? 1 : 0);
+                return user;
+            }
+        } catch (SQLException e) {
+            FIND_BY_ID.failure(start);
+            throw e;
+        }
+    }
 
-            if (rs.next()) {
-                String name = rs.getString("name");
-                LocalDate regDate = rs.getDate("registration_date").toLocalDate();
-                String type = rs.getString("user_type");
+    // One round-trip for the whole collection; missing ids are simply absent from the result
+    List<LibraryUser> findByIds(Collection<String> ids) throws SQLException {
+        List<LibraryUser> users = new ArrayList<>(ids.size());
+        if (ids.isEmpty()) {
+            return users;
+        }
+        String sql = "SELECT " + USER_COLUMNS + " FROM users WHERE id = ANY(?)";
+        long start = System.nanoTime();
 
-                if ("regular".equals(type)) {
-                    user = new RegularUser(id, name, regDate);
-                } else if ("premium".equals(type)) {
-                    user = new PremiumUser(id, name, regDate);
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = prepare(conn, sql)) {
+
+            pstmt.setArray(1, conn.createArrayOf("varchar", ids.toArray()));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    LibraryUser user = USER.map(rs);
+                    if (user != null) {
+                        users.add(user);
+                    }
                 }
-                // borrowedBooks not loaded for this milestone
             }
+            FIND_BY_IDS.success(start, users.size());
+        } catch (SQLException e) {
+            FIND_BY_IDS.failure(start);
+            throw e;
+        }
+        return users;
+    }
+
+    int updateName(String id, String newName) throws SQLException {
+        String sql = "UPDATE users SET name = ?, updated_at = now() WHERE id = ?";
+        long start = System.nanoTime();
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = prepare(conn, sql)) {
+
+            pstmt.setString(1, newName);
+            pstmt.setString(2, id);
+            int rows = pstmt.executeUpdate();
+            UPDATE_NAME.success(start, rows);
+            if (rows > 0) {
+                publish(ChangeEvent.Type.USER_RENAMED, id, newName);
+            }
+            return rows;
+        } catch (SQLException e) {
+            UPDATE_NAME.failure(start);
+            throw e;
+        }
+    }
+
+    int delete(String id) throws SQLException {
+        // Leaves a tombstone so snapshot delta replay can see the delete
+        String sql = "WITH d AS (DELETE FROM users WHERE id = ? RETURNING id) " +
+                "INSERT INTO deletions (entity, entity_key) SELECT 'user', id FROM d";
+        long start = System.nanoTime();
 
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = prepare(conn, sql)) {
+
+            pstmt.setString(1, id);
+            int rows = pstmt.executeUpdate();
+            DELETE.success(start, rows);
+            if (rows > 0) {
+                publish(ChangeEvent.Type.USER_DELETED, id, "");
+            }
+            return rows;
         } catch (SQLException e) {
-            System.err.println("Error finding user: " + e.getMessage());
+            DELETE.failure(start);
+            throw e;
         }
+    }
 
-        return user;
+    // ── Change events ─────────────────────────────────────────
+    // Successful single-row writes through this DAO are published here when set; bulk imports are not
+    public void setChangeStream(ChangeStream changes) {
+        this.changes = changes;
     }
 
-    public List<LibraryUser> getAllUsers() {
+    private void publish(ChangeEvent.Type type, String key, String detail) {
+        ChangeStream stream = changes;
+        if (stream != null) {
+            stream.publish(type, key, detail);
+        }
+    }
+
+    // ── Statements ────────────────────────────────────────────
+    // Statements are cached per pooled connection either way; this also plans them on the server up front
+    public void setServerPreparedStatements(boolean serverPrepared) {
+        this.serverPrepared = serverPrepared;
+    }
+
+    private PreparedStatement prepare(Connection conn, String sql) throws SQLException {
+        return DatabaseConnection.prepare(conn, sql, serverPrepared);
+    }
+
+    // ── Paged / streaming reads ───────────────────────────────
+    // Keyset pagination in id order; pass null lastId for the first page
+    public List<LibraryUser> getUsersAfter(String lastId, int limit) {
         List<LibraryUser> users = new ArrayList<>();
-        String sql = "SELECT * FROM users ORDER BY id";
+        String sql = lastId == null
+                ? "SELECT " + USER_COLUMNS + " FROM users ORDER BY id LIMIT ?"
+                : "SELECT " + USER_COLUMNS + " FROM users WHERE id > ? ORDER BY id LIMIT ?";
+        long start = System.nanoTime();
 
         try (Connection conn = DatabaseConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+             PreparedStatement pstmt = prepare(conn, sql)) {
 
-            while (rs.next()) {
-                String id = rs.getString("id");
-                String name = rs.getString("name");
-                LocalDate regDate = rs.getDate("registration_date").toLocalDate();
-                String type = rs.getString("user_type");
-
-                LibraryUser user;
-                if ("regular".equals(type)) {
-                    user = new RegularUser(id, name, regDate);
-                } else if ("premium".equals(type)) {
-                    user = new PremiumUser(id, name, regDate);
-                } else {
-                    continue; // skip invalid
+            int i = 1;
+            if (lastId != null) {
+                pstmt.setString(i++, lastId);
+            }
+            pstmt.setInt(i, limit);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    LibraryUser user = USER.map(rs);
+                    if (user != null) {
+                        users.add(user);
+                    }
                 }
-                users.add(user);
             }
+            GET_AFTER.success(start, users.size());
 
         } catch (SQLException e) {
-            System.err.println("Error getting users: " + e.getMessage());
+            GET_AFTER.failure(start);
+            LibraryLog.error("Error paging users: " + e.getMessage());
         }
 
         return users;
     }
 
-    public void updateUserName(String id, String newName) {
-        String sql = "UPDATE users SET name = ? WHERE id = ?";
+    public Stream<LibraryUser> streamAllUsers() throws SQLException {
+        return streamAllUsers(CursorStream.DEFAULT_FETCH_SIZE);
+    }
 
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+    // Same order as getAllUsers(); close the stream to give the connection back
+    public Stream<LibraryUser> streamAllUsers(int fetchSize) throws SQLException {
+        return CursorStream.open("SELECT " + USER_COLUMNS + " FROM users ORDER BY id",
+                pstmt -> { }, fetchSize, USER);
+    }
 
-            pstmt.setString(1, newName);
-            pstmt.setString(2, id);
+    // Reads USER_COLUMNS by position; null for an unknown user_type (such rows are skipped)
+    private static LibraryUser mapUser(ResultSet rs) throws SQLException {
+        String id = rs.getString(1);
+        String name = rs.getString(2);
+        LocalDate regDate = rs.getDate(3).toLocalDate();
+        String type = rs.getString(4);
 
-            int rowsAffected = pstmt.executeUpdate();
-            if (rowsAffected > 0) {
-                System.out.println("User ID=" + id + " name updated to " + newName);
-            } else {
-                System.out.println("User with ID=" + id + " not found");
+        if ("regular".equals(type)) {
+            return new RegularUser(id, name, regDate);
+        } else if ("premium".equals(type)) {
+            return new PremiumUser(id, name, regDate);
+        }
+        return null;
+    }
+
+    // ── Change tracking ───────────────────────────────────────
+    // Rows inserted or updated at or after since (inclusive, so replays are idempotent)
+    public List<LibraryUser> getUsersChangedSince(Timestamp since) throws SQLException {
+        List<LibraryUser> users = new ArrayList<>();
+        String sql = "SELECT " + USER_COLUMNS + " FROM users WHERE updated_at >= ? ORDER BY updated_at";
+        long start = System.nanoTime();
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = prepare(conn, sql)) {
+
+            pstmt.setTimestamp(1, since);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    LibraryUser user = USER.map(rs);
+                    if (user != null) {
+                        users.add(user);
+                    }
+                }
             }
+            CHANGED_SINCE.success(start, users.size());
 
         } catch (SQLException e) {
-            System.err.println("Error updating name: " + e.getMessage());
+            CHANGED_SINCE.failure(start);
+            throw e;
         }
+
+        return users;
     }
 
-    public void deleteUser(String id) {
-        String sql = "DELETE FROM users WHERE id = ?";
+    public List<String> getIdsDeletedSince(Timestamp since) throws SQLException {
+        return DeletionLog.keysDeletedSince("user", since);
+    }
 
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+    // ── Bulk import ───────────────────────────────────────────
+    public ImportResult insertUsers(Iterable<? extends LibraryUser> users) {
+        return insertUsers(users, BatchWriter.DEFAULT_BATCH_SIZE);
+    }
 
-            pstmt.setString(1, id);
+    // Each batch of batchSize rows is one JDBC batch and one transaction
+    public ImportResult insertUsers(Iterable<? extends LibraryUser> users, int batchSize) {
+        ImportResult result = new ImportResult();
+        newBatchWriter(batchSize).write(users.iterator(), null, result);
+        return result;
+    }
 
-            int rowsAffected = pstmt.executeUpdate();
-            if (rowsAffected > 0) {
-                System.out.println("User ID=" + id + " deleted");
-            } else {
-                System.out.println("User with ID=" + id + " not found");
-            }
+    // CSV with header (id,name,registration_date,user_type) or JSON lines with the same keys
+    public ImportResult importUsers(Path file, int batchSize) throws IOException {
+        ImportResult result = new ImportResult();
+        try (RecordFileReader<LibraryUser> reader =
+                     new RecordFileReader<>(file, LibraryUserDAO::fromRecord, result)) {
+            newBatchWriter(batchSize).write(reader, reader::currentLine, result);
+        }
+        return result;
+    }
 
-        } catch (SQLException e) {
-            System.err.println("Error deleting user: " + e.getMessage());
+    private static BatchWriter<LibraryUser> newBatchWriter(int batchSize) {
+        return new BatchWriter<>(INSERT_SQL, LibraryUserDAO::bindInsert, LibraryUser::getId, batchSize, INSERT_BATCH);
+    }
+
+    private static void bindInsert(PreparedStatement pstmt, LibraryUser user) throws SQLException {
+        pstmt.setString(1, user.getId());
+        pstmt.setString(2, user.getName());
+        pstmt.setDate(3, Date.valueOf(user.getRegistrationDate()));
+        String userType = user instanceof RegularUser ? "regular" : "premium";
+        pstmt.setString(4, userType);
+    }
+
+    private static LibraryUser fromRecord(Map<String, String> r) {
+        String date = r.get("registration_date");
+        LocalDate regDate = date == null || date.isBlank() ? LocalDate.now() : LocalDate.parse(date.trim());
+        String type = r.get("user_type");
+        if ("regular".equals(type)) {
+            return new RegularUser(r.get("id"), r.get("name"), regDate);
+        } else if ("premium".equals(type)) {
+            return new PremiumUser(r.get("id"), r.get("name"), regDate);
         }
+        throw new IllegalArgumentException("unknown user_type: " + type);
     }
 }
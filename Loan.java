@@ -0,0 +1,41 @@
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Objects;
+
+// One open loan. The due date is fixed at borrow time from the borrower's loan period.
+final class Loan {
+    private final String isbn;
+    private final String userId;
+    private final LocalDate borrowedOn;
+    private final LocalDate dueDate;
+
+    Loan(String isbn, String userId, LocalDate borrowedOn, LocalDate dueDate) {
+        this.isbn = Objects.requireNonNull(isbn);
+        this.userId = Objects.requireNonNull(userId);
+        this.borrowedOn = Objects.requireNonNull(borrowedOn);
+        this.dueDate = Objects.requireNonNull(dueDate);
+    }
+
+    static Loan start(LibraryUser user, Book book, LocalDate today) {
+        return new Loan(book.getIsbn(), user.getId(), today, today.plusDays(user.getLoanPeriodDays()));
+    }
+
+    public String getIsbn() { return isbn; }
+    public String getUserId() { return userId; }
+    public LocalDate getBorrowedOn() { return borrowedOn; }
+    public LocalDate getDueDate() { return dueDate; }
+
+    public boolean isOverdue(LocalDate today) {
+        return today.isAfter(dueDate);
+    }
+
+    // 0 until the day after the due date
+    public long daysOverdue(LocalDate today) {
+        return Math.max(0, ChronoUnit.DAYS.between(dueDate, today));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Loan{isbn='%s', user='%s', borrowed=%s, due=%s}", isbn, userId, borrowedOn, dueDate);
+    }
+}
@@ -0,0 +1,248 @@
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+// Persisted loans. Borrow and return are each one conditional statement (one round-trip, atomic
+// in autocommit): the guard on books.available_copies / loans.returned_at is the optimistic check, so
+// two desks racing for the last copy can't both win and nothing is read first and written back later.
+class LoanDAO {
+    private static final OperationMetrics BORROW = Metrics.operation("loan.borrow");
+    private static final OperationMetrics RETURN = Metrics.operation("loan.return");
+    private static final OperationMetrics GET_BORROWED = Metrics.operation("loan.getBorrowedBooks");
+    private static final OperationMetrics LOAD_BORROWED = Metrics.operation("loan.loadBorrowedBooks");
+    private static final OperationMetrics GET_OVERDUE = Metrics.operation("loan.getOverdueLoans");
+    private static final OperationMetrics MOST_BORROWED = Metrics.operation("loan.getMostBorrowed");
+
+    // Explicit projections, read by position in the mappers below
+    static final String LOAN_COLUMNS = "isbn, user_id, borrowed_at, due_date";
+    private static final RowMapper<Loan> LOAN = LoanDAO::mapLoan;
+    private static final RowMapper<Book> BOOK = BookDAO.bookMapper(1);
+    private static final RowMapper<Book> BOOK_AFTER_USER_ID = BookDAO.bookMapper(2);
+
+    private volatile ChangeStream changes;
+    private volatile CachingBookDAO bookCache;
+    private volatile boolean serverPrepared;
+
+    // Successful borrows and returns are published here as availability changes when set
+    public void setChangeStream(ChangeStream changes) {
+        this.changes = changes;
+    }
+
+    // Borrows and returns change available_copies, so they evict the book from this cache when set
+    public void setBookCache(CachingBookDAO bookCache) {
+        this.bookCache = bookCache;
+    }
+
+    // Statements are cached per pooled connection either way; this also plans them on the server up front
+    public void setServerPreparedStatements(boolean serverPrepared) {
+        this.serverPrepared = serverPrepared;
+    }
+
+    private PreparedStatement prepare(Connection conn, String sql) throws SQLException {
+        return DatabaseConnection.prepare(conn, sql, serverPrepared);
+    }
+
+    // Due date from the user's loan period; returns false when no copy is free (or the book doesn't exist)
+    public boolean borrowBook(LibraryUser user, String isbn) {
+        return borrowBook(user.getId(), isbn, LocalDate.now().plusDays(user.getLoanPeriodDays()));
+    }
+
+    public boolean borrowBook(String userId, String isbn, LocalDate dueDate) {
+        String sql = "WITH taken AS (" +
+                "  UPDATE books SET available_copies = available_copies - 1, updated_at = now() " +
+                "  WHERE isbn = ? AND available_copies > 0 RETURNING isbn" +
+                ") INSERT INTO loans (isbn, user_id, borrowed_at, due_date) SELECT isbn, ?, ?, ? FROM taken";
+        long start = System.nanoTime();
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = prepare(conn, sql)) {
+
+            pstmt.setString(1, isbn);
+            pstmt.setString(2, userId);
+            pstmt.setTimestamp(3, Timestamp.valueOf(LocalDateTime.now()));
+            pstmt.setDate(4, Date.valueOf(dueDate));
+            int rows = pstmt.executeUpdate();
+            BORROW.success(start, rows);
+            if (rows > 0) {
+                copiesChanged(isbn, "borrowed by " + userId);
+            }
+            return rows > 0;
+
+        } catch (SQLException e) {
+            BORROW.failure(start);
+            LibraryLog.error("Error borrowing book: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Returns false when this user has no open loan for the book
+    public boolean returnBook(String userId, String isbn) {
+        String sql = "WITH closed AS (" +
+                "  UPDATE loans SET returned_at = ? WHERE isbn = ? AND user_id = ? AND returned_at IS NULL RETURNING isbn" +
+                ") UPDATE books SET available_copies = available_copies + 1, updated_at = now() " +
+                "WHERE isbn IN (SELECT isbn FROM closed)";
+        long start = System.nanoTime();
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = prepare(conn, sql)) {
+
+            pstmt.setTimestamp(1, Timestamp.valueOf(LocalDateTime.now()));
+            pstmt.setString(2, isbn);
+            pstmt.setString(3, userId);
+            int rows = pstmt.executeUpdate();
+            RETURN.success(start, rows);
+            if (rows > 0) {
+                copiesChanged(isbn, "returned by " + userId);
+            }
+            return rows > 0;
+
+        } catch (SQLException e) {
+            RETURN.failure(start);
+            LibraryLog.error("Error returning book: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void copiesChanged(String isbn, String detail) {
+        CachingBookDAO cache = bookCache;
+        if (cache != null) {
+            cache.invalidate(isbn);
+        }
+        ChangeStream stream = changes;
+        if (stream != null) {
+            stream.publish(ChangeEvent.Type.AVAILABILITY_CHANGED, isbn, detail);
+        }
+    }
+
+    // Served by the loans_open_due partial index
+    public List<Loan> getOverdueLoans(LocalDate today) {
+        List<Loan> loans = new ArrayList<>();
+        String sql = "SELECT " + LOAN_COLUMNS + " FROM loans " +
+                "WHERE returned_at IS NULL AND due_date < ? ORDER BY due_date";
+        long start = System.nanoTime();
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = prepare(conn, sql)) {
+
+            pstmt.setDate(1, Date.valueOf(today));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    loans.add(LOAN.map(rs));
+                }
+            }
+            GET_OVERDUE.success(start, loans.size());
+
+        } catch (SQLException e) {
+            GET_OVERDUE.failure(start);
+            LibraryLog.error("Error loading overdue loans: " + e.getMessage());
+        }
+
+        return loans;
+    }
+
+    // Loans started between from and to (inclusive), returned or not, counted per title in the database;
+    // served by the loans_borrowed_at index
+    public List<LibraryAnalytics.TitleCount> getMostBorrowed(LocalDate from, LocalDate to, int limit) {
+        List<LibraryAnalytics.TitleCount> titles = new ArrayList<>();
+        String sql = "SELECT l.isbn, b.title, count(*) AS borrows FROM loans l JOIN books b ON b.isbn = l.isbn " +
+                "WHERE l.borrowed_at >= ? AND l.borrowed_at < ? " +
+                "GROUP BY l.isbn, b.title ORDER BY borrows DESC, l.isbn LIMIT ?";
+        long start = System.nanoTime();
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = prepare(conn, sql)) {
+
+            pstmt.setTimestamp(1, Timestamp.valueOf(from.atStartOfDay()));
+            pstmt.setTimestamp(2, Timestamp.valueOf(to.plusDays(1).atStartOfDay()));
+            pstmt.setInt(3, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    titles.add(new LibraryAnalytics.TitleCount(rs.getString(1), rs.getString(2), rs.getLong(3)));
+                }
+            }
+            MOST_BORROWED.success(start, titles.size());
+
+        } catch (SQLException e) {
+            MOST_BORROWED.failure(start);
+            LibraryLog.error("Error counting borrows: " + e.getMessage());
+        }
+
+        return titles;
+    }
+
+    // All open loans, e.g. to fill Library.restoreLoan at start-up; close the stream when done
+    public Stream<Loan> streamOpenLoans() throws SQLException {
+        return CursorStream.open("SELECT " + LOAN_COLUMNS + " FROM loans WHERE returned_at IS NULL",
+                pstmt -> { }, CursorStream.DEFAULT_FETCH_SIZE, LOAN);
+    }
+
+    // Reads LOAN_COLUMNS by position
+    private static Loan mapLoan(ResultSet rs) throws SQLException {
+        return new Loan(rs.getString(1), rs.getString(2),
+                rs.getTimestamp(3).toLocalDateTime().toLocalDate(),
+                rs.getDate(4).toLocalDate());
+    }
+
+    public List<Book> getBorrowedBooks(String userId) {
+        List<Book> books = new ArrayList<>();
+        String sql = "SELECT " + BookDAO.bookColumns("b") + " FROM loans l JOIN books b ON b.isbn = l.isbn " +
+                "WHERE l.user_id = ? AND l.returned_at IS NULL ORDER BY l.borrowed_at";
+        long start = System.nanoTime();
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = prepare(conn, sql)) {
+
+            pstmt.setString(1, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    books.add(BOOK.map(rs));
+                }
+            }
+            GET_BORROWED.success(start, books.size());
+
+        } catch (SQLException e) {
+            GET_BORROWED.failure(start);
+            LibraryLog.error("Error loading loans: " + e.getMessage());
+        }
+
+        return books;
+    }
+
+    // Fills borrowedBooks for all given users with a single join (instead of one query per user)
+    public void loadBorrowedBooks(Collection<? extends LibraryUser> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        Map<String, LibraryUser> byId = new HashMap<>();
+        for (LibraryUser user : users) {
+            byId.put(user.getId(), user);
+        }
+        String sql = "SELECT l.user_id, " + BookDAO.bookColumns("b") + " FROM loans l JOIN books b ON b.isbn = l.isbn " +
+                "WHERE l.user_id = ANY(?) AND l.returned_at IS NULL ORDER BY l.user_id, l.borrowed_at";
+        long start = System.nanoTime();
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = prepare(conn, sql)) {
+
+            pstmt.setArray(1, conn.createArrayOf("varchar", byId.keySet().toArray()));
+            long loans = 0;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    byId.get(rs.getString(1)).restoreLoan(BOOK_AFTER_USER_ID.map(rs));
+                    loans++;
+                }
+            }
+            LOAD_BORROWED.success(start, loans);
+
+        } catch (SQLException e) {
+            LOAD_BORROWED.failure(start);
+            LibraryLog.error("Error loading loans: " + e.getMessage());
+        }
+    }
+}
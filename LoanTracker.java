@@ -0,0 +1,212 @@
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Open loans bucketed by due day (a calendar queue: one bucket per epoch day, buckets kept sorted).
+// Overdue loans are exactly the buckets before today, so finding them costs O(log days + overdue)
+// and never touches loans that are still within their period.
+class LoanTracker implements AutoCloseable {
+    static final long DEFAULT_FINE_PER_DAY_CENTS = 25;
+    static final long DEFAULT_MAX_FINE_PER_LOAN_CENTS = 2_000;
+    static final int DEFAULT_REMINDER_DAYS_BEFORE = 2;
+
+    private static final OperationMetrics DAILY_BATCH = Metrics.operation("loans.dailyBatch");
+
+    private final Clock clock;
+    private final long finePerDayCents;
+    private final long maxFinePerLoanCents;
+    private final int reminderDaysBefore;
+
+    private final ConcurrentHashMap<String, Loan> loansByKey = new ConcurrentHashMap<>();   // see key()
+    private final ConcurrentSkipListMap<Long, Set<Loan>> byDueDay = new ConcurrentSkipListMap<>();
+    private ScheduledExecutorService scheduler;   // guarded by "this"
+
+    LoanTracker(Clock clock) {
+        this(clock, DEFAULT_FINE_PER_DAY_CENTS, DEFAULT_MAX_FINE_PER_LOAN_CENTS, DEFAULT_REMINDER_DAYS_BEFORE);
+    }
+
+    LoanTracker(Clock clock, long finePerDayCents, long maxFinePerLoanCents, int reminderDaysBefore) {
+        this.clock = clock;
+        this.finePerDayCents = finePerDayCents;
+        this.maxFinePerLoanCents = maxFinePerLoanCents;
+        this.reminderDaysBefore = reminderDaysBefore;
+    }
+
+    LocalDate today() {
+        return LocalDate.now(clock);
+    }
+
+    // A user holds at most one copy of a title, so (isbn, user) identifies an open loan
+    private static String key(String isbn, String userId) {
+        return isbn + '\0' + userId;
+    }
+
+    // Replaces any loan already tracked for the same ISBN and user
+    void track(Loan loan) {
+        Loan previous = loansByKey.put(key(loan.getIsbn(), loan.getUserId()), loan);
+        if (previous != null) {
+            unbucket(previous);
+        }
+        byDueDay.compute(loan.getDueDate().toEpochDay(), (day, bucket) -> {
+            if (bucket == null) {
+                bucket = ConcurrentHashMap.newKeySet();
+            }
+            bucket.add(loan);
+            return bucket;
+        });
+    }
+
+    Loan untrack(String isbn, String userId) {
+        Loan loan = loansByKey.remove(key(isbn, userId));
+        if (loan != null) {
+            unbucket(loan);
+        }
+        return loan;
+    }
+
+    private void unbucket(Loan loan) {
+        // Drops the bucket once empty; both sides use compute() so a concurrent track() can't add to a dropped bucket
+        byDueDay.computeIfPresent(loan.getDueDate().toEpochDay(), (day, bucket) -> {
+            bucket.remove(loan);
+            return bucket.isEmpty() ? null : bucket;
+        });
+    }
+
+    Loan getLoan(String isbn, String userId) {
+        return loansByKey.get(key(isbn, userId));
+    }
+
+    public int size() {
+        return loansByKey.size();
+    }
+
+    // Oldest due date first
+    public List<Loan> overdue(LocalDate today) {
+        List<Loan> result = new ArrayList<>();
+        for (Set<Loan> bucket : byDueDay.headMap(today.toEpochDay(), false).values()) {
+            result.addAll(bucket);
+        }
+        return result;
+    }
+
+    public List<Loan> dueOn(LocalDate day) {
+        Set<Loan> bucket = byDueDay.get(day.toEpochDay());
+        return bucket == null ? Collections.emptyList() : new ArrayList<>(bucket);
+    }
+
+    // ── Daily batch ───────────────────────────────────────────
+    // Fines are the total owed to date (days overdue x daily rate, capped per loan), so a missed
+    // or repeated run gives the same numbers. Reminders go out reminderDaysBefore days ahead.
+    public DailyReport runDaily(LocalDate today) {
+        long start = System.nanoTime();
+        Map<String, long[]> perUser = new HashMap<>();   // userId -> {loans, cents}
+        long overdueLoans = 0;
+        ConcurrentNavigableMap<Long, Set<Loan>> overdue = byDueDay.headMap(today.toEpochDay(), false);
+        for (Map.Entry<Long, Set<Loan>> bucket : overdue.entrySet()) {
+            long days = today.toEpochDay() - bucket.getKey();
+            long fine = Math.min(days * finePerDayCents, maxFinePerLoanCents);
+            for (Loan loan : bucket.getValue()) {
+                long[] acc = perUser.computeIfAbsent(loan.getUserId(), id -> new long[2]);
+                acc[0]++;
+                acc[1] += fine;
+                overdueLoans++;
+            }
+        }
+        List<Fine> fines = new ArrayList<>(perUser.size());
+        for (Map.Entry<String, long[]> e : perUser.entrySet()) {
+            fines.add(new Fine(e.getKey(), (int) e.getValue()[0], e.getValue()[1]));
+        }
+        List<Loan> reminders = dueOn(today.plusDays(reminderDaysBefore));
+        DAILY_BATCH.success(start, overdueLoans + reminders.size());
+        return new DailyReport(today, overdueLoans, fines, reminders, System.nanoTime() - start);
+    }
+
+    // Runs runDaily(today) every day at the given local time on a daemon thread
+    public synchronized void startDailyBatch(LocalTime at, Consumer<DailyReport> handler) {
+        if (scheduler != null) {
+            throw new IllegalStateException("Daily batch already started");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "loan-daily-batch");
+            t.setDaemon(true);
+            return t;
+        });
+        LocalDateTime now = LocalDateTime.now(clock);
+        LocalDateTime next = now.toLocalDate().atTime(at);
+        if (!next.isAfter(now)) {
+            next = next.plusDays(1);
+        }
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                handler.accept(runDaily(today()));
+            } catch (RuntimeException e) {
+                // keep the schedule alive; the next run recomputes everything anyway
+                LibraryLog.error("Error in daily loan batch: " + e.getMessage());
+            }
+        }, Duration.between(now, next).toMillis(), TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    // Total fine owed by one user across all of their overdue loans
+    public static final class Fine {
+        public final String userId;
+        public final int overdueLoans;
+        public final long amountCents;
+
+        Fine(String userId, int overdueLoans, long amountCents) {
+            this.userId = userId;
+            this.overdueLoans = overdueLoans;
+            this.amountCents = amountCents;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Fine{user='%s', loans=%d, amount=%d.%02d}",
+                    userId, overdueLoans, amountCents / 100, amountCents % 100);
+        }
+    }
+
+    public static final class DailyReport {
+        public final LocalDate date;
+        public final long overdueLoans;
+        public final List<Fine> fines;
+        public final List<Loan> reminders;
+        public final long elapsedNanos;
+
+        DailyReport(LocalDate date, long overdueLoans, List<Fine> fines, List<Loan> reminders, long elapsedNanos) {
+            this.date = date;
+            this.overdueLoans = overdueLoans;
+            this.fines = Collections.unmodifiableList(fines);
+            this.reminders = Collections.unmodifiableList(reminders);
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("DailyReport{date=%s, overdueLoans=%d, usersFined=%d, reminders=%d, took=%.1fms}",
+                    date, overdueLoans, fines.size(), reminders.size(), elapsedNanos / 1e6);
+        }
+    }
+}
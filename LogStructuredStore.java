@@ -0,0 +1,856 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.UnaryOperator;
+import java.util.zip.CRC32;
+
+// Embedded on-disk CatalogStore and UserStore, log-structured: one append-only file (store.log) and, in
+// memory, only an index from each key to the offset and length of its latest record. A write appends a
+// record and a point read is one positional read. Overwritten and deleted records are garbage; a
+// background task compacts once garbage passes garbageRatio of the file: live records are copied to
+// store.log.compact without blocking reads or writes, records appended meanwhile are replayed onto the
+// copy, and the copy replaces the log by atomic rename. Opening replays the log to rebuild the index and
+// cuts off a torn last record.
+//
+// Record: int bodyLength, int CRC32(body), body = kind byte + fields (DataOutput, strings as UTF)
+final class LogStructuredStore implements CatalogStore, UserStore, AutoCloseable {
+    static final double DEFAULT_GARBAGE_RATIO = 0.5;
+    static final long DEFAULT_COMPACTION_INTERVAL_MILLIS = 60_000;
+
+    private static final String LOG_FILE = "store.log";
+    private static final String COMPACT_FILE = "store.log.compact";
+    private static final byte PUT_BOOK = 1;
+    private static final byte DELETE_BOOK = 2;
+    private static final byte PUT_USER = 3;
+    private static final byte DELETE_USER = 4;
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_BODY_BYTES = 1 << 20;
+    private static final int LENGTH_BITS = 21;              // location = offset << 21 | record length
+    private static final long MIN_COMPACT_BYTES = 1 << 20;  // smaller logs are not worth rewriting
+    private static final int BATCH_BYTES = 256 * 1024;
+
+    private static final OperationMetrics APPEND = Metrics.operation("logstore.append");
+    private static final OperationMetrics READ = Metrics.operation("logstore.read");
+    private static final OperationMetrics COMPACT = Metrics.operation("logstore.compact");
+
+    private final Path dir;
+    private final boolean syncWrites;
+    private final double garbageRatio;
+    private final ScheduledExecutorService compactor;   // null when compaction is only run by hand
+    private final ReentrantLock compaction = new ReentrantLock();
+
+    // Reads take the read lock; appends and the swap at the end of a compaction take the write lock
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Guarded by lock
+    private FileChannel log;
+    private long logBytes;
+    private Index index = new Index();
+    private long compactions;
+
+    private LogStructuredStore(Path dir, boolean syncWrites, double garbageRatio, long compactionIntervalMillis)
+            throws IOException {
+        this.dir = dir;
+        this.syncWrites = syncWrites;
+        this.garbageRatio = garbageRatio;
+        Files.createDirectories(dir);
+        Files.deleteIfExists(dir.resolve(COMPACT_FILE));   // left by a compaction that didn't finish
+        this.log = FileChannel.open(dir.resolve(LOG_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        recover();
+        if (compactionIntervalMillis > 0) {
+            compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "log-store-compactor");
+                t.setDaemon(true);
+                return t;
+            });
+            compactor.scheduleWithFixedDelay(this::compactIfWorthIt, compactionIntervalMillis,
+                    compactionIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            compactor = null;
+        }
+    }
+
+    public static LogStructuredStore open(Path dir) throws IOException {
+        return open(dir, false, DEFAULT_GARBAGE_RATIO, DEFAULT_COMPACTION_INTERVAL_MILLIS);
+    }
+
+    // syncWrites forces every append to disk before returning; compactionIntervalMillis 0 disables the
+    // background compaction (compact() still works)
+    public static LogStructuredStore open(Path dir, boolean syncWrites, double garbageRatio,
+                                          long compactionIntervalMillis) throws IOException {
+        if (garbageRatio <= 0 || garbageRatio >= 1) {
+            throw new IllegalArgumentException("Garbage ratio must be between 0 and 1: " + garbageRatio);
+        }
+        return new LogStructuredStore(dir, syncWrites, garbageRatio, compactionIntervalMillis);
+    }
+
+    // ── Books ─────────────────────────────────────────────────
+    @Override
+    public void insertBook(Book book) {
+        InMemoryStore.BookRow row = new InMemoryStore.BookRow(book);
+        lock.writeLock().lock();
+        try {
+            if (index.books.containsKey(row.isbn)) {
+                LibraryLog.error("Error inserting book: duplicate ISBN " + row.isbn);
+                return;
+            }
+            append(PUT_BOOK, row.isbn, row.title, encodeBook(row));
+        } catch (IOException e) {
+            LibraryLog.error("Error inserting book: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Book getBookByIsbn(String isbn) {
+        lock.readLock().lock();
+        try {
+            BookSlot slot = index.books.get(isbn);
+            return slot != null ? readBook(slot.location).toBook() : null;
+        } catch (IOException e) {
+            LibraryLog.error("Error finding book: " + e.getMessage());
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Book> getAllBooks() {
+        return getBooksAfter(null, null, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void updateBookAvailability(String isbn, boolean newAvailable) {
+        if (!updateBook(isbn, row -> row.totalCopies != 1 ? null : row.withCopies(1, newAvailable ? 1 : 0))) {
+            LibraryLog.info("Book with ISBN=" + isbn + " not found or has several copies (use addCopies)");
+        }
+    }
+
+    @Override
+    public boolean addCopies(String isbn, int count) {
+        return updateBook(isbn, row -> row.availableCopies + count < 0 ? null
+                : row.withCopies(row.totalCopies + count, row.availableCopies + count));
+    }
+
+    // Read-modify-append under the write lock; change returning null leaves the row alone
+    private boolean updateBook(String isbn, UnaryOperator<InMemoryStore.BookRow> change) {
+        lock.writeLock().lock();
+        try {
+            BookSlot slot = index.books.get(isbn);
+            if (slot == null) {
+                return false;
+            }
+            InMemoryStore.BookRow updated = change.apply(readBook(slot.location));
+            if (updated == null) {
+                return false;
+            }
+            append(PUT_BOOK, isbn, updated.title, encodeBook(updated));
+            return true;
+        } catch (IOException e) {
+            LibraryLog.error("Error updating book: " + e.getMessage());
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleteBook(String isbn) {
+        lock.writeLock().lock();
+        try {
+            if (!index.books.containsKey(isbn)) {
+                LibraryLog.info("Book with ISBN=" + isbn + " not found");
+                return;
+            }
+            append(DELETE_BOOK, isbn, null, encodeDelete(DELETE_BOOK, isbn));
+        } catch (IOException e) {
+            LibraryLog.error("Error deleting book: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Book> getBooksAfter(String lastTitle, String lastIsbn, int limit) {
+        List<Book> page = new ArrayList<>(Math.min(limit, 1024));
+        lock.readLock().lock();
+        try {
+            Map<String, String> keys = lastTitle == null ? index.booksByTitle
+                    : index.booksByTitle.tailMap(titleKey(lastTitle, lastIsbn != null ? lastIsbn : ""), false);
+            for (String isbn : keys.values()) {
+                if (page.size() >= limit) {
+                    break;
+                }
+                page.add(readBook(index.books.get(isbn).location).toBook());
+            }
+        } catch (IOException e) {
+            LibraryLog.error("Error paging books: " + e.getMessage());
+        } finally {
+            lock.readLock().unlock();
+        }
+        return page;
+    }
+
+    // Records go out in BATCH_BYTES writes, each under one hold of the write lock
+    @Override
+    public ImportResult insertBooks(Iterable<Book> books) {
+        ImportResult result = new ImportResult();
+        List<PendingPut> batch = new ArrayList<>();
+        Set<String> batchKeys = new HashSet<>();
+        int batchBytes = 0;
+        long rowNumber = 0;
+        for (Book book : books) {
+            rowNumber++;
+            InMemoryStore.BookRow row = new InMemoryStore.BookRow(book);
+            if (!batchKeys.add(row.isbn)) {
+                result.recordFailure(rowNumber, row.isbn, "duplicate ISBN");
+                continue;
+            }
+            byte[] record = encodeBook(row);
+            batch.add(new PendingPut(rowNumber, row.isbn, row.title, record));
+            batchBytes += record.length;
+            if (batchBytes >= BATCH_BYTES) {
+                writeBatch(batch, result);
+                batch.clear();
+                batchKeys.clear();
+                batchBytes = 0;
+            }
+        }
+        writeBatch(batch, result);
+        return result;
+    }
+
+    private void writeBatch(List<PendingPut> batch, ImportResult result) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        List<PendingPut> accepted = new ArrayList<>(batch.size());
+        lock.writeLock().lock();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(BATCH_BYTES + 4096);
+            for (PendingPut put : batch) {
+                if (index.books.containsKey(put.key)) {
+                    result.recordFailure(put.rowNumber, put.key, "duplicate ISBN");
+                } else {
+                    accepted.add(put);
+                    out.write(put.record);
+                }
+            }
+            long offset = logBytes;
+            write(ByteBuffer.wrap(out.toByteArray()), offset);
+            for (PendingPut put : accepted) {
+                index.apply(PUT_BOOK, put.key, put.title, location(offset, put.record.length), put.record.length);
+                offset += put.record.length;
+            }
+            logBytes = offset;
+            result.recordInserted(accepted.size());
+            APPEND.success(start, accepted.size());
+        } catch (IOException e) {
+            APPEND.failure(start);
+            for (PendingPut put : accepted) {
+                result.recordFailure(put.rowNumber, put.key, e.getMessage());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ── Users ─────────────────────────────────────────────────
+    @Override
+    public void insertLibraryUser(LibraryUser user) {
+        lock.writeLock().lock();
+        try {
+            if (index.users.containsKey(user.getId())) {
+                LibraryLog.error("Error inserting user: duplicate id " + user.getId());
+                return;
+            }
+            append(PUT_USER, user.getId(), null, encodeUser(new InMemoryStore.UserRow(user)));
+        } catch (IOException e) {
+            LibraryLog.error("Error inserting user: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public LibraryUser getUserById(String id) {
+        lock.readLock().lock();
+        try {
+            Long location = index.users.get(id);
+            return location != null ? readUser(location).toUser() : null;
+        } catch (IOException e) {
+            LibraryLog.error("Error finding user: " + e.getMessage());
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<LibraryUser> getAllUsers() {
+        return getUsersAfter(null, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void updateUserName(String id, String newName) {
+        lock.writeLock().lock();
+        try {
+            Long location = index.users.get(id);
+            if (location == null) {
+                LibraryLog.info("User with ID=" + id + " not found");
+                return;
+            }
+            append(PUT_USER, id, null, encodeUser(readUser(location).withName(newName)));
+        } catch (IOException e) {
+            LibraryLog.error("Error updating name: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleteUser(String id) {
+        lock.writeLock().lock();
+        try {
+            if (!index.users.containsKey(id)) {
+                LibraryLog.info("User with ID=" + id + " not found");
+                return;
+            }
+            append(DELETE_USER, id, null, encodeDelete(DELETE_USER, id));
+        } catch (IOException e) {
+            LibraryLog.error("Error deleting user: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<LibraryUser> getUsersAfter(String lastId, int limit) {
+        List<LibraryUser> page = new ArrayList<>(Math.min(limit, 1024));
+        lock.readLock().lock();
+        try {
+            Map<String, Long> rows = lastId == null ? index.users : index.users.tailMap(lastId, false);
+            for (long location : rows.values()) {
+                if (page.size() >= limit) {
+                    break;
+                }
+                page.add(readUser(location).toUser());
+            }
+        } catch (IOException e) {
+            LibraryLog.error("Error paging users: " + e.getMessage());
+        } finally {
+            lock.readLock().unlock();
+        }
+        return page;
+    }
+
+    // One append per user; user imports are small next to catalogs
+    @Override
+    public ImportResult insertUsers(Iterable<? extends LibraryUser> users) {
+        ImportResult result = new ImportResult();
+        long rowNumber = 0;
+        for (LibraryUser user : users) {
+            rowNumber++;
+            lock.writeLock().lock();
+            try {
+                if (index.users.containsKey(user.getId())) {
+                    result.recordFailure(rowNumber, user.getId(), "duplicate id");
+                } else {
+                    append(PUT_USER, user.getId(), null, encodeUser(new InMemoryStore.UserRow(user)));
+                    result.recordInserted(1);
+                }
+            } catch (IOException e) {
+                result.recordFailure(rowNumber, user.getId(), e.getMessage());
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        return result;
+    }
+
+    // ── Compaction ────────────────────────────────────────────
+    private void compactIfWorthIt() {
+        try {
+            long bytes;
+            long garbage;
+            lock.readLock().lock();
+            try {
+                bytes = logBytes;
+                garbage = index.garbageBytes;
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (bytes >= MIN_COMPACT_BYTES && garbage >= bytes * garbageRatio) {
+                compact();
+            }
+        } catch (IOException | RuntimeException e) {
+            // keep the scheduled task alive; the old log is still intact
+            LibraryLog.error("Error compacting store: " + e.getMessage());
+        }
+    }
+
+    // Rewrites the log with live records only. Reads and writes carry on while the live records are
+    // copied; only replaying the records appended meanwhile and the swap hold the write lock.
+    public void compact() throws IOException {
+        compaction.lock();
+        try {
+            long start = System.nanoTime();
+            Path tmp = dir.resolve(COMPACT_FILE);
+            Map<String, BookSlot> books;
+            Map<String, Long> users;
+            long copiedUpTo;
+            FileChannel source;
+            lock.readLock().lock();
+            try {
+                books = new HashMap<>(index.books);
+                users = new HashMap<>(index.users);
+                copiedUpTo = logBytes;
+                source = log;
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            Index compacted = new Index();
+            // out becomes the live log's channel: it is opened before the rename, so nothing can fail
+            // between the rename and the swap and leave log on the replaced file
+            FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            boolean swapped = false;
+            try {
+                long offset = 0;
+                ByteBuffer buffer = ByteBuffer.allocate(BATCH_BYTES + MAX_BODY_BYTES + HEADER_BYTES);
+                for (Map.Entry<String, BookSlot> e : books.entrySet()) {
+                    int length = lengthOf(e.getValue().location);
+                    offset = copy(source, e.getValue().location, out, buffer, offset);
+                    compacted.apply(PUT_BOOK, e.getKey(), e.getValue().title, location(offset - length, length), length);
+                }
+                for (Map.Entry<String, Long> e : users.entrySet()) {
+                    int length = lengthOf(e.getValue());
+                    offset = copy(source, e.getValue(), out, buffer, offset);
+                    compacted.apply(PUT_USER, e.getKey(), null, location(offset - length, length), length);
+                }
+                flush(out, buffer);
+
+                lock.writeLock().lock();
+                try {
+                    // Whatever was appended during the copy goes onto the new log as well
+                    long end = replay(log, copiedUpTo, logBytes, compacted, out, offset);
+                    out.force(false);
+                    Files.move(tmp, dir.resolve(LOG_FILE), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                    FileChannel old = log;
+                    log = out;
+                    logBytes = end;
+                    index = compacted;
+                    compactions++;
+                    swapped = true;
+                    try {
+                        old.close();
+                    } catch (IOException e) {
+                        LibraryLog.warn("Error closing replaced store log: " + e.getMessage());
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            } catch (IOException | RuntimeException e) {
+                if (!swapped) {
+                    try {
+                        out.close();
+                        Files.deleteIfExists(tmp);
+                    } catch (IOException cleanup) {
+                        e.addSuppressed(cleanup);
+                    }
+                }
+                COMPACT.failure(start);
+                throw e;
+            }
+            COMPACT.success(start, compacted.books.size() + compacted.users.size());
+        } finally {
+            compaction.unlock();
+        }
+    }
+
+    // Appends the record at location to the buffered output; returns the output offset after it
+    private static long copy(FileChannel source, long location, FileChannel out, ByteBuffer buffer, long offset)
+            throws IOException {
+        int length = lengthOf(location);
+        if (buffer.position() + length > BATCH_BYTES) {
+            flush(out, buffer);
+        }
+        ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        readFully(source, slice, offsetOf(location));
+        buffer.position(buffer.position() + length);
+        return offset + length;
+    }
+
+    private static void flush(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // ── Recovery ──────────────────────────────────────────────
+    private void recover() throws IOException {
+        long size = log.size();
+        long valid = replay(log, 0, size, index, null, 0);
+        if (valid < size) {
+            LibraryLog.warn("Truncating torn store record in " + dir.resolve(LOG_FILE));
+            log.truncate(valid);
+        }
+        logBytes = valid;
+    }
+
+    // Applies the records in [from, to) of source to target, also appending them to out when given (at
+    // outOffset). Stops at the first torn or corrupt record; returns the end offset reached (in out
+    // when given, else in source).
+    private static long replay(FileChannel source, long from, long to, Index target, FileChannel out, long outOffset)
+            throws IOException {
+        long offset = from;
+        long written = outOffset;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(source.position(from)), 64 * 1024));
+        while (offset + HEADER_BYTES <= to) {
+            int length;
+            int crc;
+            byte[] body;
+            try {
+                length = in.readInt();
+                crc = in.readInt();
+                if (length < 1 || length > MAX_BODY_BYTES || offset + HEADER_BYTES + length > to) {
+                    break;
+                }
+                body = new byte[length];
+                in.readFully(body);
+            } catch (EOFException e) {
+                break;
+            }
+            if (crc(body) != crc) {
+                break;
+            }
+            int recordLength = HEADER_BYTES + length;
+            long at = out != null ? written : offset;
+            if (out != null) {
+                ByteBuffer record = ByteBuffer.allocate(recordLength).putInt(length).putInt(crc).put(body);
+                record.flip();
+                while (record.hasRemaining()) {
+                    out.write(record, written + record.position());
+                }
+                written += recordLength;
+            }
+            DataInputStream fields = new DataInputStream(new ByteArrayInputStream(body));
+            byte kind = fields.readByte();
+            String key = fields.readUTF();
+            String title = kind == PUT_BOOK ? fields.readUTF() : null;
+            target.apply(kind, key, title, location(at, recordLength), recordLength);
+            offset += recordLength;
+        }
+        return out != null ? written : offset;
+    }
+
+    // ── Records ───────────────────────────────────────────────
+    // Must hold the write lock; the index only moves once the record is written
+    private void append(byte kind, String key, String title, byte[] record) throws IOException {
+        long start = System.nanoTime();
+        try {
+            write(ByteBuffer.wrap(record), logBytes);
+            index.apply(kind, key, title, location(logBytes, record.length), record.length);
+            logBytes += record.length;
+            APPEND.success(start, 1);
+        } catch (IOException e) {
+            APPEND.failure(start);
+            throw e;
+        }
+    }
+
+    private void write(ByteBuffer data, long offset) throws IOException {
+        long position = offset;
+        while (data.hasRemaining()) {
+            position += log.write(data, position);
+        }
+        if (syncWrites) {
+            log.force(false);
+        }
+    }
+
+    private InMemoryStore.BookRow readBook(long location) throws IOException {
+        DataInputStream in = read(location);
+        in.readByte();
+        return new InMemoryStore.BookRow(in.readUTF(), in.readUTF(), in.readUTF(), in.readInt(), in.readUTF(),
+                in.readInt(), in.readInt());
+    }
+
+    private InMemoryStore.UserRow readUser(long location) throws IOException {
+        DataInputStream in = read(location);
+        in.readByte();
+        return new InMemoryStore.UserRow(in.readUTF(), in.readUTF(), LocalDate.ofEpochDay(in.readLong()),
+                in.readBoolean());
+    }
+
+    // Must hold the read or write lock
+    private DataInputStream read(long location) throws IOException {
+        long start = System.nanoTime();
+        ByteBuffer record = ByteBuffer.allocate(lengthOf(location));
+        readFully(log, record, offsetOf(location));
+        int crc = record.getInt(4);
+        byte[] body = new byte[record.capacity() - HEADER_BYTES];
+        record.position(HEADER_BYTES);
+        record.get(body);
+        if (crc(body) != crc) {
+            READ.failure(start);
+            throw new IOException("Corrupt store record at offset " + offsetOf(location));
+        }
+        READ.success(start, 1);
+        return new DataInputStream(new ByteArrayInputStream(body));
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer into, long offset) throws IOException {
+        long position = offset;
+        while (into.hasRemaining()) {
+            int n = channel.read(into, position);
+            if (n < 0) {
+                throw new EOFException("Store record past end of file at offset " + offset);
+            }
+            position += n;
+        }
+    }
+
+    // Key and (for books) title come first in every body, so replay can index without decoding the rest
+    private static byte[] encodeBook(InMemoryStore.BookRow row) {
+        return record(out -> {
+            out.writeByte(PUT_BOOK);
+            out.writeUTF(row.isbn);
+            out.writeUTF(row.title);
+            out.writeUTF(row.author);
+            out.writeInt(row.publicationYear);
+            out.writeUTF(row.genre);
+            out.writeInt(row.totalCopies);
+            out.writeInt(row.availableCopies);
+        });
+    }
+
+    private static byte[] encodeUser(InMemoryStore.UserRow row) {
+        return record(out -> {
+            out.writeByte(PUT_USER);
+            out.writeUTF(row.id);
+            out.writeUTF(row.name);
+            out.writeLong(row.registrationDate.toEpochDay());
+            out.writeBoolean(row.premium);
+        });
+    }
+
+    private static byte[] encodeDelete(byte kind, String key) {
+        return record(out -> {
+            out.writeByte(kind);
+            out.writeUTF(key);
+        });
+    }
+
+    private interface BodyWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] record(BodyWriter body) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeLong(0);   // header, filled in below
+            body.write(out);
+            byte[] record = bytes.toByteArray();
+            int length = record.length - HEADER_BYTES;
+            if (length > MAX_BODY_BYTES) {
+                throw new IllegalArgumentException("Record too large: " + length + " bytes");
+            }
+            ByteBuffer header = ByteBuffer.wrap(record);
+            header.putInt(length);
+            header.putInt(crc(record, HEADER_BYTES, length));
+            return record;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);   // in-memory stream
+        }
+    }
+
+    private static int crc(byte[] body) {
+        return crc(body, 0, body.length);
+    }
+
+    private static int crc(byte[] data, int from, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, from, length);
+        return (int) crc.getValue();
+    }
+
+    private static long location(long offset, int length) {
+        return offset << LENGTH_BITS | length;
+    }
+
+    private static long offsetOf(long location) {
+        return location >>> LENGTH_BITS;
+    }
+
+    private static int lengthOf(long location) {
+        return (int) (location & ((1L << LENGTH_BITS) - 1));
+    }
+
+    // Sorts like (title, isbn); '\0' cannot appear in either
+    private static String titleKey(String title, String isbn) {
+        return title + '\0' + isbn;
+    }
+
+    // ── Lifecycle ─────────────────────────────────────────────
+    public Stats getStats() {
+        lock.readLock().lock();
+        try {
+            return new Stats(index.books.size(), index.users.size(), logBytes, index.garbageBytes, compactions);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (compactor != null) {
+            compactor.shutdown();
+            try {
+                compactor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            if (log.isOpen()) {
+                log.force(false);
+                log.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Key -> location of its latest record, plus (title, isbn) order for the paged book reads
+    private static final class Index {
+        final HashMap<String, BookSlot> books = new HashMap<>();
+        final TreeMap<String, String> booksByTitle = new TreeMap<>();   // titleKey -> isbn
+        final TreeMap<String, Long> users = new TreeMap<>();
+        long garbageBytes;   // bytes of overwritten records and tombstones
+
+        void apply(byte kind, String key, String title, long location, int recordLength) {
+            switch (kind) {
+                case PUT_BOOK: {
+                    BookSlot previous = books.put(key, new BookSlot(title, location));
+                    if (previous != null) {
+                        garbageBytes += lengthOf(previous.location);
+                        if (!previous.title.equals(title)) {
+                            booksByTitle.remove(titleKey(previous.title, key));
+                        }
+                    }
+                    booksByTitle.put(titleKey(title, key), key);
+                    break;
+                }
+                case DELETE_BOOK: {
+                    BookSlot previous = books.remove(key);
+                    if (previous != null) {
+                        garbageBytes += lengthOf(previous.location);
+                        booksByTitle.remove(titleKey(previous.title, key));
+                    }
+                    garbageBytes += recordLength;
+                    break;
+                }
+                case PUT_USER: {
+                    Long previous = users.put(key, location);
+                    if (previous != null) {
+                        garbageBytes += lengthOf(previous);
+                    }
+                    break;
+                }
+                case DELETE_USER: {
+                    Long previous = users.remove(key);
+                    if (previous != null) {
+                        garbageBytes += lengthOf(previous);
+                    }
+                    garbageBytes += recordLength;
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Unknown store record kind " + kind);
+            }
+        }
+    }
+
+    private static final class BookSlot {
+        final String title;
+        final long location;
+
+        BookSlot(String title, long location) {
+            this.title = title;
+            this.location = location;
+        }
+    }
+
+    private static final class PendingPut {
+        final long rowNumber;
+        final String key;
+        final String title;
+        final byte[] record;
+
+        PendingPut(long rowNumber, String key, String title, byte[] record) {
+            this.rowNumber = rowNumber;
+            this.key = key;
+            this.title = title;
+            this.record = record;
+        }
+    }
+
+    public static final class Stats {
+        public final int books;
+        public final int users;
+        public final long logBytes;
+        public final long garbageBytes;
+        public final long compactions;
+
+        Stats(int books, int users, long logBytes, long garbageBytes, long compactions) {
+            this.books = books;
+            this.users = users;
+            this.logBytes = logBytes;
+            this.garbageBytes = garbageBytes;
+            this.compactions = compactions;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("LogStore{books=%d, users=%d, log=%.1fMB, garbage=%.1f%%, compactions=%d}",
+                    books, users, logBytes / 1e6, logBytes == 0 ? 0 : 100.0 * garbageBytes / logBytes, compactions);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+// Bounded LRU read-through cache with TTL, negative caching and single-flight loading:
+// concurrent misses on one key share a single loader call. A loader that throws caches nothing; its
+// exception reaches the caller and everyone waiting on that load.
+class LookupCache<K, V> {
+    private static final Object MISSING = new Object();   // cached "not found"
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final Function<K, V> loader;
+
+    // Guarded by "this"; access-ordered so the eldest entry is the least recently used
+    private final LinkedHashMap<K, Entry> entries;
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    LookupCache(int maxSize, long ttlMillis, long negativeTtlMillis, Function<K, V> loader) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.negativeTtlNanos = negativeTtlMillis * 1_000_000L;
+        this.loader = loader;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    public V get(K key) {
+        synchronized (this) {
+            Entry e = entries.get(key);
+            if (e != null) {
+                if (System.nanoTime() - e.expiresAt < 0) {
+                    hits.increment();
+                    return e.value();
+                }
+                entries.remove(key);
+                evictions.increment();
+            }
+        }
+        misses.increment();
+
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            try {
+                return existing.join();   // someone else is already loading this key
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+
+        V value;
+        try {
+            loads.increment();
+            value = loader.apply(key);
+        } catch (RuntimeException e) {
+            inFlight.remove(key, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+        // Only publish if no invalidate() raced with the load
+        if (inFlight.remove(key, mine)) {
+            put(key, value);
+        }
+        mine.complete(value);
+        return value;
+    }
+
+    public synchronized void put(K key, V value) {
+        if (value == null && negativeTtlNanos <= 0) {
+            entries.remove(key);
+            return;
+        }
+        long ttl = value == null ? negativeTtlNanos : ttlNanos;
+        entries.put(key, new Entry(value == null ? MISSING : value, System.nanoTime() + ttl));
+        if (entries.size() > maxSize) {
+            Iterator<K> eldest = entries.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    public void invalidate(K key) {
+        inFlight.remove(key);
+        synchronized (this) {
+            entries.remove(key);
+        }
+    }
+
+    public void invalidateAll() {
+        inFlight.clear();
+        synchronized (this) {
+            entries.clear();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public Stats getStats() {
+        return new Stats(hits.sum(), misses.sum(), loads.sum(), evictions.sum(), size());
+    }
+
+    private static final class Entry {
+        final Object value;
+        final long expiresAt;
+
+        Entry(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        @SuppressWarnings("unchecked")
+        <V> V value() {
+            return value == MISSING ? null : (V) value;
+        }
+    }
+
+    public static final class Stats {
+        public final long hits;
+        public final long misses;
+        public final long loads;
+        public final long evictions;
+        public final int size;
+
+        Stats(long hits, long misses, long loads, long evictions, int size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.loads = loads;
+            this.evictions = evictions;
+            this.size = size;
+        }
+
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Cache{size=%d, hits=%d, misses=%d, loads=%d, evictions=%d, hitRate=%.2f}",
+                    size, hits, misses, loads, evictions, hitRate());
+        }
+    }
+}
@@ -0,0 +1,197 @@
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+
+// Process-wide registry of OperationMetrics, exported over JMX (one MBean per operation under
+// "digitallibrary:type=Operation") and as plain text (Prometheus exposition format) for scraping.
+final class Metrics {
+    private static final ConcurrentSkipListMap<String, OperationMetrics> OPERATIONS = new ConcurrentSkipListMap<>();
+    private static final String JMX_DOMAIN = "digitallibrary";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static volatile boolean jmxEnabled;
+
+    private Metrics() {
+    }
+
+    // Callers keep the returned instance in a static final field; lookup is not meant for the hot path
+    static OperationMetrics operation(String name) {
+        OperationMetrics existing = OPERATIONS.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        OperationMetrics created = new OperationMetrics(name);
+        existing = OPERATIONS.putIfAbsent(name, created);
+        if (existing != null) {
+            return existing;
+        }
+        if (jmxEnabled) {
+            registerMBean(created);
+        }
+        return created;
+    }
+
+    // ── JMX ───────────────────────────────────────────────────
+    // Registers every known operation now and every new one as it appears
+    static synchronized void registerJmx() {
+        if (jmxEnabled) {
+            return;
+        }
+        jmxEnabled = true;
+        for (OperationMetrics m : OPERATIONS.values()) {
+            registerMBean(m);
+        }
+    }
+
+    private static void registerMBean(OperationMetrics m) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(JMX_DOMAIN + ":type=Operation,name=" + ObjectName.quote(m.getName()));
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new OperationMBean(m), name);
+            }
+        } catch (JMException e) {
+            LibraryLog.error("Error registering metrics MBean for " + m.getName() + ": " + e.getMessage());
+        }
+    }
+
+    // Read-only view of one operation; latencies in microseconds
+    private static final class OperationMBean implements DynamicMBean {
+        private static final String[] ATTRIBUTES = {
+                "Count", "Errors", "Rows", "MeanMicros", "P50Micros", "P90Micros", "P99Micros", "P999Micros", "MaxMicros"};
+        private static final MBeanInfo INFO;
+
+        static {
+            MBeanAttributeInfo[] attrs = new MBeanAttributeInfo[ATTRIBUTES.length];
+            for (int i = 0; i < ATTRIBUTES.length; i++) {
+                String type = ATTRIBUTES[i].equals("MeanMicros") ? "double" : "long";
+                attrs[i] = new MBeanAttributeInfo(ATTRIBUTES[i], type, ATTRIBUTES[i], true, false, false);
+            }
+            INFO = new MBeanInfo(OperationMBean.class.getName(), "Library operation metrics",
+                    attrs, null, null, null);
+        }
+
+        private final OperationMetrics m;
+
+        OperationMBean(OperationMetrics m) {
+            this.m = m;
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            LatencyHistogram latency = m.getLatency();
+            switch (attribute) {
+                case "Count": return latency.getCount();
+                case "Errors": return m.getErrors();
+                case "Rows": return m.getRows().getSum();
+                case "MeanMicros": return latency.getMean() / 1_000.0;
+                case "P50Micros": return latency.valueAtQuantile(0.5) / 1_000;
+                case "P90Micros": return latency.valueAtQuantile(0.9) / 1_000;
+                case "P99Micros": return latency.valueAtQuantile(0.99) / 1_000;
+                case "P999Micros": return latency.valueAtQuantile(0.999) / 1_000;
+                case "MaxMicros": return latency.getMax() / 1_000;
+                default: throw new AttributeNotFoundException(attribute);
+            }
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String a : attributes) {
+                try {
+                    list.add(new Attribute(a, getAttribute(a)));
+                } catch (AttributeNotFoundException ignored) {
+                    // unknown names are left out, as the DynamicMBean contract allows
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException(actionName);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            return INFO;
+        }
+    }
+
+    // ── Text scrape ───────────────────────────────────────────
+    // Latency quantiles in seconds; counters are cumulative since start-up
+    static String scrape() {
+        StringBuilder sb = new StringBuilder(4096);
+        sb.append("# TYPE library_operation_seconds summary\n");
+        for (OperationMetrics m : OPERATIONS.values()) {
+            LatencyHistogram latency = m.getLatency();
+            String op = "op=\"" + m.getName() + "\"";
+            for (double q : QUANTILES) {
+                sb.append("library_operation_seconds{").append(op).append(",quantile=\"").append(q).append("\"} ")
+                        .append(seconds(latency.valueAtQuantile(q))).append('\n');
+            }
+            sb.append("library_operation_seconds_sum{").append(op).append("} ")
+                    .append(seconds(latency.getSum())).append('\n');
+            sb.append("library_operation_seconds_count{").append(op).append("} ")
+                    .append(latency.getCount()).append('\n');
+        }
+        appendPerOperation(sb, "library_operation_max_seconds", "gauge", m -> seconds(m.getLatency().getMax()));
+        appendPerOperation(sb, "library_operation_errors_total", "counter", m -> Long.toString(m.getErrors()));
+        appendPerOperation(sb, "library_operation_rows_total", "counter", m -> Long.toString(m.getRows().getSum()));
+        return sb.toString();
+    }
+
+    private static void appendPerOperation(StringBuilder sb, String metric, String type,
+                                           Function<OperationMetrics, String> value) {
+        sb.append("# TYPE ").append(metric).append(' ').append(type).append('\n');
+        for (OperationMetrics m : OPERATIONS.values()) {
+            sb.append(metric).append("{op=\"").append(m.getName()).append("\"} ")
+                    .append(value.apply(m)).append('\n');
+        }
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    // Serves scrape() at http://<host>:port/metrics; stop the returned server to shut it down
+    static HttpServer startHttpEndpoint(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        return server;
+    }
+}
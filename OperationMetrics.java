@@ -0,0 +1,29 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+// Latency, error and row counts for one named operation. Usage on a hot path:
+//   long start = System.nanoTime();  ...  metrics.success(start, rows);   or   metrics.failure(start);
+class OperationMetrics {
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram rows = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong();
+
+    OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    public void success(long startNanos, long rowCount) {
+        latency.record(System.nanoTime() - startNanos);
+        rows.record(rowCount);
+    }
+
+    public void failure(long startNanos) {
+        latency.record(System.nanoTime() - startNanos);
+        errors.incrementAndGet();
+    }
+
+    public String getName() { return name; }
+    public LatencyHistogram getLatency() { return latency; }
+    public LatencyHistogram getRows() { return rows; }
+    public long getErrors() { return errors.get(); }
+}
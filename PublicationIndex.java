@@ -0,0 +1,65 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+// Books bucketed by publication year, newest year first and ISBN order inside a year (stable for ties).
+// Top-K walks the first K entries instead of sorting the catalog. Empty buckets are kept:
+// there are only a few thousand possible years and it avoids racing a concurrent add.
+class PublicationIndex {
+    // Order of newest() / publishedBetween() results, for merging results from several indexes
+    static final Comparator<Book> NEWEST_FIRST = Comparator.comparing(Book::getPublicationYear, Comparator.reverseOrder())
+            .thenComparing(Book::getIsbn);
+
+    private final ConcurrentNavigableMap<Integer, NavigableSet<Book>> byYear =
+            new ConcurrentSkipListMap<>(Comparator.reverseOrder());
+
+    public void add(Book book) {
+        byYear.computeIfAbsent(book.getPublicationYear().getValue(),
+                y -> new ConcurrentSkipListSet<>(Comparator.comparing(Book::getIsbn))).add(book);
+    }
+
+    public void remove(Book book) {
+        NavigableSet<Book> bucket = byYear.get(book.getPublicationYear().getValue());
+        if (bucket != null) {
+            bucket.remove(book);
+        }
+    }
+
+    public List<Book> newest(int offset, int limit) {
+        return page(byYear, offset, limit);
+    }
+
+    // Both bounds inclusive, newest first
+    public List<Book> publishedBetween(int fromYear, int toYear, int offset, int limit) {
+        if (fromYear > toYear) {
+            return Collections.emptyList();
+        }
+        return page(byYear.subMap(toYear, true, fromYear, true), offset, limit);
+    }
+
+    private static List<Book> page(ConcurrentNavigableMap<Integer, NavigableSet<Book>> years, int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("offset and limit must not be negative");
+        }
+        List<Book> result = new ArrayList<>(Math.min(limit, 1024));
+        int skip = offset;
+        for (NavigableSet<Book> bucket : years.values()) {
+            for (Book book : bucket) {
+                if (result.size() >= limit) {
+                    return result;
+                }
+                if (skip > 0) {
+                    skip--;
+                } else {
+                    result.add(book);
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,235 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+// Streams flat records out of a CSV (first line = header) or JSON-lines file, one line at a time.
+// Lines that can't be parsed or mapped are reported to the ImportResult and skipped.
+class RecordFileReader<T> implements Iterator<T>, AutoCloseable {
+    private final BufferedReader reader;
+    private final boolean json;
+    private final Function<Map<String, String>, T> mapper;
+    private final ImportResult result;
+    private List<String> header;
+    private long lineNumber;
+    private long currentRowLine;
+    private T next;
+
+    RecordFileReader(Path file, Function<Map<String, String>, T> mapper, ImportResult result) throws IOException {
+        String name = file.getFileName().toString().toLowerCase();
+        this.json = name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json");
+        this.reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        this.mapper = mapper;
+        this.result = result;
+        if (!json) {
+            String headerLine = readLine();
+            if (headerLine == null) {
+                throw new IOException("CSV file is empty: " + file);
+            }
+            header = new ArrayList<>();
+            for (String column : parseCsvLine(headerLine)) {
+                header.add(column.trim().toLowerCase());
+            }
+        }
+    }
+
+    // Line number of the row most recently returned by next()
+    long currentLine() {
+        return currentRowLine;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null) {
+            String line = readLine();
+            if (line == null) {
+                return false;
+            }
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                next = mapper.apply(json ? parseJsonObject(line) : toRecord(parseCsvLine(line)));
+                currentRowLine = lineNumber;
+            } catch (RuntimeException e) {
+                result.recordFailure(lineNumber, "-", "Unparseable line: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T row = next;
+        next = null;
+        return row;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private String readLine() {
+        try {
+            String line = reader.readLine();
+            if (line != null) {
+                lineNumber++;
+            }
+            return line;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Map<String, String> toRecord(List<String> values) {
+        if (values.size() > header.size()) {
+            throw new IllegalArgumentException("expected " + header.size() + " columns, got " + values.size());
+        }
+        Map<String, String> record = new HashMap<>();
+        for (int i = 0; i < values.size(); i++) {
+            record.put(header.get(i), values.get(i));
+        }
+        return record;
+    }
+
+    // RFC 4180 style: commas, double-quoted fields, "" as an escaped quote (no multi-line fields)
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        sb.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    sb.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quoted field");
+        }
+        fields.add(sb.toString());
+        return fields;
+    }
+
+    // Flat JSON object only: string/number/boolean/null values, no nesting
+    static Map<String, String> parseJsonObject(String line) {
+        Map<String, String> record = new HashMap<>();
+        int[] pos = {skipWs(line, 0)};
+        expect(line, pos, '{');
+        if (peek(line, pos) == '}') {
+            pos[0]++;
+            return record;
+        }
+        while (true) {
+            String key = readJsonString(line, pos);
+            expect(line, pos, ':');
+            char c = peek(line, pos);
+            String value;
+            if (c == '"') {
+                value = readJsonString(line, pos);
+            } else {
+                int start = pos[0];
+                while (pos[0] < line.length() && ",} \t".indexOf(line.charAt(pos[0])) < 0) {
+                    pos[0]++;
+                }
+                value = line.substring(start, pos[0]);
+                if (value.equals("null")) {
+                    value = null;
+                } else if (value.isEmpty() || value.equals("{") || value.equals("[")) {
+                    throw new IllegalArgumentException("unsupported value for '" + key + "'");
+                }
+            }
+            record.put(key, value);
+            char sep = peek(line, pos);
+            pos[0]++;
+            if (sep == '}') {
+                return record;
+            }
+            if (sep != ',') {
+                throw new IllegalArgumentException("expected ',' or '}' at " + (pos[0] - 1));
+            }
+        }
+    }
+
+    private static String readJsonString(String s, int[] pos) {
+        expect(s, pos, '"');
+        StringBuilder sb = new StringBuilder();
+        while (pos[0] < s.length()) {
+            char c = s.charAt(pos[0]++);
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c == '\\') {
+                if (pos[0] >= s.length()) {
+                    break;
+                }
+                char e = s.charAt(pos[0]++);
+                switch (e) {
+                    case 'n': sb.append('\n'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'u':
+                        sb.append((char) Integer.parseInt(s.substring(pos[0], pos[0] + 4), 16));
+                        pos[0] += 4;
+                        break;
+                    default: sb.append(e);   // \" \\ \/
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        throw new IllegalArgumentException("unterminated string");
+    }
+
+    private static char peek(String s, int[] pos) {
+        pos[0] = skipWs(s, pos[0]);
+        if (pos[0] >= s.length()) {
+            throw new IllegalArgumentException("unexpected end of line");
+        }
+        return s.charAt(pos[0]);
+    }
+
+    private static void expect(String s, int[] pos, char expected) {
+        if (peek(s, pos) != expected) {
+            throw new IllegalArgumentException("expected '" + expected + "' at " + pos[0]);
+        }
+        pos[0]++;
+    }
+
+    private static int skipWs(String s, int i) {
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,7 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+// Maps the current row of a ResultSet; returning null skips the row
+interface RowMapper<T> {
+    T map(ResultSet rs) throws SQLException;
+}
@@ -0,0 +1,455 @@
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+// Books and users partitioned across in-process Library shards by consistent hashing of ISBN / user id.
+// Point operations go straight to the owning shard; list queries scatter to every shard and gather,
+// with a K-way merge for sorted and top-K results. resize() rebalances online: only keys whose owner
+// changed move, one at a time under a striped lock, while reads and writes carry on.
+// Loans are tracked here rather than in the shards, since a user and a book usually live on different shards.
+class ShardedLibrary implements AutoCloseable {
+    private static final int VIRTUAL_NODES = 128;
+    private static final int LOCK_STRIPES = 1024;
+    private static final OperationMetrics BORROW = Metrics.operation("library.borrow");
+    private static final OperationMetrics RETURN = Metrics.operation("library.return");
+
+    private final String name;
+    private final boolean shardExecutors;
+    private final Object[] stripes = new Object[LOCK_STRIPES];   // per-key lock for writes and moves
+    private final Object resizeLock = new Object();
+    private final LoanTracker loanTracker = new LoanTracker(Clock.systemDefaultZone());
+    private volatile Topology current;
+    private volatile Topology previous;   // topology being drained while resize() runs, otherwise null
+
+    public ShardedLibrary(String name, int shardCount) {
+        this(name, shardCount, false);
+    }
+
+    // shardExecutors: each shard gets its own thread and scatter-gather queries run on all shards in parallel
+    public ShardedLibrary(String name, int shardCount, boolean shardExecutors) {
+        this.name = name;
+        this.shardExecutors = shardExecutors;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+        List<Shard> shards = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(newShard(i));
+        }
+        current = new Topology(new ConsistentHashRing(shardCount, VIRTUAL_NODES), shards);
+    }
+
+    // ── Book operations ───────────────────────────────────────
+    public void addBook(Book book) {
+        String isbn = book.getIsbn();
+        synchronized (stripe(isbn)) {
+            Topology t = current;
+            Library owner = t.bookOwner(isbn);
+            owner.addBook(book);
+            Topology old = previous;
+            if (old != null && old.bookOwner(isbn) != owner) {
+                old.bookOwner(isbn).removeBook(isbn);   // replaced copy not migrated yet
+            }
+            settleBook(isbn, t);
+        }
+    }
+
+    public Optional<Book> removeBook(String isbn) {
+        synchronized (stripe(isbn)) {
+            Optional<Book> removed = current.bookOwner(isbn).removeBook(isbn);
+            Topology old = previous;
+            if (removed.isEmpty() && old != null) {
+                removed = old.bookOwner(isbn).removeBook(isbn);
+            }
+            return removed;
+        }
+    }
+
+    public Optional<Book> findBookByIsbn(String isbn) {
+        Topology t = current;
+        Optional<Book> book = t.bookOwner(isbn).findBookByIsbn(isbn);
+        if (book.isPresent() || (previous == null && current == t)) {
+            return book;
+        }
+        // Rebalancing: the book may still be on its old shard; moves hold the stripe, so this sees it somewhere
+        synchronized (stripe(isbn)) {
+            book = current.bookOwner(isbn).findBookByIsbn(isbn);
+            Topology old = previous;
+            return book.isPresent() || old == null ? book : old.bookOwner(isbn).findBookByIsbn(isbn);
+        }
+    }
+
+    // Unordered
+    public List<Book> findBooksByTitleContains(String fragment) {
+        return concat(scatter(l -> l.findBooksByTitleContains(fragment)));
+    }
+
+    // Best matches first across all shards (same ranking as Library)
+    public List<Book> findBooksByTitleContains(String fragment, int limit) {
+        return merge(scatter(l -> l.findBooksByTitleContains(fragment, limit)), TitleIndex.ranking(fragment), 0, limit);
+    }
+
+    public List<Book> findBooksByTitlePrefix(String prefix, int limit) {
+        return merge(scatter(l -> l.findBooksByTitlePrefix(prefix, limit)), TitleIndex.BY_LOWER_TITLE, 0, limit);
+    }
+
+    public List<Book> findBooksByAuthor(String author) {
+        return concat(scatter(l -> l.findBooksByAuthor(author)));
+    }
+
+    public List<Book> findBooksByGenre(String genre) {
+        return concat(scatter(l -> l.findBooksByGenre(genre)));
+    }
+
+    // Sorted by title (ties by ISBN)
+    public List<Book> getAllAvailableBooks() {
+        return merge(scatter(Library::getAllAvailableBooks), CatalogIndex.BY_TITLE, 0, Integer.MAX_VALUE);
+    }
+
+    public List<Book> getAvailableBooksByGenre(String genre) {
+        return merge(scatter(l -> l.getAvailableBooksByGenre(genre)), CatalogIndex.BY_TITLE, 0, Integer.MAX_VALUE);
+    }
+
+    public List<Book> getAvailableBooksByAuthor(String author) {
+        return merge(scatter(l -> l.getAvailableBooksByAuthor(author)), CatalogIndex.BY_TITLE, 0, Integer.MAX_VALUE);
+    }
+
+    // Newest first; books from the same year come in ISBN order
+    public List<Book> getTopNewestBooks(int limit) {
+        return getNewestBooks(0, limit);
+    }
+
+    // Every shard returns its first offset+limit books; the merge skips offset of the combined order
+    public List<Book> getNewestBooks(int offset, int limit) {
+        int perShard = perShardLimit(offset, limit);
+        return merge(scatter(l -> l.getNewestBooks(0, perShard)), PublicationIndex.NEWEST_FIRST, offset, limit);
+    }
+
+    public List<Book> getBooksPublishedBetween(int fromYear, int toYear, int offset, int limit) {
+        int perShard = perShardLimit(offset, limit);
+        return merge(scatter(l -> l.getBooksPublishedBetween(fromYear, toYear, 0, perShard)),
+                PublicationIndex.NEWEST_FIRST, offset, limit);
+    }
+
+    private static int perShardLimit(int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("offset and limit must not be negative");
+        }
+        return (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+    }
+
+    // ── User operations ───────────────────────────────────────
+    public void registerUser(LibraryUser user) {
+        String id = user.getId();
+        synchronized (stripe(id)) {
+            Topology t = current;
+            Topology old = previous;
+            if (old != null && old.userOwner(id) != t.userOwner(id) && old.userOwner(id).findUser(id).isPresent()) {
+                throw new IllegalArgumentException("User with id " + id + " already exists");
+            }
+            t.userOwner(id).registerUser(user);
+            settleUser(id, t);
+        }
+    }
+
+    public Optional<LibraryUser> findUser(String id) {
+        Topology t = current;
+        Optional<LibraryUser> user = t.userOwner(id).findUser(id);
+        if (user.isPresent() || (previous == null && current == t)) {
+            return user;
+        }
+        synchronized (stripe(id)) {
+            user = current.userOwner(id).findUser(id);
+            Topology old = previous;
+            return user.isPresent() || old == null ? user : old.userOwner(id).findUser(id);
+        }
+    }
+
+    // ── Circulation ───────────────────────────────────────────
+    public void borrowBook(String userId, String isbn) {
+        long start = System.nanoTime();
+        try {
+            LibraryUser user = requireUser(userId);
+            Book book = requireBook(isbn);
+            synchronized (user) {
+                user.borrowBook(book);
+                loanTracker.track(Loan.start(user, book, loanTracker.today()));
+            }
+            BORROW.success(start, 1);
+        } catch (RuntimeException e) {
+            BORROW.failure(start);
+            throw e;
+        }
+    }
+
+    public void returnBook(String userId, String isbn) {
+        long start = System.nanoTime();
+        try {
+            LibraryUser user = requireUser(userId);
+            Book book = requireBook(isbn);
+            synchronized (user) {
+                user.returnBook(book);
+                loanTracker.untrack(isbn, userId);
+            }
+            RETURN.success(start, 1);
+        } catch (RuntimeException e) {
+            RETURN.failure(start);
+            throw e;
+        }
+    }
+
+    public List<Loan> getOverdueLoans() {
+        return loanTracker.overdue(loanTracker.today());
+    }
+
+    private LibraryUser requireUser(String id) {
+        return findUser(id).orElseThrow(() -> new IllegalArgumentException("Unknown user: " + id));
+    }
+
+    private Book requireBook(String isbn) {
+        return findBookByIsbn(isbn).orElseThrow(() -> new IllegalArgumentException("Unknown book: " + isbn));
+    }
+
+    // ── Topology ──────────────────────────────────────────────
+    public int getShardCount() {
+        return current.shards.size();
+    }
+
+    // Books per shard, for checking the spread
+    public List<Integer> getShardSizes() {
+        List<Integer> sizes = new ArrayList<>();
+        for (Shard shard : current.shards) {
+            sizes.add(shard.library.books().size());
+        }
+        return sizes;
+    }
+
+    // Grows or shrinks to shardCount shards. Existing shards keep their ids, so growing only moves keys
+    // to the new shards and shrinking only moves keys off the retired ones. Blocks until the move is done.
+    public void resize(int shardCount) {
+        synchronized (resizeLock) {
+            Topology old = current;
+            if (shardCount == old.shards.size()) {
+                return;
+            }
+            ConsistentHashRing ring = new ConsistentHashRing(shardCount, VIRTUAL_NODES);
+            List<Shard> shards = new ArrayList<>(old.shards.subList(0, Math.min(shardCount, old.shards.size())));
+            for (int i = old.shards.size(); i < shardCount; i++) {
+                shards.add(newShard(i));
+            }
+            Topology next = new Topology(ring, shards);
+            previous = old;   // written before current, so anyone who sees the new topology also sees the old one
+            current = next;
+
+            long moved = 0;
+            for (Shard shard : old.shards) {
+                moved += migrate(shard.library, next);
+            }
+            previous = null;
+            for (int i = shardCount; i < old.shards.size(); i++) {
+                old.shards.get(i).close();
+            }
+            long movedKeys = moved;
+            LibraryLog.info(() -> name + ": resized from " + old.shards.size() + " to " + shardCount
+                    + " shards, moved " + movedKeys + " books and users");
+        }
+    }
+
+    private long migrate(Library from, Topology next) {
+        long moved = 0;
+        for (Book book : from.books()) {
+            String isbn = book.getIsbn();
+            synchronized (stripe(isbn)) {
+                Library to = next.bookOwner(isbn);
+                if (to != from && from.removeBook(isbn).map(b -> { to.addBook(b); return b; }).isPresent()) {
+                    moved++;
+                }
+            }
+        }
+        for (LibraryUser user : from.users()) {
+            String id = user.getId();
+            synchronized (stripe(id)) {
+                Library to = next.userOwner(id);
+                if (to != from && from.removeUser(id).map(u -> { to.registerUser(u); return u; }).isPresent()) {
+                    moved++;
+                }
+            }
+        }
+        return moved;
+    }
+
+    // Called under the key's stripe after a write made with topology t. If resize() swapped topologies
+    // in the meantime its migration may already have passed the shard we wrote to, so move the key here.
+    private void settleBook(String isbn, Topology t) {
+        Topology now;
+        while ((now = current) != t) {
+            Library from = t.bookOwner(isbn);
+            Library to = now.bookOwner(isbn);
+            if (from != to) {
+                from.removeBook(isbn).ifPresent(to::addBook);
+            }
+            t = now;
+        }
+    }
+
+    private void settleUser(String id, Topology t) {
+        Topology now;
+        while ((now = current) != t) {
+            Library from = t.userOwner(id);
+            Library to = now.userOwner(id);
+            if (from != to) {
+                from.removeUser(id).ifPresent(to::registerUser);
+            }
+            t = now;
+        }
+    }
+
+    private Object stripe(String key) {
+        return stripes[(key.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+    }
+
+    private Shard newShard(int id) {
+        ExecutorService executor = null;
+        if (shardExecutors) {
+            executor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, name + "-shard-" + id);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return new Shard(new Library(name + "#" + id), executor);
+    }
+
+    @Override
+    public void close() {
+        synchronized (resizeLock) {
+            for (Shard shard : current.shards) {
+                shard.close();
+            }
+        }
+        loanTracker.close();
+    }
+
+    // ── Scatter-gather ────────────────────────────────────────
+    private <T> List<List<T>> scatter(Function<Library, List<T>> query) {
+        Topology t = current;
+        Topology old = previous;
+        // While shrinking, the retiring shards still hold keys; while growing the old shards are a prefix
+        List<Shard> shards = old != null && old.shards.size() > t.shards.size() ? old.shards : t.shards;
+
+        List<List<T>> results = new ArrayList<>(shards.size());
+        if (!shardExecutors || shards.size() == 1) {
+            for (Shard shard : shards) {
+                results.add(query.apply(shard.library));
+            }
+            return results;
+        }
+        List<CompletableFuture<List<T>>> futures = new ArrayList<>(shards.size());
+        for (Shard shard : shards) {
+            futures.add(CompletableFuture.supplyAsync(() -> query.apply(shard.library), shard.executor));
+        }
+        try {
+            for (CompletableFuture<List<T>> f : futures) {
+                results.add(f.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    // A book being moved can briefly sit on two shards, so results are de-duplicated by ISBN
+    private static List<Book> concat(List<List<Book>> parts) {
+        List<Book> result = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (List<Book> part : parts) {
+            for (Book book : part) {
+                if (seen.add(book.getIsbn())) {
+                    result.add(book);
+                }
+            }
+        }
+        return result;
+    }
+
+    // K-way merge of per-shard lists that are each sorted by order: O(n log k) for n results from k shards
+    static List<Book> merge(List<List<Book>> sorted, Comparator<Book> order, int offset, int limit) {
+        PriorityQueue<int[]> heads = new PriorityQueue<>(Math.max(1, sorted.size()),
+                (a, b) -> order.compare(sorted.get(a[0]).get(a[1]), sorted.get(b[0]).get(b[1])));
+        for (int i = 0; i < sorted.size(); i++) {
+            if (!sorted.get(i).isEmpty()) {
+                heads.add(new int[]{i, 0});
+            }
+        }
+        List<Book> result = new ArrayList<>(Math.min(limit, 1024));
+        Set<String> seen = new HashSet<>();
+        int skip = offset;
+        while (!heads.isEmpty() && result.size() < limit) {
+            int[] head = heads.poll();
+            List<Book> list = sorted.get(head[0]);
+            Book book = list.get(head[1]);
+            if (++head[1] < list.size()) {
+                heads.add(head);
+            }
+            if (!seen.add(book.getIsbn())) {
+                continue;
+            }
+            if (skip > 0) {
+                skip--;
+            } else {
+                result.add(book);
+            }
+        }
+        return result;
+    }
+
+    // ── Internals ─────────────────────────────────────────────
+    private static final class Topology {
+        final ConsistentHashRing ring;
+        final List<Shard> shards;
+
+        Topology(ConsistentHashRing ring, List<Shard> shards) {
+            this.ring = ring;
+            this.shards = Collections.unmodifiableList(shards);
+        }
+
+        Library bookOwner(String isbn) {
+            return shards.get(ring.shardFor(isbn)).library;
+        }
+
+        Library userOwner(String id) {
+            return shards.get(ring.shardFor(id)).library;
+        }
+    }
+
+    private static final class Shard {
+        final Library library;
+        final ExecutorService executor;   // null unless shardExecutors
+
+        Shard(Library library, ExecutorService executor) {
+            this.library = library;
+            this.executor = executor;
+        }
+
+        void close() {
+            if (executor != null) {
+                executor.shutdown();
+            }
+            library.close();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+import java.time.LocalDate;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+// Deterministic fake books and users for benchmarks: the same seed always yields the same catalog
+class SyntheticCatalog {
+    private static final String[] WORDS = {
+            "clean", "code", "art", "of", "the", "programming", "dune", "algorithms", "java", "patterns",
+            "design", "history", "war", "peace", "night", "city", "river", "garden", "machine", "learning",
+            "data", "systems", "theory", "practice", "introduction", "advanced", "modern", "lost", "world", "sea"
+    };
+    private static final String[] FIRST_NAMES = {
+            "Anna", "Jan", "Robert", "Martin", "Frank", "Aditya", "Maria", "Piotr", "Ewa", "Tomasz", "Olga", "Adam"
+    };
+    private static final String[] LAST_NAMES = {
+            "Kowalska", "Nowak", "Martin", "Fowler", "Herbert", "Bhargava", "Wiśniewska", "Zieliński",
+            "Lewandowski", "Wójcik", "Kamińska", "Dąbrowski", "Knuth", "Liskov", "Hopper", "Tanenbaum"
+    };
+    private static final String[] GENRES = {
+            "Programming", "Algorithms", "Science Fiction", "History", "Fantasy", "Biography",
+            "Poetry", "Mathematics", "Philosophy", "Travel", "Children", "Mystery"
+    };
+
+    private final Random random;
+
+    SyntheticCatalog(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public List<Book> books(int count) {
+        List<Book> books = new ArrayList<>(count);
+        forEachBook(count, books::add);
+        return books;
+    }
+
+    // Same books as books(count), without holding them all at once
+    public void forEachBook(int count, Consumer<Book> action) {
+        int authors = Math.max(1, count / 8);   // ~8 titles per author, like a real catalog
+        for (int i = 0; i < count; i++) {
+            action.accept(new Book(isbn(i), title(), author(random.nextInt(authors)),
+                    Year.of(1900 + random.nextInt(126)), GENRES[random.nextInt(GENRES.length)]));
+        }
+    }
+
+    public List<LibraryUser> users(int count) {
+        List<LibraryUser> users = new ArrayList<>(count);
+        LocalDate base = LocalDate.of(2015, 1, 1);
+        for (int i = 0; i < count; i++) {
+            String id = String.format("U-%07d", i);
+            String name = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " "
+                    + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            LocalDate registered = base.plusDays(random.nextInt(3650));
+            users.add(random.nextInt(10) == 0
+                    ? new PremiumUser(id, name, registered)
+                    : new RegularUser(id, name, registered));
+        }
+        return users;
+    }
+
+    // ISBN-13 in the 978 range with a valid check digit
+    static String isbn(long n) {
+        String body = String.format("978%09d", n % 1_000_000_000L);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (body.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return body + (10 - sum % 10) % 10;
+    }
+
+    public String word() {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private String title() {
+        int words = 1 + random.nextInt(4);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            String w = word();
+            if (i > 0) sb.append(' ');
+            sb.append(Character.toUpperCase(w.charAt(0))).append(w, 1, w.length());
+        }
+        return sb.toString();
+    }
+
+    private String author(int n) {
+        return FIRST_NAMES[n % FIRST_NAMES.length] + " "
+                + LAST_NAMES[(n / FIRST_NAMES.length) % LAST_NAMES.length]
+                + (n >= FIRST_NAMES.length * LAST_NAMES.length ? " " + n : "");
+    }
+}
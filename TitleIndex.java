@@ -0,0 +1,156 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+
+// Trigram index over lower-cased titles. A substring query only looks at the books sharing its rarest
+// trigram and confirms each with String.contains, so results match a full scan exactly.
+// Safe for concurrent use: readers never block, writers only contend on the same trigram.
+class TitleIndex {
+    private static final int GRAM = 3;
+    // Order of startingWith() results, for merging results from several indexes
+    static final Comparator<Book> BY_LOWER_TITLE =
+            Comparator.comparing((Book b) -> titleKey(b.getTitle().toLowerCase(), b));
+
+    private final ConcurrentHashMap<String, Set<Book>> postings = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> lowerTitleByIsbn = new ConcurrentHashMap<>();
+    // "lower title \0 isbn" -> book, for prefix queries in title order
+    private final ConcurrentNavigableMap<String, Book> byLowerTitle = new ConcurrentSkipListMap<>();
+
+    public void add(Book book) {
+        String lower = book.getTitle().toLowerCase();
+        if (lowerTitleByIsbn.put(book.getIsbn(), lower) != null) {
+            throw new IllegalStateException("Book already indexed: " + book.getIsbn());
+        }
+        for (String gram : grams(lower)) {
+            postings.compute(gram, (g, books) -> {
+                Set<Book> set = books != null ? books : ConcurrentHashMap.newKeySet();
+                set.add(book);
+                return set;
+            });
+        }
+        byLowerTitle.put(titleKey(lower, book), book);
+    }
+
+    public void remove(Book book) {
+        String lower = lowerTitleByIsbn.remove(book.getIsbn());
+        if (lower == null) {
+            return;
+        }
+        for (String gram : grams(lower)) {
+            postings.computeIfPresent(gram, (g, books) -> {
+                books.remove(book);
+                return books.isEmpty() ? null : books;
+            });
+        }
+        byLowerTitle.remove(titleKey(lower, book));
+    }
+
+    // Every book whose title contains fragment, case-insensitively (unordered)
+    public List<Book> containing(String fragment) {
+        return containing(fragment, Integer.MAX_VALUE, false);
+    }
+
+    // ranked: exact title, then prefix, then word start, then earliest match, then shorter title
+    public List<Book> containing(String fragment, int limit, boolean ranked) {
+        String lower = fragment.toLowerCase();
+        List<Book> result = new ArrayList<>();
+        Map<Book, String> matchedTitles = ranked ? new HashMap<>() : null;
+        int cap = ranked ? Integer.MAX_VALUE : limit;
+
+        for (Book book : candidates(lower)) {
+            if (result.size() >= cap) {
+                break;
+            }
+            String title = lowerTitleByIsbn.get(book.getIsbn());
+            if (title != null && title.contains(lower)) {   // null: removed concurrently
+                result.add(book);
+                if (ranked) {
+                    matchedTitles.put(book, title);
+                }
+            }
+        }
+        if (ranked) {
+            result.sort(rankFor(lower, matchedTitles::get));
+            if (result.size() > limit) {
+                return new ArrayList<>(result.subList(0, limit));
+            }
+        }
+        return result;
+    }
+
+    // Titles starting with prefix, case-insensitively, in title order
+    public List<Book> startingWith(String prefix, int limit) {
+        String lower = prefix.toLowerCase();
+        List<Book> result = new ArrayList<>();
+        for (Book book : byLowerTitle.subMap(lower, true, lower + Character.MAX_VALUE, false).values()) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(book);
+        }
+        return result;
+    }
+
+    public int size() {
+        return lowerTitleByIsbn.size();
+    }
+
+    // ── Internals ─────────────────────────────────────────────
+    private Iterable<Book> candidates(String lower) {
+        if (lower.length() < GRAM) {
+            // Too short for a trigram: fall back to every indexed book
+            return byLowerTitle.values();
+        }
+        Set<Book> smallest = null;
+        for (String gram : grams(lower)) {
+            Set<Book> posting = postings.get(gram);
+            if (posting == null) {
+                return Collections.emptyList();
+            }
+            if (smallest == null || posting.size() < smallest.size()) {
+                smallest = posting;
+            }
+        }
+        return smallest;
+    }
+
+    // Order of containing(fragment, limit, true) results, for merging results from several indexes
+    static Comparator<Book> ranking(String fragment) {
+        return rankFor(fragment.toLowerCase(), b -> b.getTitle().toLowerCase());
+    }
+
+    private static Comparator<Book> rankFor(String lower, Function<Book, String> lowerTitles) {
+        return Comparator.comparingInt((Book b) -> {
+                    String title = lowerTitles.apply(b);
+                    if (title.equals(lower)) return 0;
+                    if (title.startsWith(lower)) return 1;
+                    int at = title.indexOf(lower);
+                    return at > 0 && !Character.isLetterOrDigit(title.charAt(at - 1)) ? 2 : 3;
+                })
+                .thenComparingInt(b -> lowerTitles.apply(b).indexOf(lower))
+                .thenComparingInt(b -> b.getTitle().length())
+                .thenComparing(Book::getTitle)
+                .thenComparing(Book::getIsbn);
+    }
+
+    private static String titleKey(String lower, Book book) {
+        return lower + '\0' + book.getIsbn();
+    }
+
+    private static Set<String> grams(String lower) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= lower.length(); i++) {
+            grams.add(lower.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+}
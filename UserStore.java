@@ -0,0 +1,23 @@
+import java.util.List;
+
+// Where users are persisted; see CatalogStore for the implementations and the shared contract.
+// Loans are not part of a user here (see LoanDAO).
+interface UserStore {
+    // A user whose id is already stored is rejected (logged)
+    void insertLibraryUser(LibraryUser user);
+
+    // null when absent
+    LibraryUser getUserById(String id);
+
+    // By id
+    List<LibraryUser> getAllUsers();
+
+    void updateUserName(String id, String newName);
+
+    void deleteUser(String id);
+
+    // Keyset pagination in id order; pass null lastId for the first page
+    List<LibraryUser> getUsersAfter(String lastId, int limit);
+
+    ImportResult insertUsers(Iterable<? extends LibraryUser> users);
+}
@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+// BookDAO whose availability updates are queued and flushed in batches (see AvailabilityWriteBehind).
+// Reads by ISBN overlay any still-queued value so callers read their own writes. All hooks are
+// throwing cores, so AsyncLibraryDAO goes through the queue as well. Same single-copy rule as BookDAO:
+// a queued change for a book with several copies is dropped by the flush and never overlaid.
+class WriteBehindBookDAO extends BookDAO implements AutoCloseable {
+    private static final String OPEN_LOANS_SQL = "SELECT count(*) FROM loans WHERE isbn = ? AND returned_at IS NULL";
+
+    private final AvailabilityWriteBehind writeBehind;
+
+    public WriteBehindBookDAO(Path logFile) throws IOException {
+        this(new AvailabilityWriteBehind(logFile, 500, 50_000, 200, 5_000, true));
+    }
+
+    public WriteBehindBookDAO(AvailabilityWriteBehind writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+
+    // 1 once queued: whether the ISBN exists (with one copy) is only known when the batch is written
+    @Override
+    int updateAvailability(String isbn, boolean newAvailable) throws SQLException {
+        try {
+            writeBehind.enqueue(isbn, newAvailable);
+        } catch (TimeoutException e) {
+            throw new SQLTimeoutException("Error queueing availability update: " + e.getMessage(), e);
+        } catch (IOException e) {
+            throw new SQLException("Error queueing availability update: " + e.getMessage(), e);
+        }
+        publish(ChangeEvent.Type.AVAILABILITY_CHANGED, isbn, newAvailable ? "available" : "unavailable");
+        return 1;
+    }
+
+    // Overlay read first: if the batch commits in between, the database row already has the value
+    @Override
+    Book findByIsbn(String isbn) throws SQLException {
+        Boolean queued = writeBehind.pendingValue(isbn);
+        Book book = super.findByIsbn(isbn);
+        if (book != null) {
+            overlay(book, queued);
+        }
+        return book;
+    }
+
+    @Override
+    List<Book> findByIsbns(Collection<String> isbns) throws SQLException {
+        Map<String, Boolean> queued = new HashMap<>();
+        for (String isbn : isbns) {
+            Boolean value = writeBehind.pendingValue(isbn);
+            if (value != null) {
+                queued.put(isbn, value);
+            }
+        }
+        List<Book> books = super.findByIsbns(isbns);
+        for (Book book : books) {
+            overlay(book, queued.get(book.getIsbn()));
+        }
+        return books;
+    }
+
+    private void overlay(Book book, Boolean queued) throws SQLException {
+        if (queued != null && book.getTotalCopies() == 1) {
+            book.setCopies(1, queued && openLoans(book.getIsbn()) == 0 ? 1 : 0);   // as the flush will derive it
+        }
+    }
+
+    private int openLoans(String isbn) throws SQLException {
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(OPEN_LOANS_SQL)) {
+            pstmt.setString(1, isbn);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    public void flush() throws IOException, SQLException {
+        writeBehind.flush();
+    }
+
+    public AvailabilityWriteBehind.Stats getWriteBehindStats() {
+        return writeBehind.getStats();
+    }
+
+    @Override
+    public void close() throws IOException, SQLException {
+        writeBehind.close();
+    }
+}